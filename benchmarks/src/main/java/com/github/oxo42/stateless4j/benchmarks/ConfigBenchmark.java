@@ -0,0 +1,41 @@
+package com.github.oxo42.stateless4j.benchmarks;
+
+import com.github.oxo42.stateless4j.StateMachineConfig;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Deep;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Simple;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Trigger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build a configuration, and to build and freeze it
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConfigBenchmark {
+
+    @Benchmark
+    public StateMachineConfig<Simple, Trigger> buildFlat() {
+        return Configs.flat();
+    }
+
+    @Benchmark
+    public StateMachineConfig<Deep, Trigger> buildDeep() {
+        return Configs.deep();
+    }
+
+    @Benchmark
+    public StateMachineConfig<Simple, Trigger> buildAndFreezeFlat() {
+        return Configs.flat().freeze();
+    }
+
+    @Benchmark
+    public StateMachineConfig<Deep, Trigger> buildAndFreezeDeep() {
+        return Configs.deep().freeze();
+    }
+}
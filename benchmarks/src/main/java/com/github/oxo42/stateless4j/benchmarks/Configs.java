@@ -0,0 +1,97 @@
+package com.github.oxo42.stateless4j.benchmarks;
+
+import com.github.oxo42.stateless4j.StateMachineConfig;
+import com.github.oxo42.stateless4j.delegates.Func;
+
+/**
+ * The configurations shared by the benchmarks
+ */
+final class Configs {
+
+    enum Simple {
+        A, B, C
+    }
+
+    enum Trigger {
+        X, Y, Z
+    }
+
+    /**
+     * A chain of nested states, {@code D0} outermost and {@code D7} innermost, with {@code E} a sibling of {@code D7}
+     */
+    enum Deep {
+        D0, D1, D2, D3, D4, D5, D6, D7, E
+    }
+
+    private Configs() {
+    }
+
+    /**
+     * Two states toggling on {@link Trigger#X}, with {@link Trigger#Z} ignored
+     *
+     * @return The configuration
+     */
+    static StateMachineConfig<Simple, Trigger> flat() {
+        StateMachineConfig<Simple, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(Simple.A)
+                .permit(Trigger.X, Simple.B)
+                .ignore(Trigger.Z);
+
+        config.configure(Simple.B)
+                .permit(Trigger.X, Simple.A)
+                .ignore(Trigger.Z);
+
+        return config;
+    }
+
+    /**
+     * Transitions between {@link Deep#D7} and {@link Deep#E} are declared on the outermost state, so every fire walks
+     * the whole chain to find its handler
+     *
+     * @return The configuration
+     */
+    static StateMachineConfig<Deep, Trigger> deep() {
+        StateMachineConfig<Deep, Trigger> config = new StateMachineConfig<>();
+
+        Deep[] chain = Deep.values();
+        for (int i = 1; i < chain.length - 1; i++) {
+            config.configure(chain[i]).substateOf(chain[i - 1]);
+        }
+        config.configure(Deep.E).substateOf(Deep.D6);
+
+        config.configure(Deep.D0)
+                .permit(Trigger.X, Deep.E)
+                .permit(Trigger.Y, Deep.D7)
+                .ignore(Trigger.Z);
+
+        return config;
+    }
+
+    /**
+     * {@link Simple#A} and {@link Simple#B} toggle on {@link Trigger#X}, with the destination chosen dynamically
+     *
+     * @return The configuration
+     */
+    static StateMachineConfig<Simple, Trigger> dynamic() {
+        StateMachineConfig<Simple, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(Simple.A)
+                .permitDynamic(Trigger.X, new Func<Simple>() {
+                    @Override
+                    public Simple call() {
+                        return Simple.B;
+                    }
+                });
+
+        config.configure(Simple.B)
+                .permitDynamic(Trigger.X, new Func<Simple>() {
+                    @Override
+                    public Simple call() {
+                        return Simple.A;
+                    }
+                });
+
+        return config;
+    }
+}
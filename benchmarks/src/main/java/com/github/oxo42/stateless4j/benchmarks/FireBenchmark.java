@@ -0,0 +1,97 @@
+package com.github.oxo42.stateless4j.benchmarks;
+
+import com.github.oxo42.stateless4j.StateMachine;
+import com.github.oxo42.stateless4j.StateMachineConfig;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Deep;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Simple;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Trigger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@code fire} on flat and deeply nested configurations, with and without freezing, and of a batch
+ * fired one trigger at a time or with {@code fireAll}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FireBenchmark {
+
+    private static final int BATCH = 64;
+
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    private StateMachine<Simple, Trigger> flat;
+    private StateMachine<Simple, Trigger> dynamic;
+    private StateMachine<Deep, Trigger> deep;
+    private final Trigger[] batch = new Trigger[BATCH];
+
+    @Setup
+    public void setUp() {
+        flat = new StateMachine<>(Simple.A, freeze(Configs.flat()));
+        dynamic = new StateMachine<>(Simple.A, freeze(Configs.dynamic()));
+        deep = new StateMachine<>(Deep.D7, freeze(Configs.deep()));
+        Arrays.fill(batch, Trigger.X);
+    }
+
+    private <S> StateMachineConfig<S, Trigger> freeze(StateMachineConfig<S, Trigger> config) {
+        return frozen ? config.freeze() : config;
+    }
+
+    @Benchmark
+    public Simple flatTransition() {
+        flat.fire(Trigger.X);
+        return flat.getState();
+    }
+
+    @Benchmark
+    public Simple flatIgnored() {
+        flat.fire(Trigger.Z);
+        return flat.getState();
+    }
+
+    @Benchmark
+    public Simple dynamicTransition() {
+        dynamic.fire(Trigger.X);
+        return dynamic.getState();
+    }
+
+    /**
+     * Two transitions, each resolved on the outermost of eight nested states
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public Deep deepTransition() {
+        deep.fire(Trigger.X);
+        deep.fire(Trigger.Y);
+        return deep.getState();
+    }
+
+    @Benchmark
+    public Deep deepIgnored() {
+        deep.fire(Trigger.Z);
+        return deep.getState();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Simple batchFiredSingly() {
+        for (Trigger trigger : batch) {
+            flat.fire(trigger);
+        }
+        return flat.getState();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Simple batchFiredAll() {
+        flat.fireAll(batch, null);
+        return flat.getState();
+    }
+}
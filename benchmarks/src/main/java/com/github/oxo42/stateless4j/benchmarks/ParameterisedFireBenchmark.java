@@ -0,0 +1,92 @@
+package com.github.oxo42.stateless4j.benchmarks;
+
+import com.github.oxo42.stateless4j.StateMachine;
+import com.github.oxo42.stateless4j.StateMachineConfig;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Simple;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Trigger;
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.Action3;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters2;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters3;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@code fire} through {@link TriggerWithParameters1}, {@link TriggerWithParameters2} and
+ * {@link TriggerWithParameters3}, including argument validation and delivery to an entry action
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParameterisedFireBenchmark {
+
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    private final Integer arg0 = 42;
+    private final String arg1 = "arg";
+    private final Long arg2 = 7L;
+
+    private StateMachine<Simple, Trigger> sm;
+    private TriggerWithParameters1<Integer, Simple, Trigger> one;
+    private TriggerWithParameters2<Integer, String, Simple, Trigger> two;
+    private TriggerWithParameters3<Integer, String, Long, Simple, Trigger> three;
+    private Object received;
+
+    @Setup
+    public void setUp() {
+        StateMachineConfig<Simple, Trigger> config = new StateMachineConfig<>();
+        one = config.setTriggerParameters(Trigger.X, Integer.class);
+        two = config.setTriggerParameters(Trigger.Y, Integer.class, String.class);
+        three = config.setTriggerParameters(Trigger.Z, Integer.class, String.class, Long.class);
+
+        config.configure(Simple.A)
+                .permitReentry(Trigger.X)
+                .permitReentry(Trigger.Y)
+                .permitReentry(Trigger.Z)
+                .onEntryFrom(one, new Action1<Integer>() {
+                    @Override
+                    public void doIt(Integer a) {
+                        received = a;
+                    }
+                }, Integer.class)
+                .onEntryFrom(two, new Action2<Integer, String>() {
+                    @Override
+                    public void doIt(Integer a, String b) {
+                        received = b;
+                    }
+                }, Integer.class, String.class)
+                .onEntryFrom(three, new Action3<Integer, String, Long>() {
+                    @Override
+                    public void doIt(Integer a, String b, Long c) {
+                        received = c;
+                    }
+                }, Integer.class, String.class, Long.class);
+
+        sm = new StateMachine<>(Simple.A, frozen ? config.freeze() : config);
+    }
+
+    @Benchmark
+    public Object fireWithOneParameter() {
+        sm.fire(one, arg0);
+        return received;
+    }
+
+    @Benchmark
+    public Object fireWithTwoParameters() {
+        sm.fire(two, arg0, arg1);
+        return received;
+    }
+
+    @Benchmark
+    public Object fireWithThreeParameters() {
+        sm.fire(three, arg0, arg1, arg2);
+        return received;
+    }
+}
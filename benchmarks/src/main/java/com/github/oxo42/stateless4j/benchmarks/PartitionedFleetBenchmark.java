@@ -0,0 +1,50 @@
+package com.github.oxo42.stateless4j.benchmarks;
+
+import com.github.oxo42.stateless4j.PartitionedFleet;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Simple;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Trigger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a {@link PartitionedFleet} handling a burst of triggers spread over its instances, by number of
+ * partitions. Scaling with partitions needs as many free cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PartitionedFleetBenchmark {
+
+    private static final int INSTANCES = 1 << 16;
+    private static final int BURST = 1 << 14;
+
+    @Param({"1", "2", "4"})
+    public int partitions;
+
+    private PartitionedFleet<Simple, Trigger> fleet;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        fleet = new PartitionedFleet<>(Configs.flat().freeze(), Simple.A, INSTANCES, partitions, 4096);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fleet.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() {
+        for (int i = 0; i < BURST; i++) {
+            fleet.send(next, Trigger.X);
+            next = (next + 1) & (INSTANCES - 1);
+        }
+        fleet.flush();
+    }
+}
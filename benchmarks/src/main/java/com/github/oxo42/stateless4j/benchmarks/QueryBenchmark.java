@@ -0,0 +1,53 @@
+package com.github.oxo42.stateless4j.benchmarks;
+
+import com.github.oxo42.stateless4j.StateMachine;
+import com.github.oxo42.stateless4j.StateMachineConfig;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Deep;
+import com.github.oxo42.stateless4j.benchmarks.Configs.Trigger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the queries that do not change state, from the innermost of eight nested states
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryBenchmark {
+
+    @Param({"false", "true"})
+    public boolean frozen;
+
+    private StateMachine<Deep, Trigger> sm;
+
+    @Setup
+    public void setUp() {
+        StateMachineConfig<Deep, Trigger> config = Configs.deep();
+        sm = new StateMachine<>(Deep.D7, frozen ? config.freeze() : config);
+    }
+
+    @Benchmark
+    public List<Trigger> getPermittedTriggers() {
+        return sm.getPermittedTriggers();
+    }
+
+    @Benchmark
+    public boolean canFire() {
+        return sm.canFire(Trigger.X);
+    }
+
+    @Benchmark
+    public boolean isInOutermostState() {
+        return sm.isInState(Deep.D0);
+    }
+
+    @Benchmark
+    public boolean isInUnrelatedState() {
+        return sm.isInState(Deep.E);
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.Action3;
+import com.github.oxo42.stateless4j.transitions.Transition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The exit and entry actions of a transition between two frozen states, in execution order. Exit actions run from the
+ * source up to, but not including, the nearest superstate that also contains the destination; entry actions run from
+ * below that superstate down to the destination.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+final class ActionChain<S, T> {
+
+    private final Action2<Transition<S, T>, Object>[] exitActions;
+    private final Action3<Transition<S, T>, Object[], Object>[] entryActions;
+
+    private ActionChain(List<Action2<Transition<S, T>, Object>> exitActions, List<Action3<Transition<S, T>, Object[], Object>> entryActions) {
+        @SuppressWarnings("unchecked")
+        Action2<Transition<S, T>, Object>[] exits = (Action2<Transition<S, T>, Object>[]) new Action2<?, ?>[exitActions.size()];
+        @SuppressWarnings("unchecked")
+        Action3<Transition<S, T>, Object[], Object>[] entries = (Action3<Transition<S, T>, Object[], Object>[]) new Action3<?, ?, ?>[entryActions.size()];
+        this.exitActions = exitActions.toArray(exits);
+        this.entryActions = entryActions.toArray(entries);
+    }
+
+    /**
+     * Collect the actions of a transition
+     *
+     * @param source      The state transitioned from
+     * @param destination The state transitioned to
+     * @param <S>         The type used to represent the states
+     * @param <T>         The type used to represent the triggers
+     * @return The actions of the transition
+     */
+    static <S, T> ActionChain<S, T> build(StateRepresentation<S, T> source, StateRepresentation<S, T> destination) {
+        List<Action2<Transition<S, T>, Object>> exits = new ArrayList<>();
+        List<Action3<Transition<S, T>, Object[], Object>> entries = new ArrayList<>();
+
+        if (source.getUnderlyingState().equals(destination.getUnderlyingState())) {
+            exits.addAll(source.getExitActions());
+            entries.addAll(destination.getEntryActions());
+            return new ActionChain<>(exits, entries);
+        }
+
+        for (StateRepresentation<S, T> level = source; level != null && !level.includes(destination.getUnderlyingState()); level = level.getSuperstate()) {
+            exits.addAll(level.getExitActions());
+        }
+
+        List<StateRepresentation<S, T>> entered = new ArrayList<>();
+        for (StateRepresentation<S, T> level = destination; level != null && !level.includes(source.getUnderlyingState()); level = level.getSuperstate()) {
+            entered.add(level);
+        }
+        for (int i = entered.size() - 1; i >= 0; i--) {
+            entries.addAll(entered.get(i).getEntryActions());
+        }
+
+        return new ActionChain<>(exits, entries);
+    }
+
+    Action2<Transition<S, T>, Object>[] getExitActions() {
+        return exitActions;
+    }
+
+    Action3<Transition<S, T>, Object[], Object>[] getEntryActions() {
+        return entryActions;
+    }
+
+    void exit(Transition<S, T> transition, Object context) {
+        for (Action2<Transition<S, T>, Object> action : exitActions) {
+            action.doIt(transition, context);
+        }
+    }
+
+    void enter(Transition<S, T> transition, Object[] entryArgs, Object context) {
+        for (Action3<Transition<S, T>, Object[], Object> action : entryActions) {
+            action.doIt(transition, entryArgs, context);
+        }
+    }
+}
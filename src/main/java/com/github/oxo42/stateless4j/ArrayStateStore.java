@@ -0,0 +1,54 @@
+package com.github.oxo42.stateless4j;
+
+import java.util.Arrays;
+
+/**
+ * A state store backed by a growable {@code int} array
+ */
+final class ArrayStateStore implements StateStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] codes;
+    private int size;
+
+    ArrayStateStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    ArrayStateStore(int capacity) {
+        codes = new int[Math.max(capacity, INITIAL_CAPACITY)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int get(int slot) {
+        checkSlot(slot);
+        return codes[slot];
+    }
+
+    @Override
+    public void set(int slot, int code) {
+        checkSlot(slot);
+        codes[slot] = code;
+    }
+
+    @Override
+    public int add(int code) {
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, codes.length * 2);
+        }
+        codes[size] = code;
+        return size++;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("No slot " + slot);
+        }
+    }
+}
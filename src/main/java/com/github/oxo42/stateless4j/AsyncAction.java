@@ -0,0 +1,86 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.Action3;
+import com.github.oxo42.stateless4j.transitions.Transition;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * An asynchronous entry or exit action, registered alongside the synchronous ones.
+ * <p>
+ * An {@link AsyncStateMachine} recognises it and suspends the transition until the action completes. Any other state
+ * machine runs it like a synchronous action, blocking until it completes.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+final class AsyncAction<S, T> implements Action2<Transition<S, T>, Object>, Action3<Transition<S, T>, Object[], Object> {
+
+    private final T trigger;
+    private final Action2<Transition<S, T>, Completion> action;
+
+    /**
+     * @param trigger The trigger the action is restricted to, or null to run on every transition
+     * @param action  The action
+     */
+    AsyncAction(T trigger, Action2<Transition<S, T>, Completion> action) {
+        assert action != null : "action is null";
+        this.trigger = trigger;
+        this.action = action;
+    }
+
+    boolean appliesTo(Transition<S, T> transition) {
+        return trigger == null || trigger.equals(transition.getTrigger());
+    }
+
+    void start(Transition<S, T> transition, Completion completion) {
+        action.doIt(transition, completion);
+    }
+
+    @Override
+    public void doIt(Transition<S, T> transition, Object context) {
+        if (appliesTo(transition)) {
+            await(transition);
+        }
+    }
+
+    @Override
+    public void doIt(Transition<S, T> transition, Object[] args, Object context) {
+        if (appliesTo(transition)) {
+            await(transition);
+        }
+    }
+
+    private void await(Transition<S, T> transition) {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Throwable[] failure = new Throwable[1];
+        start(transition, new Completion() {
+            @Override
+            public void complete() {
+                done.countDown();
+            }
+
+            @Override
+            public void fail(Throwable cause) {
+                failure[0] = cause;
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for an asynchronous action", e);
+        }
+        if (failure[0] instanceof RuntimeException) {
+            throw (RuntimeException) failure[0];
+        }
+        if (failure[0] instanceof Error) {
+            throw (Error) failure[0];
+        }
+        if (failure[0] != null) {
+            throw new IllegalStateException("Asynchronous action failed", failure[0]);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.Action3;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters2;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters3;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A state machine whose transitions run on an {@link Executor}.
+ * <p>
+ * {@code fireAsync} queues the trigger and returns at once. Queued triggers are processed one at a time, in the order
+ * they were fired, so a machine never runs two transitions at once even on a multi-threaded executor. An asynchronous
+ * action, registered with {@link StateConfiguration#onEntryAsync} or {@link StateConfiguration#onExitAsync}, suspends
+ * the transition without holding a thread; it resumes on the executor once the action signals its {@link Completion}.
+ * <p>
+ * The returned {@link FireFuture} reports the {@link FireResult}, as {@code tryFire} would, and runs listeners once it
+ * is known, so callers need not block; unhandled triggers do not reach the unhandled trigger action. A failing action fails the future and abandons the rest of its transition, later triggers
+ * are still processed. If the executor rejects a task, every queued trigger fails with the executor's exception.
+ * Triggers fired from actions should use {@code fireAsync}, which queues them behind the current transition. Mixing
+ * {@code fire} with pending asynchronous triggers is not safe.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public class AsyncStateMachine<S, T> extends StateMachine<S, T> {
+
+    private final Executor executor;
+    private final Queue<Run> pending = new ArrayDeque<>(); // guarded by itself
+    private boolean running; // guarded by pending
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Construct a state machine
+     *
+     * @param initialState The initial state
+     * @param config       State machine configuration
+     * @param executor     The executor transitions run on
+     */
+    public AsyncStateMachine(S initialState, StateMachineConfig<S, T> config, Executor executor) {
+        super(initialState, config);
+        assert executor != null : "executor is null";
+        this.executor = executor;
+    }
+
+    /**
+     * Queue a transition from the current state via the specified trigger
+     *
+     * @param trigger The trigger to fire
+     * @return The outcome, once the transition has completed
+     */
+    public FireFuture fireAsync(T trigger) {
+        return publicFireAsync(trigger, NO_ARGS);
+    }
+
+    /**
+     * Queue a transition from the current state via the specified trigger
+     *
+     * @param trigger The trigger to fire
+     * @param arg0    The first argument
+     * @param <TArg0> Type of the first trigger argument
+     * @return The outcome, once the transition has completed
+     */
+    public <TArg0> FireFuture fireAsync(TriggerWithParameters1<TArg0, S, T> trigger, TArg0 arg0) {
+        assert trigger != null : "trigger is null";
+        return publicFireAsync(trigger.getTrigger(), arg0);
+    }
+
+    /**
+     * Queue a transition from the current state via the specified trigger
+     *
+     * @param trigger The trigger to fire
+     * @param arg0    The first argument
+     * @param arg1    The second argument
+     * @param <TArg0> Type of the first trigger argument
+     * @param <TArg1> Type of the second trigger argument
+     * @return The outcome, once the transition has completed
+     */
+    public <TArg0, TArg1> FireFuture fireAsync(TriggerWithParameters2<TArg0, TArg1, S, T> trigger, TArg0 arg0, TArg1 arg1) {
+        assert trigger != null : "trigger is null";
+        return publicFireAsync(trigger.getTrigger(), arg0, arg1);
+    }
+
+    /**
+     * Queue a transition from the current state via the specified trigger
+     *
+     * @param trigger The trigger to fire
+     * @param arg0    The first argument
+     * @param arg1    The second argument
+     * @param arg2    The third argument
+     * @param <TArg0> Type of the first trigger argument
+     * @param <TArg1> Type of the second trigger argument
+     * @param <TArg2> Type of the third trigger argument
+     * @return The outcome, once the transition has completed
+     */
+    public <TArg0, TArg1, TArg2> FireFuture fireAsync(TriggerWithParameters3<TArg0, TArg1, TArg2, S, T> trigger, TArg0 arg0, TArg1 arg1, TArg2 arg2) {
+        assert trigger != null : "trigger is null";
+        return publicFireAsync(trigger.getTrigger(), arg0, arg1, arg2);
+    }
+
+    protected FireFuture publicFireAsync(T trigger, Object... args) {
+        Dispatch.validateParameters(config, trigger, args);
+
+        Run run = new Run(trigger, args);
+        boolean start;
+        synchronized (pending) {
+            pending.add(run);
+            start = !running;
+            running = true;
+        }
+        if (start) {
+            try {
+                executor.execute(drain);
+            } catch (RuntimeException e) {
+                abandon(e);
+                throw e;
+            }
+        }
+        return run.future;
+    }
+
+    /**
+     * Fail every queued trigger after the executor refused to run them, so later triggers start the machine again
+     *
+     * @param cause The executor's exception
+     */
+    private void abandon(RuntimeException cause) {
+        List<Run> dropped;
+        synchronized (pending) {
+            dropped = new ArrayList<>(pending);
+            pending.clear();
+            running = false;
+        }
+        for (Run run : dropped) {
+            run.future.fail(cause);
+        }
+    }
+
+    private void drain() {
+        for (; ; ) {
+            Run run;
+            synchronized (pending) {
+                run = pending.poll();
+                if (run == null) {
+                    running = false;
+                    return;
+                }
+            }
+            if (!run.proceed()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * One queued trigger. Only one run is in progress at a time; its fields are handed between executor threads by
+     * {@link Executor#execute}, which orders the writes before the reads.
+     */
+    private final class Run {
+
+        private final T trigger;
+        private final Object[] args;
+        private final FireFuture future = new FireFuture();
+        private Object context;
+        private S target;
+        private Transition<S, T> transition;
+        private Action2<Transition<S, T>, Object>[] exitActions;
+        private Action3<Transition<S, T>, Object[], Object>[] entryActions;
+        private int position = -1; // -1 until resolved, then the index of the next action, exits first
+
+        Run(T trigger, Object[] args) {
+            this.trigger = trigger;
+            this.args = args;
+        }
+
+        /**
+         * Advance the transition until it completes or an asynchronous action suspends it
+         *
+         * @return True if the run has finished, false if it is suspended
+         */
+        boolean proceed() {
+            try {
+                if (position < 0 && !resolve()) {
+                    return true;
+                }
+                while (position < exitActions.length) {
+                    Action2<Transition<S, T>, Object> action = exitActions[position++];
+                    if (suspendOn(action)) {
+                        return false;
+                    }
+                    action.doIt(transition, context);
+                }
+                if (position == exitActions.length) {
+                    transitionTo(target, trigger);
+                }
+                while (position - exitActions.length < entryActions.length) {
+                    Action3<Transition<S, T>, Object[], Object> action = entryActions[position++ - exitActions.length];
+                    if (suspendOn(action)) {
+                        return false;
+                    }
+                    action.doIt(transition, args, context);
+                }
+                future.set(FireResult.TRANSITIONED);
+            } catch (RuntimeException | Error e) {
+                future.fail(e);
+            }
+            return true;
+        }
+
+        private boolean resolve() {
+            context = getContext();
+            StateRepresentation<S, T> representation = getCurrentRepresentation();
+            TriggerBehaviour<S, T> triggerBehaviour = findHandler(representation, trigger);
+            FireResult resolved = Dispatch.resolve(config, representation, trigger, triggerBehaviour, args, context, destination);
+            if (resolved != FireResult.TRANSITIONED) {
+                future.set(resolved);
+                return false;
+            }
+            target = destination.get();
+            transition = representation.getTransition(target, trigger);
+            StateRepresentation<S, T> targetRepresentation = getRepresentation(target);
+            ActionChain<S, T> actions = representation.isFrozen()
+                    ? representation.getActionChain(targetRepresentation)
+                    : ActionChain.build(representation, targetRepresentation);
+            exitActions = actions.getExitActions();
+            entryActions = actions.getEntryActions();
+            position = 0;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean suspendOn(Object action) {
+            if (!(action instanceof AsyncAction)) {
+                return false;
+            }
+            AsyncAction<S, T> asyncAction = (AsyncAction<S, T>) action;
+            if (!asyncAction.appliesTo(transition)) {
+                return false;
+            }
+            asyncAction.start(transition, new Resume(this));
+            return true;
+        }
+    }
+
+    /**
+     * Continues a suspended run on the executor once its asynchronous action completes
+     */
+    private final class Resume implements Completion, Runnable {
+
+        private final Run run;
+        private final AtomicBoolean signalled = new AtomicBoolean();
+        private Throwable failure;
+
+        Resume(Run run) {
+            this.run = run;
+        }
+
+        @Override
+        public void complete() {
+            signal(null);
+        }
+
+        @Override
+        public void fail(Throwable cause) {
+            signal(cause == null ? new IllegalStateException("Asynchronous action failed") : cause);
+        }
+
+        private void signal(Throwable cause) {
+            if (!signalled.compareAndSet(false, true)) {
+                throw new IllegalStateException("Asynchronous action completed more than once");
+            }
+            failure = cause;
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                run.future.fail(cause == null ? e : cause);
+                abandon(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void run() {
+            if (failure != null) {
+                run.future.fail(failure);
+            } else if (!run.proceed()) {
+                return;
+            }
+            drain();
+        }
+    }
+}
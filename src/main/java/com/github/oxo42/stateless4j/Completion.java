@@ -0,0 +1,20 @@
+package com.github.oxo42.stateless4j;
+
+/**
+ * Signals the end of an asynchronous entry or exit action. Exactly one of the methods must be called, once, from any
+ * thread.
+ */
+public interface Completion {
+
+    /**
+     * The action succeeded, the transition continues
+     */
+    void complete();
+
+    /**
+     * The action failed, the transition is abandoned
+     *
+     * @param cause The failure
+     */
+    void fail(Throwable cause);
+}
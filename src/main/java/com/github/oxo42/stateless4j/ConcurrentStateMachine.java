@@ -0,0 +1,154 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Func;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A state machine that may be shared between threads.
+ * <p>
+ * A fire claims the machine's lock before running any action, so the exit actions, state change and entry actions of
+ * one transition never interleave with those of another. {@link #fire(Object)} blocks until it claims the machine;
+ * {@link #tryFire(Object)} returns {@link FireResult#CONFLICT} instead of waiting. A batch fired with
+ * {@code fireAll} claims the machine once for the whole batch, and a fire or rollback made by {@link MachineLocks}
+ * waits for it like {@link #fire(Object)}. Actions may fire further triggers on the thread that
+ * claimed the machine. A timeout that falls due while the machine is claimed is retried on the timing wheel's next
+ * tick.
+ * <p>
+ * The current state is published through an atomic reference, so {@link #getState()}, {@link #isInState(Object)} and
+ * {@link #canFire(Object)} never wait for a fire in progress. They see the destination state as soon as the exit
+ * actions of a transition have run. The configuration must be frozen, so that these reads need no locking either.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public class ConcurrentStateMachine<S, T> extends StateMachine<S, T> {
+
+    private final ReentrantLock firing = new ReentrantLock();
+
+    /**
+     * Construct a state machine
+     *
+     * @param initialState The initial state
+     * @param config       Frozen state machine configuration
+     */
+    public ConcurrentStateMachine(S initialState, StateMachineConfig<S, T> config) {
+        this(initialState, new AtomicReference<S>(), config);
+    }
+
+    private ConcurrentStateMachine(S initialState, final AtomicReference<S> state, StateMachineConfig<S, T> config) {
+        super(initialState, new Func<S>() {
+            @Override
+            public S call() {
+                return state.get();
+            }
+        }, new Action1<S>() {
+            @Override
+            public void doIt(S s) {
+                state.set(s);
+            }
+        }, config);
+        if (!config.isFrozen()) {
+            throw new IllegalStateException("A ConcurrentStateMachine requires a frozen configuration");
+        }
+    }
+
+    @Override
+    protected void publicFire(T trigger, Object... args) {
+        claim(true);
+        try {
+            super.publicFire(trigger, args);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    protected FireResult publicTryFire(T trigger, Object... args) {
+        if (!claim(false)) {
+            return FireResult.CONFLICT;
+        }
+        try {
+            return super.publicTryFire(trigger, args);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    protected int publicFireAll(Iterator<T> triggers, Object[][] args) {
+        claim(true);
+        try {
+            return super.publicFireAll(triggers, args);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    FireResult fireInGroup(T trigger, OutVar<S> source) {
+        claim(true);
+        try {
+            return super.fireInGroup(trigger, source);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    void rollBack(S previous) {
+        // Claim the machine so a timeout cannot fire between the state and its timers being put back
+        claim(true);
+        try {
+            super.rollBack(previous);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void scheduleTimeoutsOn(TimingWheel wheel) {
+        claim(true);
+        try {
+            super.scheduleTimeoutsOn(wheel);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    void fireTimeout(StateTimers.Armed<S, T> timer) {
+        // Claim the machine first, so the timeout cannot be disarmed by a transition in progress. Waiting would hold
+        // up every other timer of the wheel behind this machine's actions, so try again on the next tick instead.
+        if (!claim(false)) {
+            timer.retry();
+            return;
+        }
+        try {
+            super.fireTimeout(timer);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Claim the machine for the current thread, which may already hold it
+     *
+     * @param wait True to wait for a fire in progress on another thread, false to give up at once
+     * @return True if the machine was claimed
+     */
+    private boolean claim(boolean wait) {
+        if (wait) {
+            firing.lock();
+            return true;
+        }
+        return firing.tryLock();
+    }
+
+    private void release() {
+        firing.unlock();
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Func2;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean1;
+
+/**
+ * A guard that is met when a discriminator of the state machine's context returns a particular key.
+ * <p>
+ * The context counterpart of {@link DiscriminatedGuard}: guards of the same trigger and state that share a
+ * discriminator instance and use distinct keys are mutually exclusive by construction, and a frozen configuration
+ * resolves the trigger by calling the discriminator with the context a single time.
+ *
+ * @param <C> Type of the state machine context
+ * @param <K> The type of the key returned by the discriminator
+ */
+public final class ContextDiscriminatedGuard<C, K> implements FuncBoolean1<C> {
+
+    private final Func2<C, K> discriminator;
+    private final K key;
+
+    /**
+     * Construct a guard
+     *
+     * @param discriminator Function of the state machine's context whose result selects the behaviour
+     * @param key           The result for which this guard is met
+     */
+    public ContextDiscriminatedGuard(Func2<C, K> discriminator, K key) {
+        assert discriminator != null : "discriminator is null";
+        this.discriminator = discriminator;
+        this.key = key;
+    }
+
+    public Func2<C, K> getDiscriminator() {
+        return discriminator;
+    }
+
+    public K getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean call(C context) {
+        K actual = discriminator.call(context);
+        return key == null ? actual == null : key.equals(actual);
+    }
+}
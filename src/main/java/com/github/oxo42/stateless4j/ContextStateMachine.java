@@ -0,0 +1,50 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Func;
+
+/**
+ * A state machine that carries a context, passed to the context-aware guards and actions of its configuration.
+ * <p>
+ * Guards and actions that take the context hold no per-instance state, so one frozen {@link StateMachineConfig} can
+ * drive any number of machines, each over its own context. A plain {@link StateMachine} passes null as the context.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ * @param <C> The type of the context
+ */
+public class ContextStateMachine<S, T, C> extends StateMachine<S, T> {
+
+    private final C context;
+
+    /**
+     * Construct a state machine
+     *
+     * @param initialState The initial state
+     * @param config       State machine configuration
+     * @param context      The context passed to guards and actions
+     */
+    public ContextStateMachine(S initialState, StateMachineConfig<S, T> config, C context) {
+        super(initialState, config);
+        this.context = context;
+    }
+
+    /**
+     * Construct a state machine with external state storage.
+     *
+     * @param initialState  The initial state
+     * @param stateAccessor State accessor
+     * @param stateMutator  State mutator
+     * @param config        State machine configuration
+     * @param context       The context passed to guards and actions
+     */
+    public ContextStateMachine(S initialState, Func<S> stateAccessor, Action1<S> stateMutator, StateMachineConfig<S, T> config, C context) {
+        super(initialState, stateAccessor, stateMutator, config);
+        this.context = context;
+    }
+
+    @Override
+    public C getContext() {
+        return context;
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Func;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+
+/**
+ * A guard that is met when a discriminator returns a particular key.
+ * <p>
+ * Guards of the same trigger and state that share a discriminator instance and use distinct keys are mutually
+ * exclusive by construction. A frozen configuration checks this once and then resolves the trigger by calling the
+ * discriminator a single time and looking up the behaviour for the key, without evaluating any other guard.
+ *
+ * @param <K> The type of the key returned by the discriminator
+ */
+public final class DiscriminatedGuard<K> implements FuncBoolean {
+
+    private final Func<K> discriminator;
+    private final K key;
+
+    /**
+     * Construct a guard
+     *
+     * @param discriminator Function whose result selects the behaviour
+     * @param key           The result for which this guard is met
+     */
+    public DiscriminatedGuard(Func<K> discriminator, K key) {
+        assert discriminator != null : "discriminator is null";
+        this.discriminator = discriminator;
+        this.key = key;
+    }
+
+    public Func<K> getDiscriminator() {
+        return discriminator;
+    }
+
+    public K getKey() {
+        return key;
+    }
+
+    @Override
+    public boolean call() {
+        K actual = discriminator.call();
+        return key == null ? actual == null : key.equals(actual);
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters;
+
+/**
+ * The steps of firing a trigger shared by {@link StateMachine}, {@link AsyncStateMachine} and
+ * {@link StateMachineFleet}, which differ only in where they keep the state and what they do around a transition
+ */
+final class Dispatch {
+
+    private Dispatch() {
+    }
+
+    /**
+     * The default unhandled trigger action, which throws
+     *
+     * @param <S> The type used to represent the states
+     * @param <T> The type used to represent the triggers
+     * @return The action
+     */
+    static <S, T> Action2<S, T> throwingUnhandledTriggerAction() {
+        return new Action2<S, T>() {
+
+            public void doIt(S state, T trigger) {
+                throw new IllegalStateException(
+                        String.format(
+                                "No valid leaving transitions are permitted from state '%s' for trigger '%s'. Consider ignoring the trigger.",
+                                state, trigger)
+                );
+            }
+
+        };
+    }
+
+    /**
+     * Check the arguments of a trigger against its configured parameters, if it has any
+     *
+     * @param config  The configuration
+     * @param trigger The trigger
+     * @param args    The trigger arguments
+     * @param <S>     The type used to represent the states
+     * @param <T>     The type used to represent the triggers
+     */
+    static <S, T> void validateParameters(StateMachineConfig<S, T> config, T trigger, Object[] args) {
+        TriggerWithParameters<S, T> configuration = config.getTriggerConfiguration(trigger);
+        if (configuration != null) {
+            configuration.validateParameters(args);
+        }
+    }
+
+    /**
+     * Work out what the behaviour found for a trigger does
+     *
+     * @param config         The configuration
+     * @param representation The current state
+     * @param trigger        The trigger
+     * @param behaviour      The behaviour handling the trigger, or null if none does
+     * @param args           The trigger arguments
+     * @param context        The context passed to the destination selector
+     * @param destination    Receives the destination state when the result is {@link FireResult#TRANSITIONED}
+     * @param <S>            The type used to represent the states
+     * @param <T>            The type used to represent the triggers
+     * @return {@link FireResult#TRANSITIONED} if a transition is to be taken, otherwise the outcome of the fire
+     */
+    static <S, T> FireResult resolve(StateMachineConfig<S, T> config, StateRepresentation<S, T> representation, T trigger,
+                                     TriggerBehaviour<S, T> behaviour, Object[] args, Object context, OutVar<S> destination) {
+        if (behaviour == null) {
+            return config.hasBehavioursFor(representation, trigger) ? FireResult.GUARD_REJECTED : FireResult.UNHANDLED;
+        }
+        destination.set(null);
+        if (!behaviour.resultsInTransitionFrom(representation.getUnderlyingState(), args, context, destination)) {
+            return FireResult.IGNORED;
+        }
+        return FireResult.TRANSITIONED;
+    }
+
+    /**
+     * True if a result is reported through the unhandled trigger action
+     *
+     * @param result The outcome of a fire
+     * @return True if the trigger was not handled
+     */
+    static boolean isRejected(FireResult result) {
+        return result == FireResult.UNHANDLED || result == FireResult.GUARD_REJECTED;
+    }
+}
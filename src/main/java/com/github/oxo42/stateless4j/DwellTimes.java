@@ -0,0 +1,174 @@
+package com.github.oxo42.stateless4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Histograms of the time state machines stay in each state.
+ * <p>
+ * The time is measured from the state change that enters a state to the state change that leaves it. A superstate is
+ * left only when a machine moves to a state outside it, so its histogram holds the whole time spent in any of its
+ * substates. A transition from a state to itself leaves and re-enters that state only. States are identified by
+ * their positions in the list supplied on construction; other states are not timed.
+ * <p>
+ * Recording is thread-safe, so one set of dwell times can be shared by a whole population of machines and
+ * snapshotted while they run. A machine records nothing until the dwell times are set with
+ * {@link StateMachine#setDwellTimes(DwellTimes)}.
+ *
+ * @param <S> The type used to represent the states
+ */
+public class DwellTimes<S> {
+
+    private final S[] states;
+    private final Map<S, Integer> stateCodes = new HashMap<>();
+    private final AtomicReferenceArray<LatencyHistogram> histograms;
+
+    /**
+     * Construct empty dwell times
+     *
+     * @param states The states to time
+     */
+    public DwellTimes(S[] states) {
+        assert states != null : "states is null";
+        this.states = states.clone();
+        for (int i = 0; i < states.length; i++) {
+            stateCodes.put(states[i], i);
+        }
+        histograms = new AtomicReferenceArray<>(states.length);
+    }
+
+    /**
+     * The time spent in a state before leaving it
+     *
+     * @param state The state
+     * @return A copy of the histogram
+     */
+    public LatencyHistogram getDwellTime(S state) {
+        Integer code = stateCodes.get(state);
+        LatencyHistogram histogram = code == null ? null : histograms.get(code);
+        return histogram == null ? new LatencyHistogram() : histogram.copy();
+    }
+
+    /**
+     * A copy of the dwell times as they are now, which further transitions do not change
+     *
+     * @return The copy
+     */
+    public DwellTimes<S> snapshot() {
+        DwellTimes<S> copy = new DwellTimes<>(states);
+        for (int i = 0; i < histograms.length(); i++) {
+            LatencyHistogram histogram = histograms.get(i);
+            if (histogram != null) {
+                copy.histograms.set(i, histogram.copy());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Forget every dwell time
+     */
+    public void reset() {
+        for (int i = 0; i < histograms.length(); i++) {
+            histograms.set(i, null);
+        }
+    }
+
+    /**
+     * Start timing a machine in its current state and that state's superstates
+     *
+     * @param current The current state
+     * @param <T>     The type used to represent the triggers
+     * @return The times the current state and its superstates were entered, by depth below the outermost superstate,
+     * to be passed to {@link #transition}
+     */
+    <T> long[] start(StateRepresentation<S, T> current) {
+        long[] enteredAt = new long[depthOf(current) + 1];
+        Arrays.fill(enteredAt, System.nanoTime());
+        return enteredAt;
+    }
+
+    /**
+     * Record the dwell times of the states left by a state change and note the time the new states were entered.
+     * The states both sides share are the outermost ones, so they keep their entries.
+     *
+     * @param source      The state left
+     * @param destination The state entered
+     * @param enteredAt   The entry times returned by {@link #start} or the previous transition
+     * @param <T>         The type used to represent the triggers
+     * @return The entry times, reallocated only if the destination is nested deeper than any state before
+     */
+    <T> long[] transition(StateRepresentation<S, T> source, StateRepresentation<S, T> destination, long[] enteredAt) {
+        return move(source, destination, enteredAt, true);
+    }
+
+    /**
+     * Note the time the states returned to by a rollback were entered, without recording the dwell times of the
+     * states left, which the rollback undoes
+     *
+     * @param source      The state left
+     * @param destination The state returned to
+     * @param enteredAt   The entry times returned by {@link #start} or the previous transition
+     * @param <T>         The type used to represent the triggers
+     * @return The entry times, reallocated only if the destination is nested deeper than any state before
+     */
+    <T> long[] restart(StateRepresentation<S, T> source, StateRepresentation<S, T> destination, long[] enteredAt) {
+        return move(source, destination, enteredAt, false);
+    }
+
+    private <T> long[] move(StateRepresentation<S, T> source, StateRepresentation<S, T> destination, long[] enteredAt,
+                            boolean record) {
+        long now = System.nanoTime();
+        if (source.getUnderlyingState().equals(destination.getUnderlyingState())) {
+            int depth = depthOf(source);
+            if (record) {
+                leave(source.getUnderlyingState(), enteredAt[depth], now);
+            }
+            enteredAt[depth] = now;
+            return enteredAt;
+        }
+        if (record) {
+            int depth = depthOf(source);
+            for (StateRepresentation<S, T> level = source; level != null && !level.includes(destination.getUnderlyingState()); level = level.getSuperstate()) {
+                leave(level.getUnderlyingState(), enteredAt[depth--], now);
+            }
+        }
+        int depth = depthOf(destination);
+        if (depth >= enteredAt.length) {
+            enteredAt = Arrays.copyOf(enteredAt, depth + 1);
+        }
+        for (StateRepresentation<S, T> level = destination; level != null && !level.includes(source.getUnderlyingState()); level = level.getSuperstate()) {
+            enteredAt[depth--] = now;
+        }
+        return enteredAt;
+    }
+
+    private static int depthOf(StateRepresentation<?, ?> representation) {
+        int depth = 0;
+        for (StateRepresentation<?, ?> level = representation.getSuperstate(); level != null; level = level.getSuperstate()) {
+            depth++;
+        }
+        return depth;
+    }
+
+    private void leave(S state, long enteredAt, long now) {
+        Integer code = stateCodes.get(state);
+        if (code != null) {
+            histogram(code).record(now - enteredAt);
+        }
+    }
+
+    private LatencyHistogram histogram(int code) {
+        LatencyHistogram histogram = histograms.get(code);
+        while (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            if (histograms.compareAndSet(code, null, created)) {
+                return created;
+            }
+            histogram = histograms.get(code);
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Func;
+
+/**
+ * A state machine for enum states and triggers. Once its {@link EnumStateMachineConfig} is frozen, trigger dispatch,
+ * {@link #canFire(Enum)} and {@link #isInState(Enum)} are constant-time array reads.
+ * <p>
+ * The array lookups live in the configuration, so a {@link ContextStateMachine} driven by a frozen
+ * {@link EnumStateMachineConfig} gets them as well.
+ *
+ * @param <S> The enum used to represent the states
+ * @param <T> The enum used to represent the triggers that cause state transitions
+ */
+public class EnumStateMachine<S extends Enum<S>, T extends Enum<T>> extends StateMachine<S, T> {
+
+    /**
+     * Construct a state machine
+     *
+     * @param initialState The initial state
+     * @param config       State machine configuration
+     */
+    public EnumStateMachine(S initialState, EnumStateMachineConfig<S, T> config) {
+        super(initialState, config);
+    }
+
+    /**
+     * Construct a state machine with external state storage.
+     *
+     * @param initialState  The initial state
+     * @param stateAccessor State accessor
+     * @param stateMutator  State mutator
+     * @param config        State machine configuration
+     */
+    public EnumStateMachine(S initialState, Func<S> stateAccessor, Action1<S> stateMutator, EnumStateMachineConfig<S, T> config) {
+        super(initialState, stateAccessor, stateMutator, config);
+    }
+}
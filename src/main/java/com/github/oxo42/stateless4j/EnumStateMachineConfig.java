@@ -0,0 +1,117 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+/**
+ * A state machine configuration for enum states and triggers.
+ * <p>
+ * When frozen, representations are indexed by state ordinal, trigger dispatch uses a
+ * {@code [stateOrdinal][triggerOrdinal]} table and superstate membership is an ordinal bitset per state, so an
+ * {@link EnumStateMachine} answers {@code fire}, {@code canFire} and {@code isInState} with array reads.
+ *
+ * @param <S> The enum used to represent the states
+ * @param <T> The enum used to represent the triggers that cause state transitions
+ */
+public class EnumStateMachineConfig<S extends Enum<S>, T extends Enum<T>> extends StateMachineConfig<S, T> {
+
+    private final Class<S> stateClass;
+    private final Class<T> triggerClass;
+    private HandlerChain<S, T>[][] handlers;
+    private long[][] ancestors;
+    private volatile StateRepresentation<S, T>[] representations; // written last, publishes the tables
+
+    /**
+     * Construct a configuration
+     *
+     * @param stateClass   The enum used to represent the states
+     * @param triggerClass The enum used to represent the triggers
+     */
+    public EnumStateMachineConfig(Class<S> stateClass, Class<T> triggerClass) {
+        assert stateClass != null : "stateClass is null";
+        assert triggerClass != null : "triggerClass is null";
+        this.stateClass = stateClass;
+        this.triggerClass = triggerClass;
+    }
+
+    public Class<S> getStateClass() {
+        return stateClass;
+    }
+
+    public Class<T> getTriggerClass() {
+        return triggerClass;
+    }
+
+    @Override
+    public StateRepresentation<S, T> getRepresentation(S state) {
+        StateRepresentation<S, T>[] byOrdinal = representations;
+        return byOrdinal == null ? super.getRepresentation(state) : byOrdinal[state.ordinal()];
+    }
+
+    @Override
+    TriggerBehaviour<S, T> findHandler(StateRepresentation<S, T> representation, T trigger, Object context) {
+        if (representations == null) {
+            return super.findHandler(representation, trigger, context);
+        }
+        HandlerChain<S, T> chain = handlers[representation.getUnderlyingState().ordinal()][trigger.ordinal()];
+        return chain == null ? null : chain.find(context);
+    }
+
+    @Override
+    boolean isInState(StateRepresentation<S, T> representation, S state) {
+        if (representations == null) {
+            return super.isInState(representation, state);
+        }
+        int of = state.ordinal();
+        return (ancestors[representation.getUnderlyingState().ordinal()][of >>> 6] & (1L << of)) != 0;
+    }
+
+    @Override
+    boolean hasBehavioursFor(StateRepresentation<S, T> representation, T trigger) {
+        if (representations == null) {
+            return super.hasBehavioursFor(representation, trigger);
+        }
+        return handlers[representation.getUnderlyingState().ordinal()][trigger.ordinal()] != null;
+    }
+
+    /**
+     * Complete the configuration. Every state gets a representation, even if it was never configured, and the
+     * ordinal-indexed dispatch and superstate tables are built.
+     *
+     * @return The receiver
+     */
+    @Override
+    public EnumStateMachineConfig<S, T> freeze() {
+        if (isFrozen()) {
+            return this;
+        }
+
+        S[] states = stateClass.getEnumConstants();
+        T[] triggers = triggerClass.getEnumConstants();
+        for (S state : states) {
+            configure(state);
+        }
+        super.freeze();
+
+        @SuppressWarnings("unchecked")
+        StateRepresentation<S, T>[] byOrdinal = (StateRepresentation<S, T>[]) new StateRepresentation<?, ?>[states.length];
+        @SuppressWarnings("unchecked")
+        HandlerChain<S, T>[][] table = (HandlerChain<S, T>[][]) new HandlerChain<?, ?>[states.length][triggers.length];
+        long[][] included = new long[states.length][(states.length + 63) >>> 6];
+        for (S state : states) {
+            int ordinal = state.ordinal();
+            StateRepresentation<S, T> representation = super.getRepresentation(state);
+            byOrdinal[ordinal] = representation;
+            for (T trigger : triggers) {
+                table[ordinal][trigger.ordinal()] = representation.getHandlerChain(trigger);
+            }
+            for (StateRepresentation<S, T> level = representation; level != null; level = level.getSuperstate()) {
+                int of = level.getUnderlyingState().ordinal();
+                included[ordinal][of >>> 6] |= 1L << of;
+            }
+        }
+        handlers = table;
+        ancestors = included;
+        representations = byOrdinal;
+        return this;
+    }
+}
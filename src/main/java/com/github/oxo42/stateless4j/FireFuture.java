@@ -0,0 +1,125 @@
+package com.github.oxo42.stateless4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending outcome of an asynchronous fire. It completes exactly once and cannot be cancelled, since a transition
+ * that has started must be allowed to finish.
+ * <p>
+ * Besides waiting with {@link #get()}, a caller can register a listener with {@link #addListener(Runnable, Executor)},
+ * which runs once the outcome is known, so no thread has to block for it.
+ */
+public final class FireFuture implements Future<FireResult> {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile FireResult result;
+    private volatile Throwable failure;
+    private List<Runnable> listeners = new ArrayList<>(); // guarded by this, null once complete
+    private List<Executor> executors = new ArrayList<>(); // guarded by this, null once complete
+
+    FireFuture() {
+    }
+
+    /**
+     * Run a listener once the fire completes, or at once if it already has
+     *
+     * @param listener The listener, which may call {@link #get()} without blocking
+     * @param executor The executor the listener runs on
+     */
+    public void addListener(Runnable listener, Executor executor) {
+        assert listener != null : "listener is null";
+        assert executor != null : "executor is null";
+        synchronized (this) {
+            if (listeners != null) {
+                listeners.add(listener);
+                executors.add(executor);
+                return;
+            }
+        }
+        execute(listener, executor);
+    }
+
+    void set(FireResult value) {
+        complete(value, null);
+    }
+
+    void fail(Throwable cause) {
+        complete(null, cause);
+    }
+
+    private void complete(FireResult value, Throwable cause) {
+        List<Runnable> notified;
+        List<Executor> notifiedOn;
+        synchronized (this) {
+            if (listeners == null) {
+                return;
+            }
+            result = value;
+            failure = cause;
+            done.countDown();
+            notified = listeners;
+            notifiedOn = executors;
+            listeners = null;
+            executors = null;
+        }
+        for (int i = 0; i < notified.size(); i++) {
+            execute(notified.get(i), notifiedOn.get(i));
+        }
+    }
+
+    private void execute(Runnable listener, Executor executor) {
+        try {
+            executor.execute(listener);
+        } catch (RuntimeException e) {
+            logger.error("Cannot run the listener of an asynchronous fire", e);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public FireResult get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    @Override
+    public FireResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private FireResult report() throws ExecutionException {
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+}
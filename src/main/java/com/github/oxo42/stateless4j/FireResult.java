@@ -0,0 +1,47 @@
+package com.github.oxo42.stateless4j;
+
+/**
+ * The outcome of {@link StateMachine#tryFire(Object)}
+ */
+public enum FireResult {
+
+    /**
+     * The trigger caused a transition, possibly a reentry, and its actions were run
+     */
+    TRANSITIONED,
+
+    /**
+     * The trigger was accepted and ignored, the state is unchanged
+     */
+    IGNORED,
+
+    /**
+     * Neither the current state nor any superstate is configured for the trigger
+     */
+    UNHANDLED,
+
+    /**
+     * The trigger is configured for the current state or a superstate, but no guard was met
+     */
+    GUARD_REJECTED,
+
+    /**
+     * The trigger was fired from an action of a machine in {@link FiringMode#QUEUED} mode, it will be processed once
+     * the current transition has completed
+     */
+    QUEUED,
+
+    /**
+     * Another thread was firing a trigger on the same {@link ConcurrentStateMachine}, nothing was done
+     */
+    CONFLICT;
+
+    /**
+     * True if the trigger was accepted, either transitioning or ignored
+     *
+     * @return True if the trigger was accepted
+     */
+    public boolean isAccepted() {
+        return this == TRANSITIONED || this == IGNORED;
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.oxo42.stateless4j;
+
+/**
+ * How a state machine handles triggers fired from its own actions
+ */
+public enum FiringMode {
+
+    /**
+     * A trigger fired from an action is processed at once, in the middle of the transition that ran the action
+     */
+    IMMEDIATE,
+
+    /**
+     * A trigger fired from an action is queued and processed once the current transition has completed, giving
+     * run-to-completion semantics and a stack depth that does not grow with cascading triggers
+     */
+    QUEUED
+}
@@ -0,0 +1,136 @@
+package com.github.oxo42.stateless4j;
+
+import java.util.Arrays;
+
+/**
+ * The instances of a fleet grouped by state code, kept up to date as instances change state.
+ * <p>
+ * Each code has an array of the ids of the instances in exactly that state, and each instance remembers its position
+ * in that array, so an instance is moved by swapping the last id of its old group into its place and appending it to
+ * its new group. Each code also has the number of instances in that state or any of its substates, kept by adjusting
+ * the counts of every coded superstate of the old and new states.
+ */
+final class FleetIndex {
+
+    private static final int[] NONE = new int[0];
+
+    private int[][] members = new int[0][]; // by code, the ids of the instances in exactly that state
+    private int[] sizes = new int[0]; // by code, the number of ids in members
+    private int[] totals = new int[0]; // by code, the number of instances in that state or a substate
+    private int[][] ancestors = new int[0][]; // by code, the code itself and the codes of its superstates
+    private int[] positions = new int[16]; // by id, the position of the id in its group
+
+    /**
+     * True if the superstates of a code are known
+     *
+     * @param code The state code
+     * @return True if the code has been added
+     */
+    boolean hasCode(int code) {
+        return code < ancestors.length && ancestors[code] != null;
+    }
+
+    /**
+     * Make room for a code
+     *
+     * @param code      The state code
+     * @param ancestors The code itself and the codes of its superstates
+     */
+    void addCode(int code, int[] ancestors) {
+        if (code >= this.ancestors.length) {
+            int length = Math.max(code + 1, this.ancestors.length * 2);
+            members = Arrays.copyOf(members, length);
+            sizes = Arrays.copyOf(sizes, length);
+            totals = Arrays.copyOf(totals, length);
+            this.ancestors = Arrays.copyOf(this.ancestors, length);
+        }
+        members[code] = NONE;
+        this.ancestors[code] = ancestors;
+    }
+
+    /**
+     * Index a new instance
+     *
+     * @param instanceId The instance
+     * @param code       The code of its state
+     */
+    void add(int instanceId, int code) {
+        if (instanceId >= positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(instanceId + 1, positions.length * 2));
+        }
+        append(instanceId, code);
+    }
+
+    /**
+     * Move an instance to another state
+     *
+     * @param instanceId The instance
+     * @param from       The code of its old state
+     * @param to         The code of its new state
+     */
+    void move(int instanceId, int from, int to) {
+        if (from == to) {
+            return;
+        }
+        int position = positions[instanceId];
+        int last = --sizes[from];
+        int moved = members[from][last];
+        members[from][position] = moved;
+        positions[moved] = position;
+        for (int code : ancestors[from]) {
+            totals[code]--;
+        }
+        append(instanceId, to);
+    }
+
+    /**
+     * The number of instances in a state or any of its substates
+     *
+     * @param code The state code
+     * @return The count
+     */
+    int total(int code) {
+        return code < totals.length ? totals[code] : 0;
+    }
+
+    /**
+     * The number of instances in exactly a state
+     *
+     * @param code The state code
+     * @return The count
+     */
+    int size(int code) {
+        return code < sizes.length ? sizes[code] : 0;
+    }
+
+    /**
+     * Copy the ids of the instances in exactly a state
+     *
+     * @param code     The state code
+     * @param target   The array to copy to
+     * @param position The position in the array to copy to
+     * @return The position after the last id copied
+     */
+    int copyMembers(int code, int[] target, int position) {
+        int size = size(code);
+        if (size > 0) {
+            System.arraycopy(members[code], 0, target, position, size);
+        }
+        return position + size;
+    }
+
+    private void append(int instanceId, int code) {
+        int[] group = members[code];
+        int size = sizes[code];
+        if (size == group.length) {
+            group = Arrays.copyOf(group, Math.max(4, size * 2));
+            members[code] = group;
+        }
+        group[size] = instanceId;
+        positions[instanceId] = size;
+        sizes[code] = size + 1;
+        for (int ancestor : ancestors[code]) {
+            totals[ancestor]++;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Func;
+import com.github.oxo42.stateless4j.delegates.Func2;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The flattened trigger behaviours of a frozen state for one trigger: the state's own behaviours followed by
+ * those inherited from each superstate, nearest first. Levels without behaviours for the trigger are left out.
+ * <p>
+ * Each level is resolved in one of three ways:
+ * <ul>
+ * <li>by discriminator, when every guard on the level is a {@link DiscriminatedGuard}, or every guard a
+ * {@link ContextDiscriminatedGuard}, sharing one discriminator with distinct keys</li>
+ * <li>by first match, when the configuration declares its guards mutually exclusive</li>
+ * <li>otherwise by evaluating every guard, failing if more than one is met</li>
+ * </ul>
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+final class HandlerChain<S, T> {
+
+    private final T trigger;
+    private final Level<S, T>[] levels;
+
+    private HandlerChain(T trigger, List<Level<S, T>> levels) {
+        @SuppressWarnings("unchecked")
+        Level<S, T>[] array = (Level<S, T>[]) new Level<?, ?>[levels.size()];
+        this.trigger = trigger;
+        this.levels = levels.toArray(array);
+    }
+
+    /**
+     * Build the chain of behaviours for a trigger, walking up from the supplied representation
+     *
+     * @param representation  The state whose chain is built
+     * @param trigger         The trigger
+     * @param exclusiveGuards True if guards are declared mutually exclusive, so the first match may be taken
+     * @param <S>             The type used to represent the states
+     * @param <T>             The type used to represent the triggers
+     * @return The chain, or null if neither the state nor any superstate handles the trigger
+     */
+    static <S, T> HandlerChain<S, T> build(StateRepresentation<S, T> representation, T trigger, boolean exclusiveGuards) {
+        List<Level<S, T>> levels = new ArrayList<>();
+        for (StateRepresentation<S, T> level = representation; level != null; level = level.getSuperstate()) {
+            List<TriggerBehaviour<S, T>> local = level.getTriggerBehaviours().get(trigger);
+            if (local != null && !local.isEmpty()) {
+                levels.add(new Level<>(level.getUnderlyingState(), trigger, local, exclusiveGuards));
+            }
+        }
+        return levels.isEmpty() ? null : new HandlerChain<>(trigger, levels);
+    }
+
+    T getTrigger() {
+        return trigger;
+    }
+
+    /**
+     * Find the behaviour whose guard is met on the nearest level that has one
+     *
+     * @param context The context of the state machine, passed to context guards
+     * @return The behaviour, or null if no guard is met
+     */
+    TriggerBehaviour<S, T> find(Object context) {
+        for (Level<S, T> level : levels) {
+            TriggerBehaviour<S, T> result = level.find(trigger, context);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * True if the guard of any behaviour in the chain is met
+     *
+     * @param context The context of the state machine, passed to context guards
+     * @return True if the trigger is currently permitted
+     */
+    boolean isPermitted(Object context) {
+        for (Level<S, T> level : levels) {
+            if (level.isPermitted(context)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Level<S, T> {
+
+        private final S state;
+        private final TriggerBehaviour<S, T>[] behaviours;
+        private final boolean firstMatch;
+        private final Object discriminator; // a Func, or a Func2 of the context if contextual
+        private final boolean contextual;
+        private final Map<Object, TriggerBehaviour<S, T>> byKey;
+
+        Level(S state, T trigger, List<TriggerBehaviour<S, T>> behaviours, boolean exclusiveGuards) {
+            @SuppressWarnings("unchecked")
+            TriggerBehaviour<S, T>[] array = (TriggerBehaviour<S, T>[]) new TriggerBehaviour<?, ?>[behaviours.size()];
+            this.state = state;
+            this.behaviours = behaviours.toArray(array);
+            this.contextual = this.behaviours[0].getContextGuard() != null;
+            this.discriminator = sharedDiscriminator(this.behaviours, contextual);
+            if (discriminator == null) {
+                this.byKey = null;
+                this.firstMatch = exclusiveGuards || this.behaviours.length == 1;
+            } else {
+                this.byKey = new HashMap<>(StateRepresentation.capacityFor(this.behaviours.length));
+                for (TriggerBehaviour<S, T> behaviour : this.behaviours) {
+                    Object key = contextual
+                            ? ((ContextDiscriminatedGuard<?, ?>) behaviour.getContextGuard()).getKey()
+                            : ((DiscriminatedGuard<?>) behaviour.getGuard()).getKey();
+                    if (byKey.containsKey(key)) {
+                        throw new IllegalStateException("Multiple permitted exit transitions are configured from state '" + state + "' for trigger '" + trigger + "' and key '" + key + "'. Guard clauses must be mutually exclusive.");
+                    }
+                    byKey.put(key, behaviour);
+                }
+                this.firstMatch = true;
+            }
+        }
+
+        private static Object sharedDiscriminator(TriggerBehaviour<?, ?>[] behaviours, boolean contextual) {
+            Object shared = null;
+            for (TriggerBehaviour<?, ?> behaviour : behaviours) {
+                Object discriminator;
+                if (contextual && behaviour.getContextGuard() instanceof ContextDiscriminatedGuard) {
+                    discriminator = ((ContextDiscriminatedGuard<?, ?>) behaviour.getContextGuard()).getDiscriminator();
+                } else if (!contextual && behaviour.getGuard() instanceof DiscriminatedGuard) {
+                    discriminator = ((DiscriminatedGuard<?>) behaviour.getGuard()).getDiscriminator();
+                } else {
+                    return null;
+                }
+                if (shared != null && shared != discriminator) {
+                    return null;
+                }
+                shared = discriminator;
+            }
+            return shared;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object keyOf(Object context) {
+            return contextual ? ((Func2<Object, ?>) discriminator).call(context) : ((Func<?>) discriminator).call();
+        }
+
+        TriggerBehaviour<S, T> find(T trigger, Object context) {
+            if (byKey != null) {
+                return byKey.get(keyOf(context));
+            }
+            TriggerBehaviour<S, T> result = null;
+            for (TriggerBehaviour<S, T> behaviour : behaviours) {
+                if (behaviour.isGuardConditionMet(context)) {
+                    if (firstMatch) {
+                        return behaviour;
+                    }
+                    if (result != null) {
+                        throw new IllegalStateException("Multiple permitted exit transitions are configured from state '" + state + "' for trigger '" + trigger + "'. Guard clauses must be mutually exclusive.");
+                    }
+                    result = behaviour;
+                }
+            }
+            return result;
+        }
+
+        boolean isPermitted(Object context) {
+            if (byKey != null) {
+                return byKey.containsKey(keyOf(context));
+            }
+            for (TriggerBehaviour<S, T> behaviour : behaviours) {
+                if (behaviour.isGuardConditionMet(context)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
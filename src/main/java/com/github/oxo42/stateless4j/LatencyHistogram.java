@@ -0,0 +1,170 @@
+package com.github.oxo42.stateless4j;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with fixed memory.
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is split into eight buckets, so a value is reported
+ * to within 12.5% of its true value whatever its magnitude, from a nanosecond up to about half an hour. Longer values
+ * are counted in the last bucket. Recording is thread-safe and does not allocate.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+
+    /**
+     * Construct an empty histogram
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+    }
+
+    private LatencyHistogram(AtomicLongArray counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * Count a duration
+     *
+     * @param nanos The duration in nanoseconds; negative durations count as zero
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos));
+    }
+
+    /**
+     * The number of durations recorded
+     *
+     * @return The count
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * The duration below which the supplied percentage of recorded durations fall
+     *
+     * @param percentile The percentage, from 0 to 100
+     * @return The highest duration counted in the bucket holding the percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        assert percentile >= 0 && percentile <= 100 : "percentile is out of range";
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return highestIn(i);
+            }
+        }
+        return highestIn(BUCKETS - 1);
+    }
+
+    /**
+     * The highest duration recorded
+     *
+     * @return The highest duration counted in the highest occupied bucket, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return highestIn(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The mean duration
+     *
+     * @return The mean of the midpoints of the buckets of the recorded durations, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            if (count > 0) {
+                total += count;
+                sum += count * ((lowestIn(i) + highestIn(i)) / 2.0);
+            }
+        }
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * A copy of the histogram as it is now
+     *
+     * @return The copy
+     */
+    public LatencyHistogram copy() {
+        AtomicLongArray copy = new AtomicLongArray(BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            copy.set(i, counts.get(i));
+        }
+        return new LatencyHistogram(copy);
+    }
+
+    /**
+     * Add the durations recorded by another histogram to this one
+     *
+     * @param other The other histogram
+     */
+    public void add(LatencyHistogram other) {
+        assert other != null : "other is null";
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    /**
+     * Forget every recorded duration
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return nanos < 0 ? 0 : (int) nanos;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (nanos >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowestIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (magnitude - SUB_BUCKET_BITS);
+    }
+
+    static long highestIn(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestIn(bucket + 1) - 1;
+    }
+}
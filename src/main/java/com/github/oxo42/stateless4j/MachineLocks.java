@@ -0,0 +1,180 @@
+package com.github.oxo42.stateless4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fires triggers at several state machines together, all or none.
+ * <p>
+ * Each machine is guarded by one of a fixed set of locks, chosen by the machine's identity, so fires at unrelated
+ * machines usually take different locks and run in parallel. {@link #fireTogether(List)} takes the locks of every
+ * machine involved in ascending order, which rules out deadlock between groups, checks that every trigger can be
+ * fired and only then fires them one after another, waiting for any fire in progress at a machine, such as a
+ * timeout of a {@link ConcurrentStateMachine}. If a trigger is rejected after all, or an action throws, the machines
+ * already moved are put back in their previous states without running any action. The journal, tracer and dwell
+ * times of a machine see this as a rollback, not as a transition; if putting back one machine fails, the others are
+ * still put back and the first exception is thrown.
+ * <p>
+ * The locks only exclude fires made through the same {@code MachineLocks}, so every fire at a machine that takes
+ * part in a group should go through it, with {@link #fire(StateMachine, Object)} for single triggers.
+ */
+public class MachineLocks {
+
+    private final ReentrantLock[] locks;
+
+    /**
+     * Construct the locks
+     *
+     * @param stripes The number of locks, rounded up to a power of two
+     */
+    public MachineLocks(int stripes) {
+        assert stripes > 0 : "stripes must be positive";
+        locks = new ReentrantLock[Integer.highestOneBit(Math.max(stripes - 1, 1)) << 1];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Fire a trigger at one machine while holding its lock
+     *
+     * @param machine The machine
+     * @param trigger The trigger to fire
+     * @param <S>     The type used to represent the states
+     * @param <T>     The type used to represent the triggers
+     */
+    public <S, T> void fire(StateMachine<S, T> machine, T trigger) {
+        assert machine != null : "machine is null";
+        ReentrantLock lock = locks[stripeOf(machine)];
+        lock.lock();
+        try {
+            machine.fire(trigger);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fire every trigger at its machine, or none of them
+     *
+     * @param fires The machines and triggers, fired in list order
+     * @return True if every trigger was fired, false if one could not be and the machines were left as they were
+     */
+    public boolean fireTogether(List<? extends Fire<?, ?>> fires) {
+        assert fires != null : "fires is null";
+        int[] stripes = new int[fires.size()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = stripeOf(fires.get(i).getMachine());
+        }
+        Arrays.sort(stripes);
+
+        int locked = 0;
+        try {
+            for (int i = 0; i < stripes.length; i++) {
+                if (i == 0 || stripes[i] != stripes[i - 1]) {
+                    locks[stripes[i]].lock();
+                }
+                locked = i + 1;
+            }
+            for (Fire<?, ?> fire : fires) {
+                if (!fire.canFire()) {
+                    return false;
+                }
+            }
+            return commit(fires);
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                if (i == 0 || stripes[i] != stripes[i - 1]) {
+                    locks[stripes[i]].unlock();
+                }
+            }
+        }
+    }
+
+    private static boolean commit(List<? extends Fire<?, ?>> fires) {
+        int fired = 0;
+        try {
+            for (Fire<?, ?> fire : fires) {
+                if (!fire.fire()) {
+                    rollback(fires, fired + 1, null);
+                    return false;
+                }
+                fired++;
+            }
+            return true;
+        } catch (RuntimeException | Error e) {
+            // Also put back the machine whose own fire failed part way
+            rollback(fires, fired + 1, e);
+            throw e;
+        }
+    }
+
+    private static void rollback(List<? extends Fire<?, ?>> fires, int started, Throwable cause) {
+        RuntimeException failed = null;
+        for (int i = started - 1; i >= 0; i--) {
+            try {
+                fires.get(i).rollback();
+            } catch (RuntimeException e) {
+                if (cause != null) {
+                    cause.addSuppressed(e);
+                } else if (failed == null) {
+                    failed = e;
+                } else {
+                    failed.addSuppressed(e);
+                }
+            }
+        }
+        if (failed != null) {
+            throw failed;
+        }
+    }
+
+    private int stripeOf(StateMachine<?, ?> machine) {
+        int hash = System.identityHashCode(machine);
+        return (hash ^ (hash >>> 16)) & (locks.length - 1);
+    }
+
+    /**
+     * A trigger to fire at a machine as part of a group
+     *
+     * @param <S> The type used to represent the states
+     * @param <T> The type used to represent the triggers that cause state transitions
+     */
+    public static final class Fire<S, T> {
+
+        private final StateMachine<S, T> machine;
+        private final T trigger;
+        private final OutVar<S> previous = new OutVar<>();
+
+        /**
+         * Construct a fire
+         *
+         * @param machine The machine
+         * @param trigger The trigger to fire
+         */
+        public Fire(StateMachine<S, T> machine, T trigger) {
+            assert machine != null : "machine is null";
+            assert trigger != null : "trigger is null";
+            this.machine = machine;
+            this.trigger = trigger;
+        }
+
+        StateMachine<S, T> getMachine() {
+            return machine;
+        }
+
+        boolean canFire() {
+            return machine.canFire(trigger);
+        }
+
+        boolean fire() {
+            FireResult result = machine.fireInGroup(trigger, previous);
+            return result == FireResult.TRANSITIONED || result == FireResult.IGNORED;
+        }
+
+        void rollback() {
+            machine.rollBack(previous.get());
+        }
+    }
+}
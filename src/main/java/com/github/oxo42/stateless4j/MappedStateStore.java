@@ -0,0 +1,134 @@
+package com.github.oxo42.stateless4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A state store kept in a memory-mapped file, so a fleet outlives the process that runs it.
+ * <p>
+ * The file holds a small header followed by one fixed-width slot per instance. Reopening the file maps it again
+ * without reading or deserialising anything, and writes go straight to the operating system's page cache, so they
+ * survive the process crashing; call {@link #force()} to also survive the machine failing. The state codes are those
+ * of the fleet, so a fleet reopening the file must be constructed with the same states in the same order.
+ * <p>
+ * The store grows by remapping a larger region of the file. It is not thread-safe.
+ */
+public class MappedStateStore implements StateStore, Closeable {
+
+    private static final int MAGIC = 0x53544d53; // "STMS"
+    private static final int HEADER = 8; // magic, size
+    private static final int SLOT = 4;
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER) / SLOT;
+
+    private final File file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+
+    /**
+     * Open a store, creating the file if it does not exist
+     *
+     * @param file     The file
+     * @param capacity The number of slots to map initially
+     * @throws IOException If the file cannot be mapped, or is not a state store
+     */
+    public MappedStateStore(File file, int capacity) throws IOException {
+        assert file != null : "file is null";
+        assert capacity > 0 && capacity <= MAX_CAPACITY : "capacity is out of range";
+        this.file = file;
+        RandomAccessFile access = new RandomAccessFile(file, "rw");
+        channel = access.getChannel();
+        try {
+            long length = channel.size();
+            if (length == 0) {
+                map(capacity);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, 0);
+            } else {
+                if (length < HEADER) {
+                    throw new IOException("'" + file + "' is not a state store");
+                }
+                map((int) Math.min(Math.max(capacity, (length - HEADER) / SLOT), MAX_CAPACITY));
+                if (buffer.getInt(0) != MAGIC) {
+                    throw new IOException("'" + file + "' is not a state store");
+                }
+                size = buffer.getInt(4);
+                if (size < 0 || size > this.capacity) {
+                    throw new IOException("'" + file + "' is corrupt, it records " + size + " slots");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            access.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int get(int slot) {
+        checkSlot(slot);
+        return buffer.getInt(HEADER + slot * SLOT);
+    }
+
+    @Override
+    public void set(int slot, int code) {
+        checkSlot(slot);
+        buffer.putInt(HEADER + slot * SLOT, code);
+    }
+
+    @Override
+    public int add(int code) {
+        if (size == capacity) {
+            if (capacity == MAX_CAPACITY) {
+                throw new IllegalStateException("'" + file + "' is full");
+            }
+            try {
+                map((int) Math.min(capacity * 2L, MAX_CAPACITY));
+            } catch (IOException e) {
+                throw new IllegalStateException("'" + file + "' cannot grow", e);
+            }
+        }
+        // Write the slot before publishing it in the header
+        buffer.putInt(HEADER + size * SLOT, code);
+        buffer.putInt(4, size + 1);
+        return size++;
+    }
+
+    /**
+     * Write the mapped slots through to the storage device
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Close the file. The mapping itself is released when the store is garbage collected; the store must not be used
+     * afterwards.
+     *
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void map(int slots) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) slots * SLOT);
+        capacity = slots;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("No slot " + slot);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.oxo42.stateless4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue for many producing threads and a single consuming thread.
+ * <p>
+ * Each slot carries a sequence number saying whose turn it is: producers claim a position with a compare-and-set on
+ * the tail, write the element and publish it by advancing the slot's sequence; the consumer takes the element once
+ * the sequence says it is published and hands the slot back to the producers a lap later. Neither side locks, and
+ * the consumer never contends with the producers on a shared counter.
+ *
+ * @param <E> The type of the elements
+ */
+final class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // touched by the consumer only
+
+    /**
+     * Construct an empty buffer
+     *
+     * @param capacity The number of elements held, rounded up to a power of two
+     */
+    MpscRingBuffer(int capacity) {
+        assert capacity > 0 : "capacity must be positive";
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Append an element, from any thread
+     *
+     * @param element The element
+     * @return False if the buffer is full
+     */
+    boolean offer(E element) {
+        assert element != null : "element is null";
+        while (true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(slot, element);
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Take the oldest element, from the consuming thread only
+     *
+     * @return The element, or null if no element is published
+     */
+    E poll() {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return null;
+        }
+        E element = elements.get(slot);
+        elements.lazySet(slot, null);
+        sequences.set(slot, head + mask + 1);
+        head++;
+        return element;
+    }
+
+    /**
+     * True if no element is published, from the consuming thread only
+     *
+     * @return True if empty
+     */
+    boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+}
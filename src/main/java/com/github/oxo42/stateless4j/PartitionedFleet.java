@@ -0,0 +1,369 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import com.github.oxo42.stateless4j.delegates.Action3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A population of state machine instances spread over partitions, each owned by a single thread.
+ * <p>
+ * Each partition is a {@link StateMachineFleet} with a worker thread of its own, which alone reads and writes the
+ * states of the partition's instances, so firing needs no lock. The frozen configuration is shared by every
+ * partition. Instance ids are handed out densely by {@link #add(Object)} and dealt round the partitions, an instance
+ * living in partition {@code id % partitions}. {@link #send(int, Object, Object...)} appends the trigger to the
+ * partition's bounded multi-producer queue and returns; the worker fires the triggers in the order they were queued,
+ * so the triggers sent to an instance by one thread are handled in the order they were sent.
+ * <p>
+ * A sender waits while a partition's queue is full, except a worker sending to its own partition, which could never
+ * drain the queue it waits on and is refused instead. Actions run on the workers may send triggers and read the
+ * states of their own partition's instances, but not wait for other partitions. Exceptions thrown while a trigger is
+ * handled, including for unhandled triggers, are passed to the error action, which logs them by default. Guards
+ * and actions receive the instance's id in the whole fleet as their context. Nothing thrown while a worker handles
+ * a trigger or a task stops the worker.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public class PartitionedFleet<S, T> implements Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Partition<S, T>[] partitions;
+    private final Object adding = new Object();
+    private volatile int size;
+    private volatile boolean closed;
+    private volatile Action3<Integer, T, RuntimeException> errorAction = new Action3<Integer, T, RuntimeException>() {
+        @Override
+        public void doIt(Integer id, T trigger, RuntimeException e) {
+            logger.error("Instance " + id + " failed handling trigger '" + trigger + "'", e);
+        }
+    };
+
+    /**
+     * Construct an empty fleet and start its workers
+     *
+     * @param config     Frozen state machine configuration
+     * @param partitions The number of partitions, usually the number of cores to use
+     * @param capacity   The number of triggers each partition can queue before senders wait
+     */
+    public PartitionedFleet(StateMachineConfig<S, T> config, int partitions, int capacity) {
+        assert config != null : "config is null";
+        assert partitions > 0 : "partitions must be positive";
+        this.partitions = newPartitions(partitions);
+        for (int i = 0; i < partitions; i++) {
+            StateMachineFleet<S, T> fleet = new StateMachineFleet<>(config);
+            fleet.numberAs(partitions, i);
+            this.partitions[i] = new Partition<>(this, fleet, capacity, i);
+        }
+        for (Partition<S, T> partition : this.partitions) {
+            partition.thread.start();
+        }
+    }
+
+    /**
+     * Construct a fleet of instances in the same initial state, with ids from zero, and start its workers
+     *
+     * @param config       Frozen state machine configuration
+     * @param initialState The initial state of every instance
+     * @param count        The number of instances
+     * @param partitions   The number of partitions, usually the number of cores to use
+     * @param capacity     The number of triggers each partition can queue before senders wait
+     */
+    public PartitionedFleet(StateMachineConfig<S, T> config, S initialState, int count, int partitions, int capacity) {
+        this(config, partitions, capacity);
+        assert count >= 0 : "count is negative";
+        for (int i = 0; i < count; i++) {
+            add(initialState);
+        }
+    }
+
+    /**
+     * Add an instance
+     *
+     * @param initialState The initial state of the instance
+     * @return The id of the new instance
+     */
+    public int add(final S initialState) {
+        synchronized (adding) {
+            // Queue the additions in id order, so each partition hands out the local id matching the global one
+            int instanceId = size;
+            final Partition<S, T> partition = partitions[instanceId % partitions.length];
+            partition.enqueue(new Message<T>(new Action() {
+                @Override
+                public void doIt() {
+                    partition.fleet.add(initialState);
+                }
+            }));
+            size = instanceId + 1;
+            return instanceId;
+        }
+    }
+
+    /**
+     * The number of instances
+     *
+     * @return The number of instances, one more than the highest id
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Queue a trigger for an instance
+     *
+     * @param instanceId The instance
+     * @param trigger    The trigger to fire
+     * @param args       The trigger arguments
+     */
+    public void send(int instanceId, T trigger, Object... args) {
+        assert trigger != null : "trigger is null";
+        checkInstance(instanceId);
+        partitions[instanceId % partitions.length].enqueue(new Message<>(instanceId / partitions.length, trigger, args));
+    }
+
+    /**
+     * The state of an instance once every trigger queued for it so far has been handled. Waits for the instance's
+     * partition to catch up, unless called on that partition's worker, which reads the state as it is.
+     *
+     * @param instanceId The instance
+     * @return The state
+     */
+    public S getState(final int instanceId) {
+        checkInstance(instanceId);
+        final Partition<S, T> partition = partitions[instanceId % partitions.length];
+        Partition<S, T> current = currentPartition();
+        if (current == partition) {
+            return partition.fleet.getState(instanceId / partitions.length);
+        }
+        if (current != null) {
+            throw new IllegalStateException("A worker cannot wait for another partition");
+        }
+        final OutVar<S> state = new OutVar<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        partition.enqueue(new Message<T>(new Action() {
+            @Override
+            public void doIt() {
+                try {
+                    state.set(partition.fleet.getState(instanceId / partitions.length));
+                } finally {
+                    done.countDown();
+                }
+            }
+        }));
+        await(done);
+        return state.get();
+    }
+
+    /**
+     * Wait until every trigger queued so far has been handled
+     */
+    public void flush() {
+        if (currentPartition() != null) {
+            throw new IllegalStateException("A worker cannot wait for the partitions");
+        }
+        final CountDownLatch done = new CountDownLatch(partitions.length);
+        for (Partition<S, T> partition : partitions) {
+            partition.enqueue(new Message<T>(new Action() {
+                @Override
+                public void doIt() {
+                    done.countDown();
+                }
+            }));
+        }
+        await(done);
+    }
+
+    /**
+     * Override the default behaviour of logging an exception thrown while an instance handles a trigger
+     *
+     * @param errorAction An action to call with the instance id, the trigger and the exception
+     */
+    public void onError(Action3<Integer, T, RuntimeException> errorAction) {
+        if (errorAction == null) {
+            throw new IllegalStateException("errorAction");
+        }
+        this.errorAction = errorAction;
+    }
+
+    /**
+     * Handle every trigger already queued, then stop the workers
+     */
+    @Override
+    public void close() {
+        if (currentPartition() != null) {
+            throw new IllegalStateException("A worker cannot wait for the partitions");
+        }
+        closed = true;
+        for (Partition<S, T> partition : partitions) {
+            LockSupport.unpark(partition.thread);
+        }
+        boolean interrupted = false;
+        for (Partition<S, T> partition : partitions) {
+            while (partition.thread.isAlive()) {
+                try {
+                    partition.thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkInstance(int instanceId) {
+        if (instanceId < 0 || instanceId >= size) {
+            throw new IllegalStateException("Instance " + instanceId + " is not in the fleet");
+        }
+    }
+
+    private Partition<S, T> currentPartition() {
+        Thread current = Thread.currentThread();
+        for (Partition<S, T> partition : partitions) {
+            if (partition.thread == current) {
+                return partition;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S, T> Partition<S, T>[] newPartitions(int length) {
+        return (Partition<S, T>[]) new Partition<?, ?>[length];
+    }
+
+    private static void await(CountDownLatch done) {
+        boolean interrupted = false;
+        while (done.getCount() > 0) {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Message<T> {
+
+        final int instanceId; // within the partition
+        final T trigger;
+        final Object[] args;
+        final Action task; // run instead of firing, if not null
+
+        Message(int instanceId, T trigger, Object[] args) {
+            this.instanceId = instanceId;
+            this.trigger = trigger;
+            this.args = args;
+            this.task = null;
+        }
+
+        Message(Action task) {
+            this.instanceId = -1;
+            this.trigger = null;
+            this.args = null;
+            this.task = task;
+        }
+    }
+
+    /**
+     * A fleet, its queue and the worker that alone touches them
+     */
+    private static final class Partition<S, T> implements Runnable {
+
+        private final PartitionedFleet<S, T> owner;
+        private final StateMachineFleet<S, T> fleet;
+        private final MpscRingBuffer<Message<T>> queue;
+        private final int index;
+        private final Thread thread;
+        private final AtomicInteger senders = new AtomicInteger(); // enqueueing now, so the worker must not stop yet
+        private volatile boolean waiting;
+
+        Partition(PartitionedFleet<S, T> owner, StateMachineFleet<S, T> fleet, int capacity, int index) {
+            this.owner = owner;
+            this.fleet = fleet;
+            this.queue = new MpscRingBuffer<>(capacity);
+            this.index = index;
+            this.thread = new Thread(this, "stateless4j-partition-" + index);
+            thread.setDaemon(true);
+        }
+
+        void enqueue(Message<T> message) {
+            // Announce the sender before checking for close, so a worker that sees no sender has seen the last one
+            senders.incrementAndGet();
+            try {
+                if (owner.closed) {
+                    throw new IllegalStateException("The fleet is closed");
+                }
+                while (!queue.offer(message)) {
+                    if (Thread.currentThread() == thread) {
+                        throw new IllegalStateException("The queue of partition " + index + " is full");
+                    }
+                    Thread.yield();
+                }
+            } finally {
+                senders.decrementAndGet();
+            }
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Message<T> message = queue.poll();
+                if (message != null) {
+                    handle(message);
+                    continue;
+                }
+                if (owner.closed) {
+                    if (senders.get() == 0 && queue.isEmpty()) {
+                        return;
+                    }
+                    Thread.yield();
+                    continue;
+                }
+                // Announce the wait before checking the queue again, so a sender that misses the flag has been seen
+                waiting = true;
+                if (queue.isEmpty() && !owner.closed) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+            }
+        }
+
+        private void handle(Message<T> message) {
+            // Nothing thrown here may stop the worker, or the partition's instances would never be fired again
+            if (message.task != null) {
+                try {
+                    message.task.doIt();
+                } catch (Throwable e) {
+                    owner.logger.error("Partition " + index + " failed running a task", e);
+                }
+                return;
+            }
+            int instanceId = message.instanceId * owner.partitions.length + index;
+            try {
+                fleet.publicFire(message.instanceId, message.trigger, message.args);
+            } catch (RuntimeException e) {
+                try {
+                    owner.errorAction.doIt(instanceId, message.trigger, e);
+                } catch (Throwable failure) {
+                    failure.addSuppressed(e);
+                    owner.logger.error("The error action failed for instance " + instanceId, failure);
+                }
+            } catch (Throwable e) {
+                owner.logger.error("Instance " + instanceId + " failed handling trigger '" + message.trigger + "'", e);
+            }
+        }
+    }
+}
@@ -5,6 +5,19 @@ import com.github.oxo42.stateless4j.transitions.Transition;
 import com.github.oxo42.stateless4j.transitions.TransitioningTriggerBehaviour;
 import com.github.oxo42.stateless4j.triggers.*;
 
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures the behaviour of one state.
+ * <p>
+ * Guards, actions and destination selectors that take the state machine's context declare its type as a type
+ * parameter {@code C}, which is not checked against the context of the machines the configuration is used with. The
+ * context is cast to {@code C} when they are called, so a machine whose context is of another type fails with a
+ * {@link ClassCastException} when the trigger is fired.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
 public class StateConfiguration<S, T> {
 
     private static final FuncBoolean NO_GUARD = new FuncBoolean() {
@@ -13,6 +26,12 @@ public class StateConfiguration<S, T> {
             return true;
         }
     };
+    private static final FuncBoolean1<Object> NO_CONTEXT_GUARD = new FuncBoolean1<Object>() {
+        @Override
+        public boolean call(Object context) {
+            return true;
+        }
+    };
     private final StateRepresentation<S, T> representation;
     private final Func2<S, StateRepresentation<S, T>> lookup;
 
@@ -48,6 +67,21 @@ public class StateConfiguration<S, T> {
         return publicPermitIf(trigger, destinationState, guard);
     }
 
+    /**
+     * Accept the specified trigger and transition to the destination state
+     *
+     * @param trigger          The accepted trigger
+     * @param destinationState The state that the trigger will cause a transition to
+     * @param guard            Function of the state machine's context that must return true in order for the trigger
+     *                         to be accepted
+     * @param <C>              Type of the state machine context
+     * @return The reciever
+     */
+    public <C> StateConfiguration<S, T> permitIf(T trigger, S destinationState, FuncBoolean1<C> guard) {
+        enforceNotIdentityTransition(destinationState);
+        return publicPermitIf(trigger, destinationState, guard);
+    }
+
     /**
      * Accept the specified trigger, execute exit actions and re-execute entry actions. Reentry behaves as though the
      * configured state transitions to an identical sibling state
@@ -77,6 +111,23 @@ public class StateConfiguration<S, T> {
         return publicPermitIf(trigger, representation.getUnderlyingState(), guard);
     }
 
+    /**
+     * Accept the specified trigger, execute exit actions and re-execute entry actions. Reentry behaves as though the
+     * configured state transitions to an identical sibling state
+     * <p>
+     * Applies to the current state only. Will not re-execute superstate actions, or  cause actions to execute
+     * transitioning between super- and sub-states
+     *
+     * @param trigger The accepted trigger
+     * @param guard   Function of the state machine's context that must return true in order for the trigger to be
+     *                accepted
+     * @param <C>     Type of the state machine context
+     * @return The reciever
+     */
+    public <C> StateConfiguration<S, T> permitReentryIf(T trigger, FuncBoolean1<C> guard) {
+        return publicPermitIf(trigger, representation.getUnderlyingState(), guard);
+    }
+
     /**
      * ignore the specified trigger when in the configured state
      *
@@ -100,6 +151,21 @@ public class StateConfiguration<S, T> {
         return this;
     }
 
+    /**
+     * ignore the specified trigger when in the configured state, if the guard returns true
+     *
+     * @param trigger The trigger to ignore
+     * @param guard   Function of the state machine's context that must return true in order for the trigger to be
+     *                ignored
+     * @param <C>     Type of the state machine context
+     * @return The receiver
+     */
+    public <C> StateConfiguration<S, T> ignoreIf(T trigger, FuncBoolean1<C> guard) {
+        assert guard != null : "guard is null";
+        representation.addTriggerBehaviour(new IgnoredTriggerBehaviour<S, T>(trigger, withContext(guard)));
+        return this;
+    }
+
     /**
      * Specify an action that will execute when transitioning into the configured state
      *
@@ -133,6 +199,26 @@ public class StateConfiguration<S, T> {
         return this;
     }
 
+    /**
+     * Specify an action that will execute when transitioning into the configured state
+     *
+     * @param entryAction Action to execute, providing the state machine's context and details of the transition
+     * @param <C>         Type of the state machine context
+     * @return The receiver
+     */
+    public <C> StateConfiguration<S, T> onEntry(final Action2<C, Transition<S, T>> entryAction) {
+        assert entryAction != null : "entryAction is null";
+        representation.useContext();
+        representation.addEntryAction(new Action3<Transition<S, T>, Object[], Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void doIt(Transition<S, T> t, Object[] args, Object context) {
+                entryAction.doIt((C) context, t);
+            }
+        });
+        return this;
+    }
+
     /**
      * Specify an action that will execute when transitioning into the configured state
      *
@@ -168,6 +254,27 @@ public class StateConfiguration<S, T> {
         return this;
     }
 
+    /**
+     * Specify an action that will execute when transitioning into the configured state
+     *
+     * @param trigger     The trigger by which the state must be entered in order for the action to execute
+     * @param entryAction Action to execute, providing the state machine's context and details of the transition
+     * @param <C>         Type of the state machine context
+     * @return The receiver
+     */
+    public <C> StateConfiguration<S, T> onEntryFrom(T trigger, final Action2<C, Transition<S, T>> entryAction) {
+        assert entryAction != null : "entryAction is null";
+        representation.useContext();
+        representation.addEntryAction(trigger, new Action3<Transition<S, T>, Object[], Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void doIt(Transition<S, T> t, Object[] args, Object context) {
+                entryAction.doIt((C) context, t);
+            }
+        });
+        return this;
+    }
+
     /**
      * Specify an action that will execute when transitioning into the configured state
      *
@@ -209,6 +316,31 @@ public class StateConfiguration<S, T> {
         return this;
     }
 
+    /**
+     * Specify an action that will execute when transitioning into the configured state
+     *
+     * @param trigger     The trigger by which the state must be entered in order for the action to execute
+     * @param entryAction Action to execute, providing the state machine's context, the trigger argument and details
+     *                    of the transition
+     * @param classe0     Class argument
+     * @param <C>         Type of the state machine context
+     * @param <TArg0>     Type of the first trigger argument
+     * @return The receiver
+     */
+    public <C, TArg0> StateConfiguration<S, T> onEntryFrom(TriggerWithParameters1<TArg0, S, T> trigger, final Action3<C, TArg0, Transition<S, T>> entryAction, final Class<TArg0> classe0) {
+        assert trigger != null : "trigger is null";
+        assert entryAction != null : "entryAction is null";
+        representation.useContext();
+        representation.addEntryAction(trigger.getTrigger(), new Action3<Transition<S, T>, Object[], Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void doIt(Transition<S, T> t, Object[] args, Object context) {
+                entryAction.doIt((C) context, (TArg0) args[0], t);
+            }
+        });
+        return this;
+    }
+
     /**
      * Specify an action that will execute when transitioning into the configured state
      *
@@ -256,6 +388,36 @@ public class StateConfiguration<S, T> {
         return this;
     }
 
+    /**
+     * Specify an action that will execute when transitioning into the configured state
+     *
+     * @param trigger     The trigger by which the state must be entered in order for the action to execute
+     * @param entryAction Action to execute, providing the state machine's context, the trigger arguments and details
+     *                    of the transition
+     * @param classe0     Class argument
+     * @param classe1     Class argument
+     * @param <C>         Type of the state machine context
+     * @param <TArg0>     Type of the first trigger argument
+     * @param <TArg1>     Type of the second trigger argument
+     * @return The receiver
+     */
+    public <C, TArg0, TArg1> StateConfiguration<S, T> onEntryFrom(TriggerWithParameters2<TArg0, TArg1, S, T> trigger, final Action4<C, TArg0, TArg1, Transition<S, T>> entryAction, final Class<TArg0> classe0, final Class<TArg1> classe1) {
+        assert trigger != null : "trigger is null";
+        assert entryAction != null : "entryAction is null";
+        representation.useContext();
+        representation.addEntryAction(trigger.getTrigger(), new Action3<Transition<S, T>, Object[], Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void doIt(Transition<S, T> t, Object[] args, Object context) {
+                entryAction.doIt(
+                        (C) context,
+                        (TArg0) args[0],
+                        (TArg1) args[1], t);
+            }
+        });
+        return this;
+    }
+
     /**
      * Specify an action that will execute when transitioning into the configured state
      *
@@ -308,6 +470,39 @@ public class StateConfiguration<S, T> {
         return this;
     }
 
+    /**
+     * Specify an action that will execute when transitioning into the configured state
+     *
+     * @param trigger     The trigger by which the state must be entered in order for the action to execute
+     * @param entryAction Action to execute, providing the state machine's context, the trigger arguments and details
+     *                    of the transition
+     * @param classe0     Class argument
+     * @param classe1     Class argument
+     * @param classe2     Class argument
+     * @param <C>         Type of the state machine context
+     * @param <TArg0>     Type of the first trigger argument
+     * @param <TArg1>     Type of the second trigger argument
+     * @param <TArg2>     Type of the third trigger argument
+     * @return The receiver
+     */
+    public <C, TArg0, TArg1, TArg2> StateConfiguration<S, T> onEntryFrom(TriggerWithParameters3<TArg0, TArg1, TArg2, S, T> trigger, final Action5<C, TArg0, TArg1, TArg2, Transition<S, T>> entryAction, final Class<TArg0> classe0, final Class<TArg1> classe1, final Class<TArg2> classe2) {
+        assert trigger != null : "trigger is null";
+        assert entryAction != null : "entryAction is null";
+        representation.useContext();
+        representation.addEntryAction(trigger.getTrigger(), new Action3<Transition<S, T>, Object[], Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void doIt(Transition<S, T> t, Object[] args, Object context) {
+                entryAction.doIt(
+                        (C) context,
+                        (TArg0) args[0],
+                        (TArg1) args[1],
+                        (TArg2) args[2], t);
+            }
+        });
+        return this;
+    }
+
     /**
      * Specify an action that will execute when transitioning from the configured state
      *
@@ -336,6 +531,70 @@ public class StateConfiguration<S, T> {
         return this;
     }
 
+    /**
+     * Specify an asynchronous action that will execute when transitioning into the configured state. An
+     * {@link AsyncStateMachine} continues the transition once the action signals its {@link Completion}, without
+     * blocking a thread; other state machines wait for it.
+     *
+     * @param entryAction Action to execute, providing details of the transition and the completion to signal
+     * @return The receiver
+     */
+    public StateConfiguration<S, T> onEntryAsync(Action2<Transition<S, T>, Completion> entryAction) {
+        assert entryAction != null : "entryAction is null";
+        representation.addEntryAction((Action3<Transition<S, T>, Object[], Object>) new AsyncAction<S, T>(null, entryAction));
+        return this;
+    }
+
+    /**
+     * Specify an asynchronous action that will execute when transitioning into the configured state. An
+     * {@link AsyncStateMachine} continues the transition once the action signals its {@link Completion}, without
+     * blocking a thread; other state machines wait for it.
+     *
+     * @param trigger     The trigger by which the state must be entered in order for the action to execute
+     * @param entryAction Action to execute, providing details of the transition and the completion to signal
+     * @return The receiver
+     */
+    public StateConfiguration<S, T> onEntryFromAsync(T trigger, Action2<Transition<S, T>, Completion> entryAction) {
+        assert trigger != null : "trigger is null";
+        assert entryAction != null : "entryAction is null";
+        representation.addEntryAction((Action3<Transition<S, T>, Object[], Object>) new AsyncAction<S, T>(trigger, entryAction));
+        return this;
+    }
+
+    /**
+     * Specify an asynchronous action that will execute when transitioning from the configured state. An
+     * {@link AsyncStateMachine} continues the transition once the action signals its {@link Completion}, without
+     * blocking a thread; other state machines wait for it.
+     *
+     * @param exitAction Action to execute, providing details of the transition and the completion to signal
+     * @return The receiver
+     */
+    public StateConfiguration<S, T> onExitAsync(Action2<Transition<S, T>, Completion> exitAction) {
+        assert exitAction != null : "exitAction is null";
+        representation.addExitAction((Action2<Transition<S, T>, Object>) new AsyncAction<S, T>(null, exitAction));
+        return this;
+    }
+
+    /**
+     * Specify an action that will execute when transitioning from the configured state
+     *
+     * @param exitAction Action to execute, providing the state machine's context and details of the transition
+     * @param <C>        Type of the state machine context
+     * @return The receiver
+     */
+    public <C> StateConfiguration<S, T> onExit(final Action2<C, Transition<S, T>> exitAction) {
+        assert exitAction != null : "exitAction is null";
+        representation.useContext();
+        representation.addExitAction(new Action2<Transition<S, T>, Object>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void doIt(Transition<S, T> t, Object context) {
+                exitAction.doIt((C) context, t);
+            }
+        });
+        return this;
+    }
+
     /**
      * Sets the superstate that the configured state is a substate of
      * <p>
@@ -355,6 +614,27 @@ public class StateConfiguration<S, T> {
         return this;
     }
 
+    /**
+     * Fire the specified trigger if the machine is still in the configured state, or one of its substates, after a
+     * delay. The timer starts when the machine enters the state and is cancelled when it leaves it; re-entering the
+     * state restarts it. The trigger must be permitted or ignored in the state like any other.
+     * <p>
+     * Timeouts only run for machines whose timers are scheduled with
+     * {@link StateMachine#scheduleTimeoutsOn(TimingWheel)}.
+     *
+     * @param delay   The time the machine may stay in the state
+     * @param unit    The unit of the delay
+     * @param trigger The trigger to fire once the delay has passed
+     * @return The receiver
+     */
+    public StateConfiguration<S, T> timeoutAfter(long delay, TimeUnit unit, T trigger) {
+        assert delay >= 0 : "delay is negative";
+        assert unit != null : "unit is null";
+        assert trigger != null : "trigger is null";
+        representation.addTimeout(new StateTimeout<>(unit.toNanos(delay), trigger));
+        return this;
+    }
+
     /**
      * Accept the specified trigger and transition to the destination state, calculated dynamically by the supplied
      * function
@@ -430,6 +710,29 @@ public class StateConfiguration<S, T> {
         }, guard);
     }
 
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically by the supplied
+     * function
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function to calculate the state that the trigger will cause a transition to
+     * @param guard                    Function of the state machine's context that must return true in order for the
+     *                                 trigger to be accepted
+     * @param <C>                      Type of the state machine context
+     * @return The reciever
+     */
+    public <C> StateConfiguration<S, T> permitDynamicIf(T trigger, final Func<S> destinationStateSelector, FuncBoolean1<C> guard) {
+        assert destinationStateSelector != null : "destinationStateSelector is null";
+        assert guard != null : "guard is null";
+        representation.addTriggerBehaviour(new DynamicTriggerBehaviour<>(trigger, new Func2<Object[], S>() {
+            @Override
+            public S call(Object[] arg0) {
+                return destinationStateSelector.call();
+            }
+        }, withContext(guard)));
+        return this;
+    }
+
     /**
      * Accept the specified trigger and transition to the destination state, calculated dynamically by the supplied
      * function
@@ -517,6 +820,177 @@ public class StateConfiguration<S, T> {
         );
     }
 
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically from the state
+     * machine's context
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function of the state machine's context to calculate the state that the
+     *                                 trigger will cause a transition to
+     * @param <C>                      Type of the state machine context
+     * @return The receiver
+     */
+    public <C> StateConfiguration<S, T> permitDynamic(T trigger, Func2<C, S> destinationStateSelector) {
+        return permitDynamicIf(trigger, destinationStateSelector, this.<C>noContextGuard());
+    }
+
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically from the state
+     * machine's context
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function of the state machine's context to calculate the state that the
+     *                                 trigger will cause a transition to
+     * @param guard                    Function of the state machine's context that must return true in order for the
+     *                                 trigger to be accepted
+     * @param <C>                      Type of the state machine context
+     * @return The receiver
+     */
+    public <C> StateConfiguration<S, T> permitDynamicIf(T trigger, final Func2<C, S> destinationStateSelector, FuncBoolean1<C> guard) {
+        assert destinationStateSelector != null : "destinationStateSelector is null";
+        return publicPermitDynamicIf(trigger, new Func3<Object[], Object, S>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public S call(Object[] args, Object context) {
+                return destinationStateSelector.call((C) context);
+            }
+        }, guard);
+    }
+
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically from the state
+     * machine's context and the trigger argument
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function of the state machine's context and the trigger argument to calculate
+     *                                 the state that the trigger will cause a transition to
+     * @param <C>                      Type of the state machine context
+     * @param <TArg0>                  Type of the first trigger argument
+     * @return The receiver
+     */
+    public <C, TArg0> StateConfiguration<S, T> permitDynamic(TriggerWithParameters1<TArg0, S, T> trigger, Func3<C, TArg0, S> destinationStateSelector) {
+        return permitDynamicIf(trigger, destinationStateSelector, this.<C>noContextGuard());
+    }
+
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically from the state
+     * machine's context and the trigger argument
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function of the state machine's context and the trigger argument to calculate
+     *                                 the state that the trigger will cause a transition to
+     * @param guard                    Function of the state machine's context that must return true in order for the
+     *                                 trigger to be accepted
+     * @param <C>                      Type of the state machine context
+     * @param <TArg0>                  Type of the first trigger argument
+     * @return The receiver
+     */
+    public <C, TArg0> StateConfiguration<S, T> permitDynamicIf(TriggerWithParameters1<TArg0, S, T> trigger, final Func3<C, TArg0, S> destinationStateSelector, FuncBoolean1<C> guard) {
+        assert trigger != null : "trigger is null";
+        assert destinationStateSelector != null : "destinationStateSelector is null";
+        return publicPermitDynamicIf(trigger.getTrigger(), new Func3<Object[], Object, S>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public S call(Object[] args, Object context) {
+                return destinationStateSelector.call((C) context, (TArg0) args[0]);
+            }
+        }, guard);
+    }
+
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically from the state
+     * machine's context and the trigger arguments
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function of the state machine's context and the trigger arguments to calculate
+     *                                 the state that the trigger will cause a transition to
+     * @param <C>                      Type of the state machine context
+     * @param <TArg0>                  Type of the first trigger argument
+     * @param <TArg1>                  Type of the second trigger argument
+     * @return The receiver
+     */
+    public <C, TArg0, TArg1> StateConfiguration<S, T> permitDynamic(TriggerWithParameters2<TArg0, TArg1, S, T> trigger, Func4<C, TArg0, TArg1, S> destinationStateSelector) {
+        return permitDynamicIf(trigger, destinationStateSelector, this.<C>noContextGuard());
+    }
+
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically from the state
+     * machine's context and the trigger arguments
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function of the state machine's context and the trigger arguments to calculate
+     *                                 the state that the trigger will cause a transition to
+     * @param guard                    Function of the state machine's context that must return true in order for the
+     *                                 trigger to be accepted
+     * @param <C>                      Type of the state machine context
+     * @param <TArg0>                  Type of the first trigger argument
+     * @param <TArg1>                  Type of the second trigger argument
+     * @return The receiver
+     */
+    public <C, TArg0, TArg1> StateConfiguration<S, T> permitDynamicIf(TriggerWithParameters2<TArg0, TArg1, S, T> trigger, final Func4<C, TArg0, TArg1, S> destinationStateSelector, FuncBoolean1<C> guard) {
+        assert trigger != null : "trigger is null";
+        assert destinationStateSelector != null : "destinationStateSelector is null";
+        return publicPermitDynamicIf(trigger.getTrigger(), new Func3<Object[], Object, S>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public S call(Object[] args, Object context) {
+                return destinationStateSelector.call(
+                        (C) context,
+                        (TArg0) args[0],
+                        (TArg1) args[1]);
+            }
+        }, guard);
+    }
+
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically from the state
+     * machine's context and the trigger arguments
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function of the state machine's context and the trigger arguments to calculate
+     *                                 the state that the trigger will cause a transition to
+     * @param <C>                      Type of the state machine context
+     * @param <TArg0>                  Type of the first trigger argument
+     * @param <TArg1>                  Type of the second trigger argument
+     * @param <TArg2>                  Type of the third trigger argument
+     * @return The receiver
+     */
+    public <C, TArg0, TArg1, TArg2> StateConfiguration<S, T> permitDynamic(TriggerWithParameters3<TArg0, TArg1, TArg2, S, T> trigger, Func5<C, TArg0, TArg1, TArg2, S> destinationStateSelector) {
+        return permitDynamicIf(trigger, destinationStateSelector, this.<C>noContextGuard());
+    }
+
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically from the state
+     * machine's context and the trigger arguments
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function of the state machine's context and the trigger arguments to calculate
+     *                                 the state that the trigger will cause a transition to
+     * @param guard                    Function of the state machine's context that must return true in order for the
+     *                                 trigger to be accepted
+     * @param <C>                      Type of the state machine context
+     * @param <TArg0>                  Type of the first trigger argument
+     * @param <TArg1>                  Type of the second trigger argument
+     * @param <TArg2>                  Type of the third trigger argument
+     * @return The receiver
+     */
+    public <C, TArg0, TArg1, TArg2> StateConfiguration<S, T> permitDynamicIf(TriggerWithParameters3<TArg0, TArg1, TArg2, S, T> trigger,
+            final Func5<C, TArg0, TArg1, TArg2, S> destinationStateSelector, FuncBoolean1<C> guard) {
+        assert trigger != null : "trigger is null";
+        assert destinationStateSelector != null : "destinationStateSelector is null";
+        return publicPermitDynamicIf(trigger.getTrigger(), new Func3<Object[], Object, S>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public S call(Object[] args, Object context) {
+                return destinationStateSelector.call(
+                        (C) context,
+                        (TArg0) args[0],
+                        (TArg1) args[1],
+                        (TArg2) args[2]);
+            }
+        }, guard);
+    }
+
     void enforceNotIdentityTransition(S destination) {
         if (destination.equals(representation.getUnderlyingState())) {
             throw new IllegalStateException("Permit() (and PermitIf()) require that the destination state is not equal to the source state. To accept a trigger without changing state, use either Ignore() or PermitReentry().");
@@ -529,10 +1003,19 @@ public class StateConfiguration<S, T> {
 
     StateConfiguration<S, T> publicPermitIf(T trigger, S destinationState, FuncBoolean guard) {
         assert guard != null : "guard is null";
+        // Make sure the destination is represented so firing never has to create a representation on the fly
+        lookup.call(destinationState);
         representation.addTriggerBehaviour(new TransitioningTriggerBehaviour<>(trigger, destinationState, guard));
         return this;
     }
 
+    <C> StateConfiguration<S, T> publicPermitIf(T trigger, S destinationState, FuncBoolean1<C> guard) {
+        assert guard != null : "guard is null";
+        lookup.call(destinationState);
+        representation.addTriggerBehaviour(new TransitioningTriggerBehaviour<>(trigger, destinationState, withContext(guard)));
+        return this;
+    }
+
     StateConfiguration<S, T> publicPermitDynamic(T trigger, Func2<Object[], S> destinationStateSelector) {
         return publicPermitDynamicIf(trigger, destinationStateSelector, NO_GUARD);
     }
@@ -543,4 +1026,30 @@ public class StateConfiguration<S, T> {
         representation.addTriggerBehaviour(new DynamicTriggerBehaviour<>(trigger, destinationStateSelector, guard));
         return this;
     }
+
+    <C> StateConfiguration<S, T> publicPermitDynamicIf(T trigger, Func3<Object[], Object, S> destinationStateSelector, FuncBoolean1<C> guard) {
+        assert guard != null : "guard is null";
+        representation.addTriggerBehaviour(new DynamicTriggerBehaviour<>(trigger, destinationStateSelector, withContext(guard)));
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <C> FuncBoolean1<C> noContextGuard() {
+        return (FuncBoolean1<C>) NO_CONTEXT_GUARD;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <C> FuncBoolean1<Object> withContext(final FuncBoolean1<C> guard) {
+        representation.useContext();
+        if (guard instanceof ContextDiscriminatedGuard) {
+            // Left unwrapped so a frozen configuration can find its discriminator
+            return (FuncBoolean1<Object>) (FuncBoolean1<?>) guard;
+        }
+        return new FuncBoolean1<Object>() {
+            @Override
+            public boolean call(Object context) {
+                return guard.call((C) context);
+            }
+        };
+    }
 }
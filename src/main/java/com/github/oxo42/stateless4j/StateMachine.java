@@ -9,6 +9,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -19,21 +21,24 @@ import java.util.List;
  */
 public class StateMachine<S, T> {
 
+    static final Object[] NO_ARGS = new Object[0];
+
     protected final StateMachineConfig<S, T> config;
     protected final Func<S> stateAccessor;
     protected final Action1<S> stateMutator;
+    final OutVar<S> destination = new OutVar<>(); // reused by every fire, as only one resolves at a time
+    private StateRepresentation<S, T> entered; // the representation entered by the last transition
+    private TriggerQueue<T> queue; // null when firing immediately
+    private boolean processing;
+    private TransitionJournal<S, T> journal; // null unless journaling
+    private int journalId;
+    private TransitionMetrics<S, T> metrics; // null unless recording metrics
+    private TransitionTracer<S, T> tracer; // null unless tracing
+    private DwellTimes<S> dwellTimes; // null unless timing dwell
+    private long[] enteredAt; // by depth, for the current state and its superstates
+    private StateTimers<S, T> timers; // null unless timeouts are scheduled
     private final Logger logger = LoggerFactory.getLogger(getClass());
-    protected Action2<S, T> unhandledTriggerAction = new Action2<S, T>() {
-
-        public void doIt(S state, T trigger) {
-            throw new IllegalStateException(
-                    String.format(
-                            "No valid leaving transitions are permitted from state '%s' for trigger '%s'. Consider ignoring the trigger.",
-                            state, trigger)
-            );
-        }
-
-    };
+    protected Action2<S, T> unhandledTriggerAction = Dispatch.throwingUnhandledTriggerAction();
 
     /**
      * Construct a state machine
@@ -95,8 +100,73 @@ public class StateMachine<S, T> {
         return stateAccessor.call();
     }
 
-    private void setState(S value) {
+    void setState(S value) {
+        stateMutator.doIt(value);
+    }
+
+    /**
+     * Change state as part of a transition, recording the transition in the journal if there is one
+     *
+     * @param value   The state transitioned to
+     * @param trigger The trigger that caused the transition
+     */
+    void transitionTo(S value, T trigger) {
+        if (dwellTimes != null || timers != null) {
+            StateRepresentation<S, T> source = getCurrentRepresentation();
+            StateRepresentation<S, T> destination = getRepresentation(value);
+            if (dwellTimes != null) {
+                enteredAt = dwellTimes.transition(source, destination, enteredAt);
+            }
+            if (timers != null) {
+                timers.transition(source, destination);
+            }
+        }
         stateMutator.doIt(value);
+        if (journal != null) {
+            journal.append(journalId, trigger, value);
+        }
+    }
+
+    /**
+     * Fire a trigger as one of a group, noting the state it is fired from. Waits for a fire in progress rather than
+     * reporting a conflict, so only the trigger itself can fail the group.
+     *
+     * @param trigger The trigger to fire
+     * @param source  Set to the state before the fire
+     * @return The outcome, as for {@link #tryFire(Object)}
+     */
+    FireResult fireInGroup(T trigger, OutVar<S> source) {
+        source.set(getState());
+        return publicTryFire(trigger, NO_ARGS);
+    }
+
+    /**
+     * Put the machine back in a state it left, undoing a transition without running any action. Timeouts follow the
+     * state, the journal records the move without a trigger and the tracer is told of the rollback. The stay in the
+     * undone state is not a dwell time, and the restored states' clocks restart, their stay before the transition
+     * having been recorded when they were left.
+     *
+     * @param previous The state to return to
+     */
+    void rollBack(S previous) {
+        S current = getState();
+        if (current.equals(previous)) {
+            return;
+        }
+        if (timers != null) {
+            timers.transition(getCurrentRepresentation(), getRepresentation(previous));
+        }
+        if (dwellTimes != null) {
+            enteredAt = dwellTimes.restart(getCurrentRepresentation(), getRepresentation(previous), enteredAt);
+        }
+        stateMutator.doIt(previous);
+        if (journal != null) {
+            journal.appendRolledBack(journalId, previous);
+        }
+        TransitionTracer<S, T> tracing = tracer != null && tracer.isEnabled() ? tracer : null;
+        if (tracing != null) {
+            tracing.transitionRolledBack(current, previous);
+        }
     }
 
     /**
@@ -105,12 +175,16 @@ public class StateMachine<S, T> {
      * @return The currently-permissible trigger values
      */
     public List<T> getPermittedTriggers() {
-        return getCurrentRepresentation().getPermittedTriggers();
+        return getCurrentRepresentation().getPermittedTriggers(getContext());
     }
 
     StateRepresentation<S, T> getCurrentRepresentation() {
-        StateRepresentation<S, T> representation = config.getRepresentation(getState());
-        return representation == null ? new StateRepresentation<S, T>(getState()) : representation;
+        return getRepresentation(getState());
+    }
+
+    StateRepresentation<S, T> getRepresentation(S state) {
+        StateRepresentation<S, T> representation = config.getRepresentation(state);
+        return representation == null ? new StateRepresentation<S, T>(state) : representation;
     }
 
     /**
@@ -122,7 +196,7 @@ public class StateMachine<S, T> {
      * @param trigger The trigger to fire
      */
     public void fire(T trigger) {
-        publicFire(trigger);
+        publicFire(trigger, NO_ARGS);
     }
 
     /**
@@ -176,27 +250,397 @@ public class StateMachine<S, T> {
         publicFire(trigger.getTrigger(), arg0, arg1, arg2);
     }
 
+    /**
+     * Attempt to transition from the current state via the specified trigger.
+     * Unlike {@link #fire(Object)}, a trigger that is not permitted is reported in the result rather than passed to
+     * the unhandled trigger action, so no exception is created.
+     *
+     * @param trigger The trigger to fire
+     * @return The outcome
+     */
+    public FireResult tryFire(T trigger) {
+        return publicTryFire(trigger, NO_ARGS);
+    }
+
+    /**
+     * Attempt to transition from the current state via the specified trigger.
+     * Unlike {@link #fire(TriggerWithParameters1, Object)}, a trigger that is not permitted is reported in the result
+     * rather than passed to the unhandled trigger action, so no exception is created.
+     *
+     * @param trigger The trigger to fire
+     * @param arg0    The first argument
+     * @param <TArg0> Type of the first trigger argument
+     * @return The outcome
+     */
+    public <TArg0> FireResult tryFire(TriggerWithParameters1<TArg0, S, T> trigger, TArg0 arg0) {
+        assert trigger != null : "trigger is null";
+        return publicTryFire(trigger.getTrigger(), arg0);
+    }
+
+    /**
+     * Attempt to transition from the current state via the specified trigger.
+     * Unlike {@link #fire(TriggerWithParameters2, Object, Object)}, a trigger that is not permitted is reported in
+     * the result rather than passed to the unhandled trigger action, so no exception is created.
+     *
+     * @param trigger The trigger to fire
+     * @param arg0    The first argument
+     * @param arg1    The second argument
+     * @param <TArg0> Type of the first trigger argument
+     * @param <TArg1> Type of the second trigger argument
+     * @return The outcome
+     */
+    public <TArg0, TArg1> FireResult tryFire(TriggerWithParameters2<TArg0, TArg1, S, T> trigger, TArg0 arg0, TArg1 arg1) {
+        assert trigger != null : "trigger is null";
+        return publicTryFire(trigger.getTrigger(), arg0, arg1);
+    }
+
+    /**
+     * Attempt to transition from the current state via the specified trigger.
+     * Unlike {@link #fire(TriggerWithParameters3, Object, Object, Object)}, a trigger that is not permitted is
+     * reported in the result rather than passed to the unhandled trigger action, so no exception is created.
+     *
+     * @param trigger The trigger to fire
+     * @param arg0    The first argument
+     * @param arg1    The second argument
+     * @param arg2    The third argument
+     * @param <TArg0> Type of the first trigger argument
+     * @param <TArg1> Type of the second trigger argument
+     * @param <TArg2> Type of the third trigger argument
+     * @return The outcome
+     */
+    public <TArg0, TArg1, TArg2> FireResult tryFire(TriggerWithParameters3<TArg0, TArg1, TArg2, S, T> trigger, TArg0 arg0, TArg1 arg1, TArg2 arg2) {
+        assert trigger != null : "trigger is null";
+        return publicTryFire(trigger.getTrigger(), arg0, arg1, arg2);
+    }
+
+    /**
+     * Fire a sequence of triggers in order, stopping at the first one that is not permitted.
+     * The representation entered by one transition is reused for the next trigger, and the trigger configuration is
+     * looked up once for each run of the same trigger, so catching up on a long sequence costs less than firing the
+     * triggers one at a time. The trigger that is not permitted is not passed to the unhandled trigger action.
+     *
+     * @param triggers The triggers to fire
+     * @return The number of triggers fired before the first unhandled trigger, or the number of triggers if all were
+     * fired
+     */
+    public int fireAll(Iterable<T> triggers) {
+        assert triggers != null : "triggers is null";
+        return publicFireAll(triggers.iterator(), null);
+    }
+
+    /**
+     * Fire a sequence of triggers in order, stopping at the first one that is not permitted.
+     * The representation entered by one transition is reused for the next trigger, and the trigger configuration is
+     * looked up once for each run of the same trigger, so catching up on a long sequence costs less than firing the
+     * triggers one at a time. The trigger that is not permitted is not passed to the unhandled trigger action.
+     *
+     * @param triggers The triggers to fire
+     * @param args     The arguments of each trigger, by index; null, or a null entry, for a trigger without arguments
+     * @return The number of triggers fired before the first unhandled trigger, or the number of triggers if all were
+     * fired
+     */
+    public int fireAll(T[] triggers, Object[][] args) {
+        assert triggers != null : "triggers is null";
+        assert args == null || args.length >= triggers.length : "args is shorter than triggers";
+        return publicFireAll(Arrays.asList(triggers).iterator(), args);
+    }
+
+    /**
+     * Fire a sequence of triggers until one is not permitted
+     *
+     * @param triggers The triggers to fire
+     * @param args     The arguments of each trigger, by index, or null
+     * @return The number of triggers fired
+     */
+    protected int publicFireAll(Iterator<T> triggers, Object[][] args) {
+        Object context = getContext();
+        StateRepresentation<S, T> representation = null;
+        T previous = null;
+        TriggerWithParameters<S, T> configuration = null;
+        int fired = 0;
+        while (triggers.hasNext()) {
+            T trigger = triggers.next();
+            Object[] triggerArgs = args == null || args[fired] == null ? NO_ARGS : args[fired];
+            if (trigger != previous) {
+                configuration = config.getTriggerConfiguration(trigger);
+                previous = trigger;
+            }
+            if (configuration != null) {
+                configuration.validateParameters(triggerArgs);
+            }
+
+            FireResult result;
+            if (queue != null) {
+                result = runToCompletion(trigger, triggerArgs, false);
+            } else {
+                // An action may have fired on its own, or the state may be stored externally
+                if (representation == null || !representation.getUnderlyingState().equals(getState())) {
+                    representation = getCurrentRepresentation();
+                }
+                result = dispatch(representation, trigger, triggerArgs, context);
+                if (result == FireResult.TRANSITIONED) {
+                    representation = entered;
+                }
+            }
+            if (Dispatch.isRejected(result)) {
+                break;
+            }
+            fired++;
+        }
+        logger.debug("Fired {} triggers", fired);
+        return fired;
+    }
+
     protected void publicFire(T trigger, Object... args) {
-        logger.info("Firing " + trigger);
-        TriggerWithParameters<S, T> configuration = config.getTriggerConfiguration(trigger);
-        if (configuration != null) {
-            configuration.validateParameters(args);
+        Dispatch.validateParameters(config, trigger, args);
+        if (queue != null) {
+            runToCompletion(trigger, args, true);
+        } else {
+            reportRejection(trigger, dispatch(trigger, args));
         }
+    }
 
-        TriggerBehaviour<S, T> triggerBehaviour = getCurrentRepresentation().tryFindHandler(trigger);
-        if (triggerBehaviour == null) {
-            unhandledTriggerAction.doIt(getCurrentRepresentation().getUnderlyingState(), trigger);
-            return;
+    /**
+     * Fire a trigger without reporting rejection through the unhandled trigger action
+     *
+     * @param trigger The trigger to fire
+     * @param args    The trigger arguments
+     * @return The outcome
+     */
+    protected FireResult publicTryFire(T trigger, Object... args) {
+        Dispatch.validateParameters(config, trigger, args);
+        return queue != null ? runToCompletion(trigger, args, false) : dispatch(trigger, args);
+    }
+
+    private void reportRejection(T trigger, FireResult result) {
+        if (Dispatch.isRejected(result)) {
+            unhandledTriggerAction.doIt(getState(), trigger);
+        }
+    }
+
+    private FireResult runToCompletion(T trigger, Object[] args, boolean report) {
+        if (processing) {
+            queue.add(trigger, args, report);
+            return FireResult.QUEUED;
+        }
+        processing = true;
+        try {
+            FireResult result = dispatch(trigger, args);
+            if (report) {
+                reportRejection(trigger, result);
+            }
+            while (!queue.isEmpty()) {
+                T next = queue.peekTrigger();
+                Object[] nextArgs = queue.peekArgs();
+                boolean nextReport = queue.peekReportRejection();
+                queue.remove();
+                FireResult nextResult = dispatch(next, nextArgs);
+                if (nextReport) {
+                    reportRejection(next, nextResult);
+                }
+            }
+            return result;
+        } finally {
+            // An action that throws abandons the triggers queued behind it
+            queue.clear();
+            processing = false;
+        }
+    }
+
+    private FireResult dispatch(T trigger, Object[] args) {
+        logger.debug("Firing {}", trigger);
+        return dispatch(getCurrentRepresentation(), trigger, args, getContext());
+    }
+
+    /**
+     * Fire a trigger from the supplied representation
+     *
+     * @param representation The current state
+     * @param trigger        The trigger to fire
+     * @param args           The trigger arguments
+     * @param context        The context passed to guards and actions
+     * @return The outcome
+     */
+    private FireResult dispatch(StateRepresentation<S, T> representation, T trigger, Object[] args, Object context) {
+        TransitionTracer<S, T> tracing = tracer != null && tracer.isEnabled() ? tracer : null;
+        S source = representation.getUnderlyingState();
+        long resolving = tracing == null ? 0 : System.nanoTime();
+        TriggerBehaviour<S, T> triggerBehaviour = findHandler(representation, trigger);
+        if (tracing != null) {
+            tracing.guardsEvaluated(source, trigger, triggerBehaviour != null, System.nanoTime() - resolving);
+        }
+        FireResult resolved = Dispatch.resolve(config, representation, trigger, triggerBehaviour, args, context, destination);
+        if (resolved != FireResult.TRANSITIONED) {
+            if (metrics != null) {
+                metrics.record(source, trigger, resolved);
+            }
+            if (tracing != null && resolved != FireResult.IGNORED) {
+                tracing.unhandledTrigger(source, trigger, resolved);
+            }
+            return resolved;
+        }
+
+        // Read the destination before any action runs, actions may fire again and reuse the holder
+        S target = destination.get();
+        TransitionMetrics<S, T> timing = metrics;
+        boolean timed = timing != null || tracing != null;
+        long started = timed ? System.nanoTime() : 0;
+        long exited;
+        Transition<S, T> transition;
+        if (representation.isFrozen()) {
+            TransitionStep<S, T> step = representation.getStep(target, trigger);
+            transition = step.getTransition();
+            step.getActions().exit(transition, context);
+            exited = timed ? System.nanoTime() : 0;
+            transitionTo(target, trigger);
+            step.getActions().enter(transition, args, context);
+            entered = step.getDestination();
+        } else {
+            transition = representation.getTransition(target, trigger);
+            StateRepresentation<S, T> targetRepresentation = getRepresentation(target);
+            representation.exit(transition, context);
+            exited = timed ? System.nanoTime() : 0;
+            transitionTo(target, trigger);
+            targetRepresentation.enter(transition, args, context);
+            entered = targetRepresentation;
+        }
+        if (timed) {
+            long finished = System.nanoTime();
+            if (timing != null) {
+                timing.recordTransition(source, trigger, exited - started, finished - exited);
+            }
+            if (tracing != null) {
+                tracing.exitActionsExecuted(transition, exited - started);
+                tracing.entryActionsExecuted(transition, finished - exited);
+                tracing.transitionFired(transition, finished - started);
+            }
+        }
+        return FireResult.TRANSITIONED;
+    }
+
+    /**
+     * Find the behaviour that handles the trigger in the supplied state
+     *
+     * @param representation The state
+     * @param trigger        The trigger
+     * @return The behaviour, or null if the trigger is not handled
+     */
+    protected TriggerBehaviour<S, T> findHandler(StateRepresentation<S, T> representation, T trigger) {
+        return config.findHandler(representation, trigger, getContext());
+    }
+
+    /**
+     * The context passed to context-aware guards and actions. A plain state machine has no context.
+     *
+     * @return The context, or null
+     */
+    protected Object getContext() {
+        return null;
+    }
+
+    /**
+     * How triggers fired from this machine's own actions are handled
+     *
+     * @return The firing mode
+     */
+    public FiringMode getFiringMode() {
+        return queue == null ? FiringMode.IMMEDIATE : FiringMode.QUEUED;
+    }
+
+    /**
+     * Set how triggers fired from this machine's own actions are handled. In {@link FiringMode#QUEUED} mode such a
+     * trigger is processed after the transition in progress has completed, and {@code tryFire} reports it as
+     * {@link FireResult#QUEUED}.
+     *
+     * @param firingMode The firing mode
+     */
+    public void setFiringMode(FiringMode firingMode) {
+        assert firingMode != null : "firingMode is null";
+        if (processing) {
+            throw new IllegalStateException("The firing mode cannot be changed while a trigger is being processed");
         }
+        if (firingMode == FiringMode.QUEUED) {
+            if (queue == null) {
+                queue = new TriggerQueue<>();
+            }
+        } else {
+            queue = null;
+        }
+    }
+
+    /**
+     * Record every transition this machine takes in a journal, from which its state can be rebuilt after a crash.
+     * The transition is recorded when the state changes, after the exit actions and before the entry actions.
+     *
+     * @param journal    The journal, or null to stop journaling
+     * @param instanceId The id this machine is recorded under
+     */
+    public void journalTo(TransitionJournal<S, T> journal, int instanceId) {
+        this.journal = journal;
+        this.journalId = instanceId;
+    }
+
+    /**
+     * Record the counts and action latencies of the triggers fired at this machine. Triggers queued by
+     * {@link AsyncStateMachine#fireAsync(Object)} are not recorded.
+     *
+     * @param metrics The metrics, or null to stop recording
+     */
+    public void setMetrics(TransitionMetrics<S, T> metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Deliver an event to a tracer for each step of firing a trigger at this machine. Triggers queued by
+     * {@link AsyncStateMachine#fireAsync(Object)} are not traced.
+     *
+     * @param tracer The tracer, or null to stop tracing
+     */
+    public void setTracer(TransitionTracer<S, T> tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Record how long this machine stays in each state, starting from now in the current state
+     *
+     * @param dwellTimes The dwell times, or null to stop recording
+     */
+    public void setDwellTimes(DwellTimes<S> dwellTimes) {
+        this.enteredAt = dwellTimes == null ? null : dwellTimes.start(getCurrentRepresentation());
+        this.dwellTimes = dwellTimes;
+    }
 
-        S source = getState();
-        OutVar<S> destination = new OutVar<>();
-        if (triggerBehaviour.resultsInTransitionFrom(source, args, destination)) {
-            Transition<S, T> transition = new Transition<>(source, destination.get(), trigger);
+    /**
+     * Run the timeouts configured with {@link StateConfiguration#timeoutAfter} on a timing wheel, starting with those
+     * of the current state. A timeout fires its trigger on the wheel's thread, so only a
+     * {@link ConcurrentStateMachine} can run timeouts.
+     *
+     * @param wheel The timing wheel, or null to cancel every timeout
+     */
+    public void scheduleTimeoutsOn(TimingWheel wheel) {
+        if (wheel != null && !(this instanceof ConcurrentStateMachine)) {
+            throw new IllegalStateException("Timeouts fire on the timing wheel's thread and require a ConcurrentStateMachine");
+        }
+        if (timers != null) {
+            timers.stop();
+            timers = null;
+        }
+        if (wheel != null) {
+            StateTimers<S, T> started = new StateTimers<>(wheel, this);
+            started.start(getCurrentRepresentation());
+            timers = started;
+        }
+    }
 
-            getCurrentRepresentation().exit(transition);
-            setState(destination.get());
-            getCurrentRepresentation().enter(transition, args);
+    /**
+     * Fire the trigger of a timeout that fell due, unless the machine has left its state since
+     *
+     * @param timer The timeout
+     */
+    void fireTimeout(StateTimers.Armed<S, T> timer) {
+        StateTimers<S, T> armed = timers;
+        if (armed != null && armed.disarm(timer)) {
+            publicTryFire(timer.getTrigger(), NO_ARGS);
         }
     }
 
@@ -219,7 +663,7 @@ public class StateMachine<S, T> {
      * @return True if the current state is equal to, or a substate of, the supplied state
      */
     public boolean isInState(S state) {
-        return getCurrentRepresentation().isIncludedIn(state);
+        return config.isInState(getCurrentRepresentation(), state);
     }
 
     /**
@@ -229,7 +673,7 @@ public class StateMachine<S, T> {
      * @return True if the trigger can be fired, false otherwise
      */
     public boolean canFire(T trigger) {
-        return getCurrentRepresentation().canHandle(trigger);
+        return findHandler(getCurrentRepresentation(), trigger) != null;
     }
 
     /**
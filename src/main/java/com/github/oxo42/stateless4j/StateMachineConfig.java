@@ -12,17 +12,24 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * The state machine configuration. Reusable.
+ * <p>
+ * Once configuration is complete it can be {@link #freeze() frozen}, after which it is immutable, can be shared by
+ * any number of state machines on any number of threads, and dispatches each trigger with a single table lookup.
  */
 public class StateMachineConfig<TState,TTrigger> {
 
     private final Map<TState, StateRepresentation<TState, TTrigger>> stateConfiguration = new HashMap<>();
     private final Map<TTrigger, TriggerWithParameters<TState, TTrigger>> triggerConfiguration = new HashMap<>();
+    private boolean exclusiveGuards;
+    private boolean frozen;
+    private boolean contextual; // set on freeze if any state uses the context
 
     /**
      * Return StateRepresentation for the specified state. May return null.
@@ -34,6 +41,15 @@ public class StateMachineConfig<TState,TTrigger> {
         return  stateConfiguration.get(state);
     }
 
+    /**
+     * The representations of every configured state
+     *
+     * @return The representations
+     */
+    Collection<StateRepresentation<TState, TTrigger>> getRepresentations() {
+        return stateConfiguration.values();
+    }
+
     /**
      * Return StateRepresentation for the specified state. Creates representation if it does not exist.
      *
@@ -43,6 +59,7 @@ public class StateMachineConfig<TState,TTrigger> {
     private StateRepresentation<TState, TTrigger> getOrCreateRepresentation(TState state) {
         StateRepresentation<TState, TTrigger> result = stateConfiguration.get(state);
         if (result == null) {
+            enforceNotFrozen();
             result = new StateRepresentation<>(state);
             stateConfiguration.put(state, result);
         }
@@ -54,6 +71,40 @@ public class StateMachineConfig<TState,TTrigger> {
         return triggerConfiguration.get(trigger);
     }
 
+    /**
+     * Find the behaviour that handles a trigger in the supplied state
+     *
+     * @param representation The state
+     * @param trigger        The trigger
+     * @param context        The context of the state machine, passed to context guards
+     * @return The behaviour, or null if the trigger is not handled
+     */
+    TriggerBehaviour<TState, TTrigger> findHandler(StateRepresentation<TState, TTrigger> representation, TTrigger trigger, Object context) {
+        return representation.tryFindHandler(trigger, context);
+    }
+
+    /**
+     * True if the supplied state is equal to, or a substate of, another
+     *
+     * @param representation The state to test
+     * @param state          The state that may include it
+     * @return True if the state is included
+     */
+    boolean isInState(StateRepresentation<TState, TTrigger> representation, TState state) {
+        return representation.isIncludedIn(state);
+    }
+
+    /**
+     * True if the supplied state, or a superstate, has any behaviour for a trigger, whether or not its guard is met
+     *
+     * @param representation The state
+     * @param trigger        The trigger
+     * @return True if the trigger is configured
+     */
+    boolean hasBehavioursFor(StateRepresentation<TState, TTrigger> representation, TTrigger trigger) {
+        return representation.hasBehavioursFor(trigger);
+    }
+
     /**
      * Begin configuration of the entry/exit actions and allowed transitions
      * when the state machine is in a particular state
@@ -62,6 +113,7 @@ public class StateMachineConfig<TState,TTrigger> {
      * @return A configuration object through which the state can be configured
      */
     public StateConfiguration<TState, TTrigger> configure(TState state) {
+        enforceNotFrozen();
         return new StateConfiguration<>(getOrCreateRepresentation(state), new Func2<TState, StateRepresentation<TState, TTrigger>>() {
 
             public StateRepresentation<TState, TTrigger> call(TState arg0) {
@@ -71,6 +123,7 @@ public class StateMachineConfig<TState,TTrigger> {
     }
 
     private void saveTriggerConfiguration(TriggerWithParameters<TState, TTrigger> trigger) {
+        enforceNotFrozen();
         if (triggerConfiguration.containsKey(trigger.getTrigger())) {
             throw new IllegalStateException("Parameters for the trigger '" + trigger + "' have already been configured.");
         }
@@ -126,6 +179,81 @@ public class StateMachineConfig<TState,TTrigger> {
         return configuration;
     }
 
+    /**
+     * Complete the configuration. Each state's own and inherited trigger behaviours are flattened into a single
+     * dispatch table, the state hierarchy is numbered so that superstate checks are constant-time, and no further
+     * changes are accepted, so the configuration can be shared between threads.
+     * Freezing an already frozen configuration has no effect.
+     *
+     * @return The receiver
+     */
+    public StateMachineConfig<TState, TTrigger> freeze() {
+        if (!frozen) {
+            int next = 0;
+            for (StateRepresentation<TState, TTrigger> representation : stateConfiguration.values()) {
+                if (representation.getSuperstate() == null) {
+                    next = representation.number(next);
+                }
+            }
+            for (StateRepresentation<TState, TTrigger> representation : stateConfiguration.values()) {
+                if (!representation.isNumbered()) {
+                    throw new IllegalStateException("The superstates of state '" + representation.getUnderlyingState() + "' form a cycle.");
+                }
+            }
+            Func2<TState, StateRepresentation<TState, TTrigger>> lookup = new Func2<TState, StateRepresentation<TState, TTrigger>>() {
+
+                public StateRepresentation<TState, TTrigger> call(TState state) {
+                    return getRepresentation(state);
+                }
+            };
+            for (StateRepresentation<TState, TTrigger> representation : stateConfiguration.values()) {
+                representation.freeze(lookup, exclusiveGuards);
+                contextual |= representation.usesContext();
+            }
+            frozen = true;
+        }
+        return this;
+    }
+
+    /**
+     * Declare that the guards of each state and trigger are mutually exclusive. Once frozen, a trigger is then
+     * resolved by the first behaviour whose guard is met, and the remaining guards are not evaluated.
+     * <p>
+     * Guards built from {@link DiscriminatedGuard}s or {@link ContextDiscriminatedGuard}s sharing a discriminator are
+     * proven exclusive when the configuration is frozen and do not need this declaration.
+     *
+     * @return The receiver
+     */
+    public StateMachineConfig<TState, TTrigger> assumeExclusiveGuards() {
+        enforceNotFrozen();
+        exclusiveGuards = true;
+        return this;
+    }
+
+    /**
+     * True if the configuration has been frozen
+     *
+     * @return True if the configuration can no longer be changed
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * True if a guard, action or destination selector of a frozen configuration takes the state machine's context
+     *
+     * @return True if the context is used
+     */
+    boolean usesContext() {
+        return contextual;
+    }
+
+    private void enforceNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("The configuration has been frozen and can no longer be changed.");
+        }
+    }
+
     public void generateDotFileInto(final OutputStream dotFile) throws IOException {
         try (OutputStreamWriter w = new OutputStreamWriter(dotFile, "UTF-8")) {
             PrintWriter writer = new PrintWriter(w);
@@ -146,7 +274,4 @@ public class StateMachineConfig<TState,TTrigger> {
             writer.write("}");
         }
     }
-
-
-
 }
@@ -0,0 +1,546 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters2;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters3;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A population of state machine instances sharing one frozen configuration.
+ * <p>
+ * Each instance is addressed by a dense id, handed out by {@link #add(Object)}, and its state is kept as an
+ * {@code int} code in a {@link StateStore} rather than in a {@link StateMachine} object of its own, so a million
+ * instances cost a few megabytes. By default the store is a primitive array, configured states are coded by their
+ * position in the frozen configuration and states that are only ever reached as destinations are coded as they are
+ * first seen. A fleet constructed with a list of states codes each state by its position in the list instead, so the
+ * codes stay the same from one process to the next and a durable store such as {@link MappedStateStore} can be
+ * reopened.
+ * <p>
+ * Guards and actions are shared by every instance and receive the instance id, an {@link Integer}, as their context.
+ * The id is only boxed when the configuration has guards, actions or selectors that take the context.
+ * A fleet is not thread-safe.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public class StateMachineFleet<S, T> {
+
+    private final StateMachineConfig<S, T> config;
+    private final StateStore store;
+    private final boolean fixedCodes; // true if the states were listed up front
+    private final boolean contextual; // true if the configuration takes the context, so the id must be boxed
+    private int idStride = 1; // the context of instance i is i * idStride + idOffset
+    private int idOffset;
+    private final Map<S, Integer> codes = new HashMap<>(); // states coded other than by their index
+    private final OutVar<S> destination = new OutVar<>();
+    private StateRepresentation<S, T>[] representations; // by state code
+    private final int[] codeByIndex; // by the index of a configured state, -1 if it has no code
+    private TransitionJournal<S, T> journal; // null unless journaling
+    private FleetIndex stateIndex; // null unless indexed
+    private Action2<S, T> unhandledTriggerAction = Dispatch.throwingUnhandledTriggerAction();
+
+    /**
+     * Construct an empty fleet
+     *
+     * @param config Frozen state machine configuration
+     */
+    public StateMachineFleet(StateMachineConfig<S, T> config) {
+        this(config, new ArrayStateStore(), false);
+        representations = newRepresentations(codeByIndex.length);
+        for (StateRepresentation<S, T> representation : config.getRepresentations()) {
+            representations[representation.getIndex()] = representation;
+            codeByIndex[representation.getIndex()] = representation.getIndex();
+        }
+    }
+
+    /**
+     * Construct a fleet on a state store, keeping any instances already in the store
+     *
+     * @param config Frozen state machine configuration
+     * @param states Every state an instance can be in; each is coded by its position
+     * @param store  The store holding the state codes
+     */
+    public StateMachineFleet(StateMachineConfig<S, T> config, S[] states, StateStore store) {
+        this(config, store, true);
+        assert states != null : "states is null";
+        Arrays.fill(codeByIndex, -1);
+        representations = newRepresentations(states.length);
+        for (int code = 0; code < states.length; code++) {
+            StateRepresentation<S, T> representation = config.getRepresentation(states[code]);
+            if (representation == null) {
+                representation = new StateRepresentation<>(states[code]);
+            } else {
+                codeByIndex[representation.getIndex()] = code;
+            }
+            representations[code] = representation;
+            if (codes.put(states[code], code) != null) {
+                throw new IllegalStateException("State '" + states[code] + "' is listed more than once");
+            }
+        }
+    }
+
+    private StateMachineFleet(StateMachineConfig<S, T> config, StateStore store, boolean fixedCodes) {
+        assert config != null : "config is null";
+        assert store != null : "store is null";
+        if (!config.isFrozen()) {
+            throw new IllegalStateException("A StateMachineFleet requires a frozen configuration");
+        }
+        this.config = config;
+        this.store = store;
+        this.fixedCodes = fixedCodes;
+        this.contextual = config.usesContext();
+        codeByIndex = new int[config.getRepresentations().size()];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S, T> StateRepresentation<S, T>[] newRepresentations(int length) {
+        return (StateRepresentation<S, T>[]) new StateRepresentation<?, ?>[length];
+    }
+
+    /**
+     * Construct a fleet of instances in the same initial state, with ids from zero
+     *
+     * @param config       Frozen state machine configuration
+     * @param initialState The initial state of every instance
+     * @param count        The number of instances
+     */
+    public StateMachineFleet(StateMachineConfig<S, T> config, S initialState, int count) {
+        this(config);
+        assert count >= 0 : "count is negative";
+        int code = codeOf(initialState);
+        for (int i = 0; i < count; i++) {
+            store.add(code);
+        }
+    }
+
+    /**
+     * Add an instance
+     *
+     * @param initialState The initial state of the instance
+     * @return The id of the new instance
+     */
+    public int add(S initialState) {
+        int code = codeOf(initialState);
+        int instanceId = store.add(code);
+        if (stateIndex != null) {
+            ensureIndexed(code);
+            stateIndex.add(instanceId, code);
+        }
+        if (journal != null) {
+            journal.appendAdded(instanceId, initialState);
+        }
+        return instanceId;
+    }
+
+    /**
+     * The number of instances
+     *
+     * @return The number of instances, one more than the highest id
+     */
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * The current state of an instance
+     *
+     * @param instanceId The instance
+     * @return The current state
+     */
+    public S getState(int instanceId) {
+        return representations[store.get(instanceId)].getUnderlyingState();
+    }
+
+    /**
+     * Determine if an instance is in the supplied state
+     *
+     * @param instanceId The instance
+     * @param state      The state to test for
+     * @return True if the current state is equal to, or a substate of, the supplied state
+     */
+    public boolean isInState(int instanceId, S state) {
+        return config.isInState(representations[store.get(instanceId)], state);
+    }
+
+    /**
+     * Returns true if {@code trigger} can be fired in the current state of an instance
+     *
+     * @param instanceId The instance
+     * @param trigger    Trigger to test
+     * @return True if the trigger can be fired, false otherwise
+     */
+    public boolean canFire(int instanceId, T trigger) {
+        return config.findHandler(representations[store.get(instanceId)], trigger, contextOf(instanceId)) != null;
+    }
+
+    /**
+     * Call an action with the id and current state of every instance, in id order
+     *
+     * @param action The action
+     */
+    public void forEach(Action2<Integer, S> action) {
+        assert action != null : "action is null";
+        for (int i = 0, size = store.size(); i < size; i++) {
+            action.doIt(i, representations[store.get(i)].getUnderlyingState());
+        }
+    }
+
+    /**
+     * Keep an index of the instances in each state, so that {@link #count(Object)} and {@link #instancesIn(Object)}
+     * need not look at every instance. The index is built from the current states and then kept up to date at each
+     * state change, at a constant cost per change and about eight bytes per instance.
+     */
+    public void indexStates() {
+        if (stateIndex != null) {
+            return;
+        }
+        FleetIndex built = new FleetIndex();
+        for (int i = 0, size = store.size(); i < size; i++) {
+            int code = store.get(i);
+            ensureIndexed(built, code);
+            built.add(i, code);
+        }
+        stateIndex = built;
+    }
+
+    /**
+     * The number of instances in a state
+     *
+     * @param state The state
+     * @return The number of instances in the state or any of its substates
+     */
+    public int count(S state) {
+        if (stateIndex == null) {
+            int count = 0;
+            for (int i = 0, size = store.size(); i < size; i++) {
+                if (config.isInState(representations[store.get(i)], state)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        int code = existingCode(state);
+        if (code >= 0) {
+            return stateIndex.total(code);
+        }
+        // A state without a code of its own, such as a superstate missing from the listed states
+        int count = 0;
+        for (int c = 0; c < representations.length; c++) {
+            if (stateIndex.size(c) > 0 && config.isInState(representations[c], state)) {
+                count += stateIndex.size(c);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The ids of the instances in a state
+     *
+     * @param state The state
+     * @return The ids of the instances in the state or any of its substates, in no particular order when the states
+     * are indexed
+     */
+    public int[] instancesIn(S state) {
+        if (stateIndex == null) {
+            int[] ids = new int[count(state)];
+            for (int i = 0, found = 0; found < ids.length; i++) {
+                if (config.isInState(representations[store.get(i)], state)) {
+                    ids[found++] = i;
+                }
+            }
+            return ids;
+        }
+        int[] ids = new int[count(state)];
+        int position = 0;
+        for (int c = 0; c < representations.length; c++) {
+            if (stateIndex.size(c) > 0 && config.isInState(representations[c], state)) {
+                position = stateIndex.copyMembers(c, ids, position);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Transition an instance from its current state via the specified trigger.
+     * The target state is determined by the configuration of the current state.
+     * Actions associated with leaving the current state and entering the new one
+     * will be invoked.
+     *
+     * @param instanceId The instance
+     * @param trigger    The trigger to fire
+     */
+    public void fire(int instanceId, T trigger) {
+        publicFire(instanceId, trigger, StateMachine.NO_ARGS);
+    }
+
+    /**
+     * Transition an instance from its current state via the specified trigger.
+     * The target state is determined by the configuration of the current state.
+     * Actions associated with leaving the current state and entering the new one
+     * will be invoked.
+     *
+     * @param instanceId The instance
+     * @param trigger    The trigger to fire
+     * @param arg0       The first argument
+     * @param <TArg0>    Type of the first trigger argument
+     */
+    public <TArg0> void fire(int instanceId, TriggerWithParameters1<TArg0, S, T> trigger, TArg0 arg0) {
+        assert trigger != null : "trigger is null";
+        publicFire(instanceId, trigger.getTrigger(), arg0);
+    }
+
+    /**
+     * Transition an instance from its current state via the specified trigger.
+     * The target state is determined by the configuration of the current state.
+     * Actions associated with leaving the current state and entering the new one
+     * will be invoked.
+     *
+     * @param instanceId The instance
+     * @param trigger    The trigger to fire
+     * @param arg0       The first argument
+     * @param arg1       The second argument
+     * @param <TArg0>    Type of the first trigger argument
+     * @param <TArg1>    Type of the second trigger argument
+     */
+    public <TArg0, TArg1> void fire(int instanceId, TriggerWithParameters2<TArg0, TArg1, S, T> trigger, TArg0 arg0, TArg1 arg1) {
+        assert trigger != null : "trigger is null";
+        publicFire(instanceId, trigger.getTrigger(), arg0, arg1);
+    }
+
+    /**
+     * Transition an instance from its current state via the specified trigger.
+     * The target state is determined by the configuration of the current state.
+     * Actions associated with leaving the current state and entering the new one
+     * will be invoked.
+     *
+     * @param instanceId The instance
+     * @param trigger    The trigger to fire
+     * @param arg0       The first argument
+     * @param arg1       The second argument
+     * @param arg2       The third argument
+     * @param <TArg0>    Type of the first trigger argument
+     * @param <TArg1>    Type of the second trigger argument
+     * @param <TArg2>    Type of the third trigger argument
+     */
+    public <TArg0, TArg1, TArg2> void fire(int instanceId, TriggerWithParameters3<TArg0, TArg1, TArg2, S, T> trigger, TArg0 arg0, TArg1 arg1, TArg2 arg2) {
+        assert trigger != null : "trigger is null";
+        publicFire(instanceId, trigger.getTrigger(), arg0, arg1, arg2);
+    }
+
+    /**
+     * Attempt to transition an instance from its current state via the specified trigger.
+     * Unlike {@link #fire(int, Object)}, a trigger that is not permitted is reported in the result rather than passed
+     * to the unhandled trigger action.
+     *
+     * @param instanceId The instance
+     * @param trigger    The trigger to fire
+     * @return The outcome
+     */
+    public FireResult tryFire(int instanceId, T trigger) {
+        Dispatch.validateParameters(config, trigger, StateMachine.NO_ARGS);
+        return dispatch(instanceId, trigger, StateMachine.NO_ARGS);
+    }
+
+    protected void publicFire(int instanceId, T trigger, Object... args) {
+        Dispatch.validateParameters(config, trigger, args);
+        FireResult result = dispatch(instanceId, trigger, args);
+        if (Dispatch.isRejected(result)) {
+            unhandledTriggerAction.doIt(getState(instanceId), trigger);
+        }
+    }
+
+    /**
+     * Record every transition taken by an instance of the fleet in a journal, under the instance id. The transition
+     * is recorded when the state changes, after the exit actions and before the entry actions. Instances added from
+     * now on are recorded too; those already in the fleet are not, so a fleet recovered from the journal alone must
+     * be created holding them.
+     *
+     * @param journal The journal, or null to stop journaling
+     */
+    public void journalTo(TransitionJournal<S, T> journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Override the default behaviour of throwing an exception when an unhandled trigger is fired
+     *
+     * @param unhandledTriggerAction An action to call with the instance's state and the trigger
+     */
+    public void onUnhandledTrigger(Action2<S, T> unhandledTriggerAction) {
+        if (unhandledTriggerAction == null) {
+            throw new IllegalStateException("unhandledTriggerAction");
+        }
+        this.unhandledTriggerAction = unhandledTriggerAction;
+    }
+
+    private FireResult dispatch(int instanceId, T trigger, Object[] args) {
+        int from = store.get(instanceId);
+        StateRepresentation<S, T> representation = representations[from];
+        Object context = contextOf(instanceId);
+        TriggerBehaviour<S, T> triggerBehaviour = config.findHandler(representation, trigger, context);
+        FireResult resolved = Dispatch.resolve(config, representation, trigger, triggerBehaviour, args, context, destination);
+        if (resolved != FireResult.TRANSITIONED) {
+            return resolved;
+        }
+
+        // Read the destination before any action runs, actions may fire again and reuse the holder
+        S target = destination.get();
+        TransitionStep<S, T> step = representation.getStep(target, trigger);
+        int index = step.getDestination().getIndex();
+        int code = index >= 0 ? codeByIndex[index] : -1;
+        if (code < 0) {
+            code = codeOf(target);
+        }
+        Transition<S, T> transition = step.getTransition();
+        step.getActions().exit(transition, context);
+        store.set(instanceId, code);
+        if (stateIndex != null) {
+            ensureIndexed(code);
+            stateIndex.move(instanceId, from, code);
+        }
+        if (journal != null) {
+            journal.append(instanceId, trigger, target);
+        }
+        step.getActions().enter(transition, args, context);
+        return FireResult.TRANSITIONED;
+    }
+
+    private Object contextOf(int instanceId) {
+        return contextual ? Integer.valueOf(instanceId * idStride + idOffset) : null;
+    }
+
+    /**
+     * Number the instances as part of a larger population, as a partition of a {@link PartitionedFleet} does, so
+     * guards and actions receive the id in that population as their context
+     *
+     * @param stride The step between the ids of consecutive instances
+     * @param offset The id of the first instance
+     */
+    void numberAs(int stride, int offset) {
+        assert stride > 0 : "stride must be positive";
+        assert offset >= 0 : "offset is negative";
+        this.idStride = stride;
+        this.idOffset = offset;
+    }
+
+    /**
+     * Set the state of an instance without running any action, as when replaying a journal
+     *
+     * @param instanceId The instance
+     * @param code       The state code
+     * @param added      True if the instance is added when it is the next one the fleet would hand out
+     */
+    void restore(int instanceId, int code, boolean added) {
+        if (added && instanceId == store.size()) {
+            store.add(code);
+            if (stateIndex != null) {
+                ensureIndexed(code);
+                stateIndex.add(instanceId, code);
+            }
+            return;
+        }
+        if (instanceId < 0 || instanceId >= store.size()) {
+            throw new IllegalStateException("Instance " + instanceId + " is not in the fleet");
+        }
+        int from = store.get(instanceId);
+        store.set(instanceId, code);
+        if (stateIndex != null) {
+            ensureIndexed(code);
+            stateIndex.move(instanceId, from, code);
+        }
+    }
+
+    /**
+     * The code of an instance's state, as held in the store
+     *
+     * @param instanceId The instance
+     * @return The code
+     */
+    int codeAt(int instanceId) {
+        return store.get(instanceId);
+    }
+
+    /**
+     * The state a code stands for
+     *
+     * @param code The code
+     * @return The state
+     */
+    S stateOfCode(int code) {
+        return representations[code].getUnderlyingState();
+    }
+
+    /**
+     * The number of state codes in use, one more than the highest
+     *
+     * @return The number of codes
+     */
+    int codeCount() {
+        return representations.length;
+    }
+
+    /**
+     * The code of a state, assigning one if the state is new and the states were not listed up front
+     *
+     * @param state The state
+     * @return The code
+     */
+    int codeOf(S state) {
+        StateRepresentation<S, T> representation = config.getRepresentation(state);
+        if (representation != null && codeByIndex[representation.getIndex()] >= 0) {
+            return codeByIndex[representation.getIndex()];
+        }
+        Integer code = codes.get(state);
+        if (code == null) {
+            if (fixedCodes) {
+                throw new IllegalStateException("State '" + state + "' is not one of the states of the fleet");
+            }
+            code = representations.length;
+            representations = Arrays.copyOf(representations, code + 1);
+            representations[code] = new StateRepresentation<>(state);
+            codes.put(state, code);
+        }
+        return code;
+    }
+
+    private void ensureIndexed(int code) {
+        ensureIndexed(stateIndex, code);
+    }
+
+    private void ensureIndexed(FleetIndex target, int code) {
+        if (target.hasCode(code)) {
+            return;
+        }
+        int[] ancestors = new int[]{code};
+        for (StateRepresentation<S, T> level = representations[code].getSuperstate(); level != null; level = level.getSuperstate()) {
+            int ancestor = existingCode(level.getUnderlyingState());
+            if (ancestor >= 0) {
+                ancestors = Arrays.copyOf(ancestors, ancestors.length + 1);
+                ancestors[ancestors.length - 1] = ancestor;
+                ensureIndexed(target, ancestor);
+            }
+        }
+        target.addCode(code, ancestors);
+    }
+
+    /**
+     * The code of a state, without assigning one
+     *
+     * @param state The state
+     * @return The code, or -1 if the state has none
+     */
+    private int existingCode(S state) {
+        StateRepresentation<S, T> representation = config.getRepresentation(state);
+        if (representation != null && codeByIndex[representation.getIndex()] >= 0) {
+            return codeByIndex[representation.getIndex()];
+        }
+        Integer code = codes.get(state);
+        return code == null ? -1 : code;
+    }
+}
@@ -0,0 +1,458 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action3;
+import com.github.oxo42.stateless4j.delegates.Func3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Hosts a population of state machines, one per id, each with its own mailbox.
+ * <p>
+ * {@link #send(Object, Object, Object...)} appends a trigger to the mailbox of the machine with that id, creating the
+ * machine on first use, and schedules the mailbox on the executor unless it is already scheduled. A mailbox is drained
+ * by one task at a time, so each machine handles its triggers serially and in the order they were sent, without a
+ * thread or a lock of its own. The executor may be a shared pool, or an executor starting a virtual thread per task
+ * where the platform provides one.
+ * <p>
+ * At most {@code maxLive} machines are kept materialised. Beyond that, idle machines are parked: the machine is dropped
+ * and only its current state is kept, and a new machine is created from that state when a trigger next arrives.
+ * Machines are parked in the order they first went idle, not by how long they have been idle: a machine that handles
+ * further triggers while waiting to be parked keeps its place, and one that is busy when its turn comes goes to the
+ * back. {@link #remove(Object)} forgets a machine altogether; a machine started for the same id afterwards handles
+ * no trigger until the forgotten one has finished.
+ * <p>
+ * If the executor refuses to run a mailbox, the triggers waiting in it are passed to the error action with the
+ * executor's exception, and the next trigger sent to the machine schedules it again.
+ *
+ * @param <K> The type used to identify machines
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public class StateMachineRuntime<K, S, T> {
+
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    private static final int PARKING = 2;
+    private static final int HELD = 3; // waiting for the removed mailbox of the same id to finish
+    private static final int RETIRED = 4;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final Func3<K, S, StateMachine<S, T>> factory;
+    private final S initialState;
+    private final Executor executor;
+    private final int maxLive;
+    private final ConcurrentMap<K, Mailbox<K, S, T>> mailboxes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<K, Mailbox<K, S, T>> retiring = new ConcurrentHashMap<>(); // removed, still running
+    private final ConcurrentLinkedQueue<Mailbox<K, S, T>> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger live = new AtomicInteger();
+    private volatile Action3<K, T, RuntimeException> errorAction = new Action3<K, T, RuntimeException>() {
+        @Override
+        public void doIt(K id, T trigger, RuntimeException e) {
+            logger.error("Machine '" + id + "' failed handling trigger '" + trigger + "'", e);
+        }
+    };
+
+    /**
+     * Construct a runtime whose machines are plain {@link StateMachine}s sharing one configuration
+     *
+     * @param config       Frozen state machine configuration
+     * @param initialState The state of a machine created for a new id
+     * @param executor     The executor mailboxes are drained on
+     * @param maxLive      The number of machines kept materialised before idle ones are parked
+     */
+    public StateMachineRuntime(final StateMachineConfig<S, T> config, S initialState, Executor executor, int maxLive) {
+        this(new Func3<K, S, StateMachine<S, T>>() {
+            @Override
+            public StateMachine<S, T> call(K id, S state) {
+                return new StateMachine<>(state, config);
+            }
+        }, initialState, executor, maxLive);
+        if (!config.isFrozen()) {
+            throw new IllegalStateException("A StateMachineRuntime requires a frozen configuration");
+        }
+    }
+
+    /**
+     * Construct a runtime
+     *
+     * @param factory      Creates the machine for an id in the supplied state, both on first use and after parking
+     * @param initialState The state of a machine created for a new id
+     * @param executor     The executor mailboxes are drained on
+     * @param maxLive      The number of machines kept materialised before idle ones are parked
+     */
+    public StateMachineRuntime(Func3<K, S, StateMachine<S, T>> factory, S initialState, Executor executor, int maxLive) {
+        assert factory != null : "factory is null";
+        assert executor != null : "executor is null";
+        assert maxLive > 0 : "maxLive must be positive";
+        this.factory = factory;
+        this.initialState = initialState;
+        this.executor = executor;
+        this.maxLive = maxLive;
+    }
+
+    /**
+     * Queue a trigger for the machine with the supplied id
+     *
+     * @param id      The machine
+     * @param trigger The trigger to fire
+     * @param args    The trigger arguments
+     */
+    public void send(K id, T trigger, Object... args) {
+        assert id != null : "id is null";
+        assert trigger != null : "trigger is null";
+        Mailbox<K, S, T> mailbox = mailboxes.get(id);
+        if (mailbox == null) {
+            Mailbox<K, S, T> predecessor = retiring.get(id);
+            Mailbox<K, S, T> created = new Mailbox<>(this, id, initialState, predecessor == null ? IDLE : HELD);
+            mailbox = mailboxes.putIfAbsent(id, created);
+            if (mailbox == null) {
+                mailbox = created;
+                if (predecessor != null) {
+                    predecessor.handOver(created);
+                }
+            }
+        }
+        mailbox.push(new Message<>(trigger, args));
+        mailbox.schedule();
+        if (mailbox.status == RETIRED) {
+            // The mailbox was removed and finished while the trigger was sent
+            mailbox.reroute();
+        }
+    }
+
+    /**
+     * The state of a machine after the last trigger it handled
+     *
+     * @param id The machine
+     * @return The state, or null if no trigger was ever sent to the machine
+     */
+    public S getState(K id) {
+        Mailbox<K, S, T> mailbox = mailboxes.get(id);
+        return mailbox == null ? null : mailbox.state;
+    }
+
+    /**
+     * Forget the machine with the supplied id. Triggers already sent to it are still handled; a trigger sent afterwards
+     * starts a new machine in the initial state once the forgotten one has handled them.
+     *
+     * @param id The machine
+     * @return The state of the machine after the last trigger it handled, or null if no trigger was sent to it
+     */
+    public S remove(K id) {
+        Mailbox<K, S, T> mailbox = mailboxes.get(id);
+        if (mailbox == null) {
+            return null;
+        }
+        synchronized (mailbox) {
+            if (mailbox.removed) {
+                return null;
+            }
+            // Announce the mailbox before forgetting it, so a trigger sent next finds it and waits for it to finish
+            retiring.put(id, mailbox);
+            mailboxes.remove(id, mailbox);
+            mailbox.removed = true;
+        }
+        // A busy mailbox retires itself when its task finishes
+        mailbox.drop();
+        return mailbox.state;
+    }
+
+    /**
+     * The number of machines currently materialised
+     *
+     * @return The number of live machines
+     */
+    public int getLiveCount() {
+        return live.get();
+    }
+
+    /**
+     * Park every machine that is idle now
+     */
+    public void parkIdle() {
+        List<Mailbox<K, S, T>> busy = new ArrayList<>();
+        for (Mailbox<K, S, T> mailbox; (mailbox = idle.poll()) != null; ) {
+            if (!mailbox.park()) {
+                busy.add(mailbox);
+            }
+        }
+        for (Mailbox<K, S, T> mailbox : busy) {
+            mailbox.queueIdle();
+        }
+    }
+
+    /**
+     * Override the default behaviour of logging an exception thrown while a machine handles a trigger
+     *
+     * @param errorAction An action to call with the machine id, the trigger and the exception
+     */
+    public void onError(Action3<K, T, RuntimeException> errorAction) {
+        if (errorAction == null) {
+            throw new IllegalStateException("errorAction");
+        }
+        this.errorAction = errorAction;
+    }
+
+    private void parkOverflow() {
+        // Busy machines are queued again, so bound the attempts rather than looping until enough are parked
+        for (int attempts = live.get() - maxLive; attempts > 0 && live.get() > maxLive; attempts--) {
+            Mailbox<K, S, T> mailbox = idle.poll();
+            if (mailbox == null) {
+                return;
+            }
+            if (!mailbox.park()) {
+                mailbox.queueIdle();
+            }
+        }
+    }
+
+    private static final class Message<T> {
+
+        final T trigger;
+        final Object[] args;
+        Message<T> next;
+
+        Message(T trigger, Object[] args) {
+            this.trigger = trigger;
+            this.args = args;
+        }
+    }
+
+    /**
+     * A machine, or its parked state, with a lock-free multi-producer inbox
+     */
+    private static final class Mailbox<K, S, T> implements Runnable {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Mailbox, Message> INBOX =
+                AtomicReferenceFieldUpdater.newUpdater(Mailbox.class, Message.class, "inbox");
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Mailbox> STATUS =
+                AtomicIntegerFieldUpdater.newUpdater(Mailbox.class, "status");
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Mailbox> QUEUED =
+                AtomicIntegerFieldUpdater.newUpdater(Mailbox.class, "queued");
+
+        private final StateMachineRuntime<K, S, T> runtime;
+        private final K id;
+        private volatile Message<T> inbox; // most recent first
+        private volatile int status;
+        private volatile int queued; // 1 while on the runtime's idle queue
+        private volatile S state;
+        private volatile boolean removed; // true once the runtime has forgotten the id
+        private StateMachine<S, T> machine; // null while parked, touched only by the task holding the status
+        private Mailbox<K, S, T> successor; // guarded by this, held until this mailbox retires
+
+        Mailbox(StateMachineRuntime<K, S, T> runtime, K id, S state, int status) {
+            this.runtime = runtime;
+            this.id = id;
+            this.state = state;
+            this.status = status;
+        }
+
+        @SuppressWarnings("unchecked")
+        void push(Message<T> message) {
+            Message<T> head;
+            do {
+                head = inbox;
+                message.next = head;
+            } while (!INBOX.compareAndSet(this, head, message));
+        }
+
+        void schedule() {
+            if (STATUS.compareAndSet(this, IDLE, SCHEDULED)) {
+                try {
+                    runtime.executor.execute(this);
+                } catch (RuntimeException e) {
+                    reject(e);
+                    release();
+                }
+            }
+        }
+
+        /**
+         * Report every trigger waiting in the inbox as failed, after the executor refused to drain it
+         *
+         * @param cause The executor's exception
+         */
+        @SuppressWarnings("unchecked")
+        private void reject(RuntimeException cause) {
+            Message<T> batch = INBOX.getAndSet(this, null);
+            for (Message<T> message = reverse(batch); message != null; message = message.next) {
+                runtime.errorAction.doIt(id, message.trigger, cause);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            Message<T> batch = INBOX.getAndSet(this, null);
+            if (batch != null) {
+                handle(reverse(batch));
+            }
+
+            if (inbox != null) {
+                // Yield the carrier thread between batches so a busy machine cannot starve the others
+                try {
+                    runtime.executor.execute(this);
+                    return;
+                } catch (RuntimeException e) {
+                    reject(e);
+                }
+            }
+            if (!removed && machine != null) {
+                queueIdle();
+            }
+            release();
+            runtime.parkOverflow();
+        }
+
+        /**
+         * Give up the mailbox held by the caller, draining it again if triggers arrived, or retiring it if it was
+         * removed meanwhile
+         */
+        private void release() {
+            status = IDLE;
+            if (inbox != null) {
+                schedule();
+            } else if (removed) {
+                drop();
+            }
+        }
+
+        private void handle(Message<T> messages) {
+            if (machine == null) {
+                try {
+                    machine = runtime.factory.call(id, state);
+                } catch (RuntimeException e) {
+                    for (Message<T> message = messages; message != null; message = message.next) {
+                        runtime.errorAction.doIt(id, message.trigger, e);
+                    }
+                    return;
+                }
+                runtime.live.incrementAndGet();
+            }
+            for (Message<T> message = messages; message != null; message = message.next) {
+                try {
+                    machine.publicFire(message.trigger, message.args);
+                } catch (RuntimeException e) {
+                    runtime.errorAction.doIt(id, message.trigger, e);
+                }
+            }
+            state = machine.getState();
+        }
+
+        void queueIdle() {
+            if (!removed && QUEUED.compareAndSet(this, 0, 1)) {
+                runtime.idle.add(this);
+                if (removed) {
+                    unqueueIdle();
+                }
+            }
+        }
+
+        private void unqueueIdle() {
+            if (QUEUED.compareAndSet(this, 1, 0)) {
+                runtime.idle.remove(this);
+            }
+        }
+
+        /**
+         * Drop the machine, keeping its state, unless it is busy. Called after the mailbox is taken off the idle
+         * queue.
+         *
+         * @return False if the mailbox is busy
+         */
+        boolean park() {
+            queued = 0;
+            return drop();
+        }
+
+        /**
+         * Drop the machine, keeping its state, unless it is busy. A removed mailbox with no triggers left retires.
+         *
+         * @return False if the mailbox is busy
+         */
+        boolean drop() {
+            if (!STATUS.compareAndSet(this, IDLE, PARKING)) {
+                return false;
+            }
+            dropMachine();
+            if (removed && inbox == null) {
+                retire();
+            } else {
+                release();
+            }
+            return true;
+        }
+
+        /**
+         * Let the mailbox started for the same id after this one was removed run once this one has retired
+         *
+         * @param next The new mailbox, created held
+         */
+        void handOver(Mailbox<K, S, T> next) {
+            synchronized (this) {
+                if (status != RETIRED) {
+                    successor = next;
+                    return;
+                }
+            }
+            next.release();
+        }
+
+        private void retire() {
+            Mailbox<K, S, T> next;
+            synchronized (this) {
+                status = RETIRED;
+                next = successor;
+                successor = null;
+            }
+            unqueueIdle();
+            runtime.retiring.remove(id, this);
+            if (next != null) {
+                next.release();
+            }
+            reroute();
+        }
+
+        /**
+         * Send again the triggers that reached the mailbox after it retired, to whichever mailbox now has the id
+         */
+        @SuppressWarnings("unchecked")
+        void reroute() {
+            Message<T> batch = INBOX.getAndSet(this, null);
+            for (Message<T> message = reverse(batch); message != null; message = message.next) {
+                runtime.send(id, message.trigger, message.args);
+            }
+        }
+
+        private void dropMachine() {
+            if (machine != null) {
+                machine = null;
+                runtime.live.decrementAndGet();
+            }
+        }
+
+        private static <T> Message<T> reverse(Message<T> head) {
+            Message<T> reversed = null;
+            while (head != null) {
+                Message<T> next = head.next;
+                head.next = reversed;
+                reversed = head;
+                head = next;
+            }
+            return reversed;
+        }
+    }
+}
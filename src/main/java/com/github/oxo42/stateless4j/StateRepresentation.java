@@ -2,6 +2,8 @@ package com.github.oxo42.stateless4j;
 
 import com.github.oxo42.stateless4j.delegates.Action1;
 import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.Action3;
+import com.github.oxo42.stateless4j.delegates.Func2;
 import com.github.oxo42.stateless4j.transitions.Transition;
 import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
 import java.util.ArrayList;
@@ -10,16 +12,27 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class StateRepresentation<S, T> {
 
     private final S state;
 
     private final Map<T, List<TriggerBehaviour<S, T>>> triggerBehaviours = new HashMap<>();
-    private final List<Action2<Transition<S, T>, Object[]>> entryActions = new ArrayList<>();
-    private final List<Action1<Transition<S, T>>> exitActions = new ArrayList<>();
+    private final List<Action3<Transition<S, T>, Object[], Object>> entryActions = new ArrayList<>();
+    private final List<Action2<Transition<S, T>, Object>> exitActions = new ArrayList<>();
     private final List<StateRepresentation<S, T>> substates = new ArrayList<>();
+    private final List<StateTimeout<T>> timeouts = new ArrayList<>();
+    private final ConcurrentMap<T, Transition<S, T>> transitions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<S, ActionChain<S, T>> actionChains = new ConcurrentHashMap<>();
+    private final ConcurrentMap<T, TransitionStep<S, T>> steps = new ConcurrentHashMap<>();
     private StateRepresentation<S, T> superstate; // null
+    private Func2<S, StateRepresentation<S, T>> lookup; // null until frozen
+    private int index = -1;
+    private int lastDescendant = -1;
+    private volatile Map<T, HandlerChain<S, T>> handlers; // null until frozen
+    private boolean contextual; // true once a guard, action or selector taking the context is configured
 
     public StateRepresentation(S state) {
         this.state = state;
@@ -34,41 +47,83 @@ public class StateRepresentation<S, T> {
     }
 
     public TriggerBehaviour<S, T> tryFindHandler(T trigger) {
-        TriggerBehaviour<S, T> result = tryFindLocalHandler(trigger);
+        return tryFindHandler(trigger, null);
+    }
+
+    TriggerBehaviour<S, T> tryFindHandler(T trigger, Object context) {
+        if (handlers != null) {
+            HandlerChain<S, T> chain = handlers.get(trigger);
+            return chain == null ? null : chain.find(context);
+        }
+        TriggerBehaviour<S, T> result = tryFindLocalHandler(trigger, context);
         if (result == null && superstate != null) {
-            result = superstate.tryFindHandler(trigger);
+            result = superstate.tryFindHandler(trigger, context);
         }
         return result;
     }
 
-    TriggerBehaviour<S, T> tryFindLocalHandler(T trigger/*, out TriggerBehaviour handler*/) {
+    TriggerBehaviour<S, T> tryFindLocalHandler(T trigger, Object context) {
         List<TriggerBehaviour<S, T>> possible = triggerBehaviours.get(trigger);
         if (possible == null) {
             return null;
         }
 
-        List<TriggerBehaviour<S, T>> actual = new ArrayList<>();
-        for (TriggerBehaviour<S, T> triggerBehaviour : possible) {
-            if (triggerBehaviour.isGuardConditionMet()) {
-                actual.add(triggerBehaviour);
+        TriggerBehaviour<S, T> result = null;
+        for (int i = 0; i < possible.size(); i++) {
+            TriggerBehaviour<S, T> triggerBehaviour = possible.get(i);
+            if (triggerBehaviour.isGuardConditionMet(context)) {
+                if (result != null) {
+                    throw new IllegalStateException("Multiple permitted exit transitions are configured from state '" + state + "' for trigger '" + trigger + "'. Guard clauses must be mutually exclusive.");
+                }
+                result = triggerBehaviour;
             }
         }
 
-        if (actual.size() > 1) {
-            throw new IllegalStateException("Multiple permitted exit transitions are configured from state '" + trigger + "' for trigger '" + state + "'. Guard clauses must be mutually exclusive.");
-        }
+        return result;
+    }
 
-        return actual.isEmpty() ? null : actual.get(0);
+    /**
+     * Return a transition from this state to the specified destination. Transitions are immutable, so the last
+     * transition created for a trigger is cached and handed out again while the destination stays the same.
+     *
+     * @param destination The state transitioned to
+     * @param trigger     The trigger that caused the transition
+     * @return A transition from this state to the destination
+     */
+    Transition<S, T> getTransition(S destination, T trigger) {
+        Transition<S, T> transition = transitions.get(trigger);
+        if (transition == null || !transition.getDestination().equals(destination)) {
+            transition = new Transition<>(state, destination, trigger);
+            transitions.put(trigger, transition);
+        }
+        return transition;
     }
 
     public void addEntryAction(final T trigger, final Action2<Transition<S, T>, Object[]> action) {
         assert action != null : "action is null";
+        addEntryAction(trigger, new Action3<Transition<S, T>, Object[], Object>() {
+            @Override
+            public void doIt(Transition<S, T> t, Object[] args, Object context) {
+                action.doIt(t, args);
+            }
+        });
+    }
+
+    /**
+     * Add an entry action that runs only when the state is entered by the specified trigger
+     *
+     * @param trigger The trigger by which the state must be entered in order for the action to execute
+     * @param action  Action receiving the transition, the trigger arguments and the state machine context
+     */
+    public void addEntryAction(final T trigger, final Action3<Transition<S, T>, Object[], Object> action) {
+        assert action != null : "action is null";
+        enforceNotFrozen();
 
-        entryActions.add(new Action2<Transition<S, T>, Object[]>() {
+        entryActions.add(new Action3<Transition<S, T>, Object[], Object>() {
             @Override
-            public void doIt(Transition<S, T> t, Object[] args) {
+            public void doIt(Transition<S, T> t, Object[] args, Object context) {
                 if (t.getTrigger().equals(trigger)) {
-                    action.doIt(t, args);
+                    action.doIt(t, args, context);
                 }
             }
         });
@@ -76,62 +131,169 @@ public class StateRepresentation<S, T> {
 
     public void addEntryAction(Action2<Transition<S, T>, Object[]> action) {
         assert action != null : "action is null";
+        addEntryAction(withoutContext(action));
+    }
+
+    /**
+     * Add an entry action
+     *
+     * @param action Action receiving the transition, the trigger arguments and the state machine context
+     */
+    public void addEntryAction(Action3<Transition<S, T>, Object[], Object> action) {
+        assert action != null : "action is null";
+        enforceNotFrozen();
         entryActions.add(action);
     }
 
     public void insertEntryAction(Action2<Transition<S, T>, Object[]> action) {
         assert action != null : "action is null";
-        entryActions.add(0, action);
+        enforceNotFrozen();
+        entryActions.add(0, withoutContext(action));
     }
 
-    public void addExitAction(Action1<Transition<S, T>> action) {
+    public void addExitAction(final Action1<Transition<S, T>> action) {
         assert action != null : "action is null";
+        addExitAction(new Action2<Transition<S, T>, Object>() {
+            @Override
+            public void doIt(Transition<S, T> t, Object context) {
+                action.doIt(t);
+            }
+        });
+    }
+
+    /**
+     * Add an exit action
+     *
+     * @param action Action receiving the transition and the state machine context
+     */
+    public void addExitAction(Action2<Transition<S, T>, Object> action) {
+        assert action != null : "action is null";
+        enforceNotFrozen();
         exitActions.add(action);
     }
 
+    private Action3<Transition<S, T>, Object[], Object> withoutContext(final Action2<Transition<S, T>, Object[]> action) {
+        return new Action3<Transition<S, T>, Object[], Object>() {
+            @Override
+            public void doIt(Transition<S, T> t, Object[] args, Object context) {
+                action.doIt(t, args);
+            }
+        };
+    }
+
     public void enter(Transition<S, T> transition, Object... entryArgs) {
+        enter(transition, entryArgs, null);
+    }
+
+    void enter(Transition<S, T> transition, Object[] entryArgs, Object context) {
         assert transition != null : "transition is null";
 
         if (transition.isReentry()) {
-            executeEntryActions(transition, entryArgs);
+            executeEntryActions(transition, entryArgs, context);
         } else if (!includes(transition.getSource())) {
             if (superstate != null) {
-                superstate.enter(transition, entryArgs);
+                superstate.enter(transition, entryArgs, context);
             }
 
-            executeEntryActions(transition, entryArgs);
+            executeEntryActions(transition, entryArgs, context);
         }
     }
 
     public void exit(Transition<S, T> transition) {
+        exit(transition, null);
+    }
+
+    void exit(Transition<S, T> transition, Object context) {
         assert transition != null : "transition is null";
 
         if (transition.isReentry()) {
-            executeExitActions(transition);
+            executeExitActions(transition, context);
         } else if (!includes(transition.getDestination())) {
-            executeExitActions(transition);
+            executeExitActions(transition, context);
             if (superstate != null) {
-                superstate.exit(transition);
+                superstate.exit(transition, context);
             }
         }
     }
 
-    void executeEntryActions(Transition<S, T> transition, Object[] entryArgs) {
+    /**
+     * The exit and entry actions of a transition from this state to the destination. Only available once frozen,
+     * the actions for each destination are collected on first use.
+     *
+     * @param destination The state transitioned to
+     * @return The actions of the transition
+     */
+    ActionChain<S, T> getActionChain(StateRepresentation<S, T> destination) {
+        assert handlers != null : "representation is not frozen";
+        ActionChain<S, T> chain = actionChains.get(destination.getUnderlyingState());
+        if (chain == null) {
+            chain = ActionChain.build(this, destination);
+            actionChains.put(destination.getUnderlyingState(), chain);
+        }
+        return chain;
+    }
+
+    /**
+     * The transition from this state to the destination for a trigger, resolved once and handed out again while the
+     * destination stays the same, so taking a repeated transition costs a single lookup. Only available once frozen.
+     *
+     * @param destination The state transitioned to
+     * @param trigger     The trigger that caused the transition
+     * @return The transition, the destination representation and the actions to run
+     */
+    TransitionStep<S, T> getStep(S destination, T trigger) {
+        assert handlers != null : "representation is not frozen";
+        TransitionStep<S, T> step = steps.get(trigger);
+        if (step == null || !step.getTransition().getDestination().equals(destination)) {
+            StateRepresentation<S, T> representation = lookup.call(destination);
+            if (representation == null) {
+                representation = new StateRepresentation<>(destination);
+            }
+            step = new TransitionStep<>(getTransition(destination, trigger), representation, getActionChain(representation));
+            steps.put(trigger, step);
+        }
+        return step;
+    }
+
+    /**
+     * Add a timeout, armed when the state is entered
+     *
+     * @param timeout The delay and the trigger to fire
+     */
+    void addTimeout(StateTimeout<T> timeout) {
+        enforceNotFrozen();
+        timeouts.add(timeout);
+    }
+
+    List<StateTimeout<T>> getTimeouts() {
+        return timeouts;
+    }
+
+    List<Action3<Transition<S, T>, Object[], Object>> getEntryActions() {
+        return entryActions;
+    }
+
+    List<Action2<Transition<S, T>, Object>> getExitActions() {
+        return exitActions;
+    }
+
+    void executeEntryActions(Transition<S, T> transition, Object[] entryArgs, Object context) {
         assert transition != null : "transition is null";
         assert entryArgs != null : "entryArgs is null";
-        for (Action2<Transition<S, T>, Object[]> action : entryActions) {
-            action.doIt(transition, entryArgs);
+        for (int i = 0; i < entryActions.size(); i++) {
+            entryActions.get(i).doIt(transition, entryArgs, context);
         }
     }
 
-    void executeExitActions(Transition<S, T> transition) {
+    void executeExitActions(Transition<S, T> transition, Object context) {
         assert transition != null : "transition is null";
-        for (Action1<Transition<S, T>> action : exitActions) {
-            action.doIt(transition);
+        for (int i = 0; i < exitActions.size(); i++) {
+            exitActions.get(i).doIt(transition, context);
         }
     }
 
     public void addTriggerBehaviour(TriggerBehaviour<S, T> triggerBehaviour) {
+        enforceNotFrozen();
         List<TriggerBehaviour<S, T>> allowed;
         if (!triggerBehaviours.containsKey(triggerBehaviour.getTrigger())) {
             allowed = new ArrayList<>();
@@ -146,6 +308,7 @@ public class StateRepresentation<S, T> {
     }
 
     public void setSuperstate(StateRepresentation<S, T> value) {
+        enforceNotFrozen();
         superstate = value;
     }
 
@@ -155,12 +318,17 @@ public class StateRepresentation<S, T> {
 
     public void addSubstate(StateRepresentation<S, T> substate) {
         assert substate != null : "substate is null";
+        enforceNotFrozen();
         substates.add(substate);
     }
 
     public boolean includes(S stateToCheck) {
-        for (StateRepresentation<S, T> s : substates) {
-            if (s.includes(stateToCheck)) {
+        if (handlers != null) {
+            StateRepresentation<S, T> other = lookup.call(stateToCheck);
+            return other != null && index <= other.index && other.index <= lastDescendant;
+        }
+        for (int i = 0; i < substates.size(); i++) {
+            if (substates.get(i).includes(stateToCheck)) {
                 return true;
             }
         }
@@ -168,16 +336,33 @@ public class StateRepresentation<S, T> {
     }
 
     public boolean isIncludedIn(S stateToCheck) {
+        if (handlers != null) {
+            StateRepresentation<S, T> other = lookup.call(stateToCheck);
+            return other != null && other.index <= index && index <= other.lastDescendant;
+        }
         return this.state.equals(stateToCheck) || (superstate != null && superstate.isIncludedIn(stateToCheck));
     }
 
-    @SuppressWarnings("unchecked")
     public List<T> getPermittedTriggers() {
+        return getPermittedTriggers(null);
+    }
+
+    List<T> getPermittedTriggers(Object context) {
+        if (handlers != null) {
+            List<T> permitted = new ArrayList<>(handlers.size());
+            for (HandlerChain<S, T> chain : handlers.values()) {
+                if (chain.isPermitted(context)) {
+                    permitted.add(chain.getTrigger());
+                }
+            }
+            return permitted;
+        }
+
         Set<T> result = new HashSet<>();
 
         for (T t : triggerBehaviours.keySet()) {
             for (TriggerBehaviour<S, T> v : triggerBehaviours.get(t)) {
-                if (v.isGuardConditionMet()) {
+                if (v.isGuardConditionMet(context)) {
                     result.add(t);
                     break;
                 }
@@ -185,9 +370,128 @@ public class StateRepresentation<S, T> {
         }
 
         if (getSuperstate() != null) {
-            result.addAll(getSuperstate().getPermittedTriggers());
+            result.addAll(getSuperstate().getPermittedTriggers(context));
         }
 
         return new ArrayList<>(result);
     }
+
+    /**
+     * Number this state and its substates in pre-order, so that the states included in this one are exactly those
+     * numbered from this state's index to its last descendant's index
+     *
+     * @param next The next free index
+     * @return The next free index after this subtree
+     */
+    int number(int next) {
+        index = next++;
+        for (int i = 0; i < substates.size(); i++) {
+            StateRepresentation<S, T> substate = substates.get(i);
+            if (substate.getSuperstate() == this) {
+                next = substate.number(next);
+            }
+        }
+        lastDescendant = next - 1;
+        return next;
+    }
+
+    boolean isNumbered() {
+        return index >= 0;
+    }
+
+    /**
+     * The position of this state in the pre-order numbering of the configuration's states. Configured states are
+     * numbered densely from zero once frozen.
+     *
+     * @return The index, or -1 until numbered
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Flatten the trigger behaviours of this state and its superstates into one table. Containment checks use the
+     * numbering assigned by {@link #number(int)}, resolving states through the supplied lookup. The representation
+     * can no longer be modified afterwards.
+     *
+     * @param lookup          Resolves the representation of a state in the same configuration
+     * @param exclusiveGuards True if guards are declared mutually exclusive, so the first match may be taken
+     */
+    void freeze(Func2<S, StateRepresentation<S, T>> lookup, boolean exclusiveGuards) {
+        assert lookup != null : "lookup is null";
+        if (handlers != null) {
+            return;
+        }
+        Set<T> triggers = new HashSet<>();
+        for (StateRepresentation<S, T> level = this; level != null; level = level.getSuperstate()) {
+            triggers.addAll(level.getTriggerBehaviours().keySet());
+        }
+        Map<T, HandlerChain<S, T>> result = new HashMap<>(capacityFor(triggers.size()));
+        for (T trigger : triggers) {
+            HandlerChain<S, T> chain = HandlerChain.build(this, trigger, exclusiveGuards);
+            if (chain != null) {
+                result.put(trigger, chain);
+            }
+        }
+        this.lookup = lookup;
+        handlers = result;
+    }
+
+    /**
+     * The flattened behaviours for a trigger. Only available once frozen.
+     *
+     * @param trigger The trigger
+     * @return The behaviours, or null if the trigger is not handled
+     */
+    HandlerChain<S, T> getHandlerChain(T trigger) {
+        assert handlers != null : "representation is not frozen";
+        return handlers.get(trigger);
+    }
+
+    /**
+     * True if this state or a superstate has any behaviour for the trigger, whether or not its guard is met
+     *
+     * @param trigger The trigger
+     * @return True if the trigger is configured
+     */
+    boolean hasBehavioursFor(T trigger) {
+        if (handlers != null) {
+            return handlers.containsKey(trigger);
+        }
+        List<TriggerBehaviour<S, T>> local = triggerBehaviours.get(trigger);
+        if (local != null && !local.isEmpty()) {
+            return true;
+        }
+        return superstate != null && superstate.hasBehavioursFor(trigger);
+    }
+
+    /**
+     * Note that a guard, action or destination selector of this state takes the state machine's context
+     */
+    void useContext() {
+        contextual = true;
+    }
+
+    /**
+     * True if a guard, action or destination selector of this state takes the state machine's context
+     *
+     * @return True if the context is used
+     */
+    boolean usesContext() {
+        return contextual;
+    }
+
+    public boolean isFrozen() {
+        return handlers != null;
+    }
+
+    private void enforceNotFrozen() {
+        if (handlers != null) {
+            throw new IllegalStateException("State '" + state + "' belongs to a frozen configuration and can no longer be changed.");
+        }
+    }
+
+    static int capacityFor(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
 }
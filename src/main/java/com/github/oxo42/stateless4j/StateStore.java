@@ -0,0 +1,39 @@
+package com.github.oxo42.stateless4j;
+
+/**
+ * Storage for the states of the instances of a {@link StateMachineFleet}, as one {@code int} state code per slot.
+ * Slots are numbered densely from zero by instance id.
+ */
+public interface StateStore {
+
+    /**
+     * The number of slots in use
+     *
+     * @return The number of slots
+     */
+    int size();
+
+    /**
+     * Read a slot
+     *
+     * @param slot The slot, less than {@link #size()}
+     * @return The state code
+     */
+    int get(int slot);
+
+    /**
+     * Write a slot
+     *
+     * @param slot The slot, less than {@link #size()}
+     * @param code The state code
+     */
+    void set(int slot, int code);
+
+    /**
+     * Append a slot
+     *
+     * @param code The state code
+     * @return The new slot
+     */
+    int add(int code);
+}
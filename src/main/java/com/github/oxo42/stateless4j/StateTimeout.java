@@ -0,0 +1,25 @@
+package com.github.oxo42.stateless4j;
+
+/**
+ * A trigger to fire once a machine has stayed in a state for a delay.
+ *
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+final class StateTimeout<T> {
+
+    private final long delayNanos;
+    private final T trigger;
+
+    StateTimeout(long delayNanos, T trigger) {
+        this.delayNanos = delayNanos;
+        this.trigger = trigger;
+    }
+
+    long getDelayNanos() {
+        return delayNanos;
+    }
+
+    T getTrigger() {
+        return trigger;
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The timeouts armed for one machine: those of its current state and of that state's superstates. A timeout is armed
+ * when its state is entered and cancelled when it is left, at the same state changes that run the exit and entry
+ * actions. The armed timeouts are kept by state, so leaving a state finds its timeouts directly, and each knows whether
+ * it is still armed, so a timeout that falls due is claimed without a search. They are only touched by a thread that
+ * has claimed the {@link ConcurrentStateMachine}.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+final class StateTimers<S, T> {
+
+    private final TimingWheel wheel;
+    private final StateMachine<S, T> machine;
+    private final Map<S, List<Armed<S, T>>> armed = new HashMap<>();
+
+    StateTimers(TimingWheel wheel, StateMachine<S, T> machine) {
+        this.wheel = wheel;
+        this.machine = machine;
+    }
+
+    /**
+     * Arm the timeouts of the current state and its superstates
+     *
+     * @param current The current state
+     */
+    void start(StateRepresentation<S, T> current) {
+        for (StateRepresentation<S, T> level = current; level != null; level = level.getSuperstate()) {
+            arm(level);
+        }
+    }
+
+    /**
+     * Cancel the timeouts of the states left by a state change and arm those of the states entered
+     *
+     * @param source      The state left
+     * @param destination The state entered
+     */
+    void transition(StateRepresentation<S, T> source, StateRepresentation<S, T> destination) {
+        if (source.getUnderlyingState().equals(destination.getUnderlyingState())) {
+            cancel(source.getUnderlyingState());
+            arm(destination);
+            return;
+        }
+        for (StateRepresentation<S, T> level = source; level != null && !level.includes(destination.getUnderlyingState()); level = level.getSuperstate()) {
+            cancel(level.getUnderlyingState());
+        }
+        for (StateRepresentation<S, T> level = destination; level != null && !level.includes(source.getUnderlyingState()); level = level.getSuperstate()) {
+            arm(level);
+        }
+    }
+
+    /**
+     * Cancel every armed timeout
+     */
+    void stop() {
+        for (List<Armed<S, T>> timers : armed.values()) {
+            for (Armed<S, T> timer : timers) {
+                timer.armed = false;
+                timer.timeout.cancel();
+            }
+        }
+        armed.clear();
+    }
+
+    /**
+     * Claim a timeout that fell due, unless its state was left in the meantime
+     *
+     * @param timer The timeout
+     * @return True if the timeout was still armed
+     */
+    boolean disarm(Armed<S, T> timer) {
+        if (!timer.armed) {
+            return false;
+        }
+        timer.armed = false;
+        return true;
+    }
+
+    private void arm(StateRepresentation<S, T> representation) {
+        List<StateTimeout<T>> timeouts = representation.getTimeouts();
+        if (timeouts.isEmpty()) {
+            return;
+        }
+        S state = representation.getUnderlyingState();
+        List<Armed<S, T>> timers = new ArrayList<>(timeouts.size());
+        armed.put(state, timers);
+        for (StateTimeout<T> timeout : timeouts) {
+            Armed<S, T> timer = new Armed<>(wheel, machine, timeout.getTrigger());
+            timers.add(timer);
+            timer.timeout = wheel.schedule(timer, timeout.getDelayNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void cancel(S state) {
+        List<Armed<S, T>> timers = armed.remove(state);
+        if (timers == null) {
+            return;
+        }
+        for (Armed<S, T> timer : timers) {
+            timer.armed = false;
+            timer.timeout.cancel();
+        }
+    }
+
+    static final class Armed<S, T> implements Action {
+
+        private final TimingWheel wheel;
+        private final StateMachine<S, T> machine;
+        private final T trigger;
+        private volatile TimingWheel.Timeout timeout; // replaced on the wheel's thread by retry
+        private boolean armed = true; // guarded by the machine's claim
+
+        Armed(TimingWheel wheel, StateMachine<S, T> machine, T trigger) {
+            this.wheel = wheel;
+            this.machine = machine;
+            this.trigger = trigger;
+        }
+
+        T getTrigger() {
+            return trigger;
+        }
+
+        /**
+         * Run the timeout again on the wheel's next tick, after it fell due while the machine was busy. If the state is
+         * left in the meantime, the machine finds the timeout disarmed when it runs.
+         */
+        void retry() {
+            timeout = wheel.schedule(this, 0, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void doIt() {
+            machine.fireTimeout(this);
+        }
+    }
+}
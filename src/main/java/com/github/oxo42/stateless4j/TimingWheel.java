@@ -0,0 +1,271 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs actions after a delay, for any number of pending timers, on a single thread.
+ * <p>
+ * Timers are kept in a hierarchical hashed timing wheel: four wheels of 64 slots, each slot of a wheel spanning a
+ * whole turn of the wheel below it. A timer is linked into the slot of the coarsest wheel on which it still differs
+ * from the current tick and moves down a wheel each time that slot comes round, so scheduling and cancelling cost a
+ * constant time and each timer is moved at most four times. Delays beyond the span of the wheels, 2^24 ticks, are
+ * re-scheduled each time they come round.
+ * <p>
+ * Time advances in ticks of a fixed duration. A timer runs between its delay and its delay plus one tick after it was
+ * scheduled. Actions run on the wheel's thread one after another, so they should be short; an action that throws is
+ * logged and does not affect the others.
+ */
+public class TimingWheel implements Closeable {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final long tickNanos;
+    private final long startNanos;
+    private final Timeout[][] wheels = new Timeout[LEVELS][SLOTS];
+    private final Thread thread;
+    private long currentTick;
+    private int pending;
+    private volatile boolean closed;
+
+    /**
+     * Construct a wheel and start its thread
+     *
+     * @param tick The duration of a tick
+     * @param unit The unit of the tick
+     */
+    public TimingWheel(long tick, TimeUnit unit) {
+        this(unit.toNanos(tick));
+        thread.start();
+    }
+
+    /**
+     * Construct a wheel whose time is advanced by {@link #advance(long)} only
+     *
+     * @param tickNanos The duration of a tick in nanoseconds
+     */
+    TimingWheel(long tickNanos) {
+        assert tickNanos > 0 : "tick must be positive";
+        this.tickNanos = tickNanos;
+        this.startNanos = System.nanoTime();
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                turn();
+            }
+        }, "stateless4j-timing-wheel");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Run an action after a delay
+     *
+     * @param action The action
+     * @param delay  The delay
+     * @param unit   The unit of the delay
+     * @return The timer, which may be used to cancel the action
+     */
+    public Timeout schedule(Action action, long delay, TimeUnit unit) {
+        assert action != null : "action is null";
+        assert delay >= 0 : "delay is negative";
+        if (closed) {
+            throw new IllegalStateException("The timing wheel is closed");
+        }
+        Timeout timeout = new Timeout(this, action);
+        long ticks = (unit.toNanos(delay) + tickNanos - 1) / tickNanos;
+        synchronized (this) {
+            // Time may have passed since the current tick began, so wait one more tick rather than run early
+            timeout.deadline = currentTick + ticks + 1;
+            pending++;
+            place(timeout);
+        }
+        return timeout;
+    }
+
+    /**
+     * The number of timers that have neither run nor been cancelled
+     *
+     * @return The count
+     */
+    public synchronized int size() {
+        return pending;
+    }
+
+    /**
+     * Stop the wheel's thread. Pending timers never run.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+
+    /**
+     * Advance time, running the actions of every timer that falls due
+     *
+     * @param ticks The number of ticks to advance by
+     * @return The number of actions run
+     */
+    int advance(long ticks) {
+        long target;
+        synchronized (this) {
+            target = currentTick + ticks;
+        }
+        return advanceTo(target);
+    }
+
+    private int advanceTo(long target) {
+        List<Timeout> due = new ArrayList<>();
+        synchronized (this) {
+            while (currentTick < target) {
+                currentTick++;
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                        cascade(level, (int) (currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1), due);
+                    }
+                }
+                int slot = (int) currentTick & (SLOTS - 1);
+                for (Timeout timeout = wheels[0][slot]; timeout != null; timeout = timeout.next) {
+                    due.add(timeout);
+                }
+                wheels[0][slot] = null;
+            }
+            for (Timeout timeout : due) {
+                timeout.expired = true;
+                timeout.next = null;
+                timeout.prev = null;
+            }
+            pending -= due.size();
+        }
+        for (Timeout timeout : due) {
+            try {
+                timeout.action.doIt();
+            } catch (Throwable e) {
+                // An action must not stop the wheel's thread, or every later timer would be lost
+                logger.error("Timer action failed", e);
+            }
+        }
+        return due.size();
+    }
+
+    private void turn() {
+        while (!closed) {
+            long now = System.nanoTime() - startNanos;
+            long target = now / tickNanos;
+            advanceTo(target);
+            long sleep = (target + 1) * tickNanos - now;
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void cascade(int level, int slot, List<Timeout> due) {
+        Timeout timeout = wheels[level][slot];
+        wheels[level][slot] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            timeout.prev = null;
+            if (timeout.deadline <= currentTick) {
+                due.add(timeout);
+            } else {
+                place(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void place(Timeout timeout) {
+        long differing = timeout.deadline ^ currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && (differing >>> (SLOT_BITS * (level + 1))) != 0) {
+            level++;
+        }
+        long turn = timeout.deadline >>> (SLOT_BITS * level);
+        if ((differing >>> (SLOT_BITS * LEVELS)) != 0) {
+            // Beyond the top wheel: park in the last slot to come round before the deadline and place again from there
+            turn = Math.min(turn, (currentTick >>> (SLOT_BITS * level)) + SLOTS - 1);
+        }
+        int slot = (int) turn & (SLOTS - 1);
+        timeout.level = level;
+        timeout.slot = slot;
+        Timeout head = wheels[level][slot];
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        wheels[level][slot] = timeout;
+    }
+
+    private synchronized boolean cancel(Timeout timeout) {
+        if (timeout.expired || timeout.cancelled) {
+            return false;
+        }
+        timeout.cancelled = true;
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            wheels[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.next = null;
+        timeout.prev = null;
+        pending--;
+        return true;
+    }
+
+    /**
+     * A timer scheduled on a {@link TimingWheel}
+     */
+    public static final class Timeout {
+
+        private final TimingWheel wheel;
+        private final Action action;
+        private long deadline;
+        private int level;
+        private int slot;
+        private Timeout prev;
+        private Timeout next;
+        private boolean expired;
+        private boolean cancelled;
+
+        private Timeout(TimingWheel wheel, Action action) {
+            this.wheel = wheel;
+            this.action = action;
+        }
+
+        /**
+         * Stop the action from running
+         *
+         * @return True if the timer was pending, false if its action has already run or it was already cancelled
+         */
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+
+        /**
+         * True if the timer was cancelled before its action ran
+         *
+         * @return True if cancelled
+         */
+        public boolean isCancelled() {
+            synchronized (wheel) {
+                return cancelled;
+            }
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An append-only log of the transitions taken by state machines, from which their states can be rebuilt after a
+ * crash.
+ * <p>
+ * Each transition is appended as a fixed-width record of the instance id, the trigger and the destination state, to
+ * a sequence of memory-mapped segment files in a directory. Records are written to the page cache, so they survive
+ * the process crashing, and are flushed to the storage device by a background thread once per group of records, so
+ * appending never waits for the device, or on {@link #commit()}, which waits for the flush.
+ * Triggers and states are recorded as their positions in the lists supplied when the journal is opened, so a journal
+ * must be reopened with the same lists in the same order. A transition undone by {@link MachineLocks} is recorded
+ * as a move back to the previous state without a trigger.
+ * <p>
+ * {@link #replay(Action2)} and {@link #replayInto(StateMachineFleet)} rebuild states by applying each recorded
+ * destination directly, without evaluating guards or running entry and exit actions. Appending is thread-safe.
+ * <p>
+ * {@link #snapshot(StateMachineFleet)} writes the state of every instance of a fleet to a snapshot file and deletes
+ * the segments the snapshot makes redundant; {@link #recover(StateMachineFleet)} then loads the snapshot and replays
+ * only the records appended after it. A fleet is not thread-safe, so a snapshot is started on the thread that fires
+ * the fleet, between two fires, which only copies the raw state codes from the fleet's store and notes the journal
+ * position. The copy is translated, written and flushed to the storage device on a background thread while the fleet
+ * carries on firing.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public class TransitionJournal<S, T> implements Closeable {
+
+    private static final int MAGIC = 0x53544a4c; // "STJL"
+    private static final int SNAPSHOT_MAGIC = 0x5354534e; // "STSN"
+    private static final int HEADER = 8; // magic, version
+    private static final int SNAPSHOT_HEADER = 20; // magic, version, segment, position, count
+    private static final int VERSION = 1;
+    private static final int RECORD = 12; // instance id, trigger code, destination code + 1
+    private static final int ADDED = -1; // trigger code of an instance added to a fleet
+    private static final int ROLLED_BACK = -2; // trigger code of a transition undone by MachineLocks
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_GROUP_SIZE = 1024;
+    private static final int SNAPSHOT_CHUNK = 64 * 1024;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d{8})\\.log");
+    private static final String SNAPSHOT_NAME = "snapshot.dat";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final File directory;
+    private final S[] states;
+    private final Map<S, Integer> stateCodes = new HashMap<>();
+    private final Map<T, Integer> triggerCodes = new HashMap<>();
+    private final int segmentRecords;
+    private final int groupSize;
+    private int segment; // guarded by this
+    private RandomAccessFile file; // guarded by this
+    private MappedByteBuffer buffer; // guarded by this
+    private int position; // the next record in the segment, guarded by this
+    private int uncommitted; // guarded by this
+    private final List<MappedByteBuffer> unflushed = new ArrayList<>(); // finished segments, guarded by this
+    private boolean flushRequested; // guarded by this
+    private boolean closed; // guarded by this
+    private final Object flushing = new Object(); // held while flushing, taken before this
+    private final Thread flusher;
+    private final ExecutorService snapshots = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "stateless4j-journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Open a journal, creating the directory if it does not exist
+     *
+     * @param directory The directory holding the segment files
+     * @param states    Every state that can be recorded; each is coded by its position
+     * @param triggers  Every trigger that can be recorded; each is coded by its position
+     * @throws IOException If the journal cannot be opened
+     */
+    public TransitionJournal(File directory, S[] states, T[] triggers) throws IOException {
+        this(directory, states, triggers, DEFAULT_SEGMENT_SIZE, DEFAULT_GROUP_SIZE);
+    }
+
+    /**
+     * Open a journal, creating the directory if it does not exist, and start its flusher thread
+     *
+     * @param directory   The directory holding the segment files
+     * @param states      Every state that can be recorded; each is coded by its position
+     * @param triggers    Every trigger that can be recorded; each is coded by its position
+     * @param segmentSize The size in bytes of each segment file
+     * @param groupSize   The number of records appended between flushes to the storage device
+     * @throws IOException If the journal cannot be opened
+     */
+    public TransitionJournal(File directory, S[] states, T[] triggers, int segmentSize, int groupSize) throws IOException {
+        assert directory != null : "directory is null";
+        assert states != null : "states is null";
+        assert triggers != null : "triggers is null";
+        assert segmentSize >= HEADER + RECORD : "segmentSize is too small";
+        assert groupSize > 0 : "groupSize must be positive";
+        this.directory = directory;
+        this.states = states.clone();
+        for (int i = 0; i < states.length; i++) {
+            stateCodes.put(states[i], i);
+        }
+        for (int i = 0; i < triggers.length; i++) {
+            triggerCodes.put(triggers[i], i);
+        }
+        this.segmentRecords = (segmentSize - HEADER) / RECORD;
+        this.groupSize = groupSize;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create '" + directory + "'");
+        }
+        int last = segments()[1];
+        open(last < 0 ? 0 : last);
+        while (position < segmentRecords && buffer.getInt(offset(position) + 8) != 0) {
+            position++;
+        }
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushGroups();
+            }
+        }, "stateless4j-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Append a transition
+     *
+     * @param instanceId  The instance that transitioned
+     * @param trigger     The trigger
+     * @param destination The state transitioned to
+     */
+    public void append(int instanceId, T trigger, S destination) {
+        append(instanceId, codeOf(triggerCodes, trigger, "Trigger"), destination);
+    }
+
+    /**
+     * Append the addition of an instance to a fleet
+     *
+     * @param instanceId   The instance
+     * @param initialState The initial state of the instance
+     */
+    void appendAdded(int instanceId, S initialState) {
+        append(instanceId, ADDED, initialState);
+    }
+
+    /**
+     * Append the undoing of a transition
+     *
+     * @param instanceId The instance
+     * @param restored   The state the instance was put back in
+     */
+    void appendRolledBack(int instanceId, S restored) {
+        append(instanceId, ROLLED_BACK, restored);
+    }
+
+    private synchronized void append(int instanceId, int triggerCode, S destination) {
+        int stateCode = codeOf(stateCodes, destination, "State");
+        if (position == segmentRecords) {
+            try {
+                // Closing the file leaves the mapping valid, so the flusher can still force it
+                unflushed.add(buffer);
+                requestFlush();
+                file.close();
+                open(segment + 1);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot start segment " + (segment + 1) + " of '" + directory + "'", e);
+            }
+        }
+        int offset = offset(position);
+        buffer.putInt(offset, instanceId);
+        buffer.putInt(offset + 4, triggerCode);
+        // The destination is written last, a record is complete once it is non-zero
+        buffer.putInt(offset + 8, stateCode + 1);
+        position++;
+        if (++uncommitted >= groupSize) {
+            requestFlush();
+        }
+    }
+
+    private void requestFlush() {
+        if (!flushRequested) {
+            flushRequested = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Flush the records appended so far to the storage device, waiting for a flush already in progress
+     */
+    public void commit() {
+        synchronized (flushing) {
+            List<MappedByteBuffer> pending;
+            synchronized (this) {
+                pending = new ArrayList<>(unflushed);
+                unflushed.clear();
+                if (uncommitted > 0) {
+                    pending.add(buffer);
+                    uncommitted = 0;
+                }
+            }
+            // Appends carry on while the device catches up
+            for (MappedByteBuffer segmentBuffer : pending) {
+                segmentBuffer.force();
+            }
+        }
+    }
+
+    private void flushGroups() {
+        while (true) {
+            synchronized (this) {
+                while (!flushRequested && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                flushRequested = false;
+            }
+            try {
+                commit();
+            } catch (RuntimeException e) {
+                logger.error("Cannot flush the journal in '" + directory + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Apply every record in the journal, in the order it was appended. Records made redundant by a snapshot are
+     * no longer in the journal.
+     *
+     * @param action An action to call with the instance id and the destination state
+     * @return The number of records applied
+     * @throws IOException If a segment cannot be read
+     */
+    public long replay(final Action2<Integer, S> action) throws IOException {
+        assert action != null : "action is null";
+        return replay(segments()[0], 0, new RecordVisitor() {
+            @Override
+            public void visit(int instanceId, boolean added, int stateCode) {
+                action.doIt(instanceId, states[stateCode]);
+            }
+        });
+    }
+
+    /**
+     * Restore the states of the instances of a fleet by writing each recorded destination straight to its store.
+     * Instances recorded as added are added to the fleet if it does not already hold them.
+     *
+     * @param fleet The fleet
+     * @return The number of records applied
+     * @throws IOException If a segment cannot be read
+     */
+    public long replayInto(StateMachineFleet<S, T> fleet) throws IOException {
+        assert fleet != null : "fleet is null";
+        return replayInto(fleet, segments()[0], 0);
+    }
+
+    /**
+     * Restore a fleet from the latest snapshot, if there is one, and the records appended after it
+     *
+     * @param fleet The fleet, holding no more instances than the snapshot
+     * @return The number of records applied after the snapshot
+     * @throws IOException If the snapshot or a segment cannot be read
+     */
+    public long recover(StateMachineFleet<S, T> fleet) throws IOException {
+        assert fleet != null : "fleet is null";
+        File snapshotFile = new File(directory, SNAPSHOT_NAME);
+        if (!snapshotFile.exists()) {
+            return replayInto(fleet);
+        }
+        int[] fleetCodes = fleetCodes(fleet);
+        int fromSegment;
+        int fromPosition;
+        try (RandomAccessFile access = new RandomAccessFile(snapshotFile, "r")) {
+            FileChannel channel = access.getChannel();
+            MappedByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (snapshot.limit() < SNAPSHOT_HEADER || snapshot.getInt(0) != SNAPSHOT_MAGIC || snapshot.getInt(4) != VERSION) {
+                throw new IOException("'" + snapshotFile + "' is not a snapshot");
+            }
+            fromSegment = snapshot.getInt(8);
+            fromPosition = snapshot.getInt(12);
+            int count = snapshot.getInt(16);
+            if (snapshot.limit() < SNAPSHOT_HEADER + (long) count * 4) {
+                throw new IOException("'" + snapshotFile + "' is truncated");
+            }
+            for (int i = 0; i < count; i++) {
+                int code = snapshot.getInt(SNAPSHOT_HEADER + i * 4);
+                if (code < 0 || code >= states.length) {
+                    throw new IOException("'" + snapshotFile + "' records unknown state code " + code);
+                }
+                fleet.restore(i, fleetCodes[code], true);
+            }
+        }
+        return replayInto(fleet, fromSegment, fromPosition);
+    }
+
+    /**
+     * Start a snapshot of the state of every instance of a fleet, replacing the previous one, and delete the segments
+     * that hold only records made redundant by it. Must be called on the thread that fires the fleet, which only
+     * copies the fleet's state codes; the snapshot is written on a background thread, one snapshot at a time.
+     *
+     * @param fleet The fleet, journaling to this journal
+     * @return The number of instances in the snapshot, once it is written; fails if it cannot be written
+     */
+    public Future<Integer> snapshot(StateMachineFleet<S, T> fleet) {
+        assert fleet != null : "fleet is null";
+        final int fromSegment;
+        final int fromPosition;
+        synchronized (this) {
+            fromSegment = segment;
+            fromPosition = position;
+        }
+        final int[] codes = new int[fleet.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = fleet.codeAt(i);
+        }
+        final List<S> codeStates = new ArrayList<>(fleet.codeCount());
+        for (int code = 0; code < fleet.codeCount(); code++) {
+            codeStates.add(fleet.stateOfCode(code));
+        }
+        try {
+            return snapshots.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    writeSnapshot(fromSegment, fromPosition, codes, codeStates);
+                    return codes.length;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("The journal in '" + directory + "' is closed", e);
+        }
+    }
+
+    private void writeSnapshot(int fromSegment, int fromPosition, int[] codes, List<S> codeStates) throws IOException {
+        File temporary = new File(directory, SNAPSHOT_NAME + ".tmp");
+        try (RandomAccessFile access = new RandomAccessFile(temporary, "rw")) {
+            FileChannel channel = access.getChannel();
+            channel.truncate(0);
+            // Translate the fleet's codes to the journal's once, rather than looking up each instance's state
+            int[] journalCodes = new int[codeStates.size()];
+            for (int code = 0; code < journalCodes.length; code++) {
+                Integer journalCode = stateCodes.get(codeStates.get(code));
+                journalCodes[code] = journalCode == null ? -1 : journalCode;
+            }
+            ByteBuffer chunk = ByteBuffer.allocate(SNAPSHOT_CHUNK);
+            chunk.putInt(SNAPSHOT_MAGIC).putInt(VERSION).putInt(fromSegment).putInt(fromPosition).putInt(codes.length);
+            for (int code : codes) {
+                if (!chunk.hasRemaining()) {
+                    write(channel, chunk);
+                }
+                int journalCode = journalCodes[code];
+                chunk.putInt(journalCode >= 0 ? journalCode : codeOf(stateCodes, codeStates.get(code), "State"));
+            }
+            write(channel, chunk);
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), new File(directory, SNAPSHOT_NAME).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        for (int i = segments()[0]; i >= 0 && i < fromSegment; i++) {
+            File covered = segmentFile(i);
+            if (covered.exists() && !covered.delete()) {
+                throw new IOException("Cannot delete '" + covered + "'");
+            }
+        }
+    }
+
+    /**
+     * Wait for snapshots in progress, then flush and close the journal
+     *
+     * @throws IOException If the current segment cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        // Let snapshots already started finish, they delete segments
+        snapshots.shutdown();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        boolean interrupted = false;
+        while (!snapshots.isTerminated()) {
+            try {
+                snapshots.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        commit();
+        synchronized (this) {
+            file.close();
+        }
+    }
+
+    private long replayInto(final StateMachineFleet<S, T> fleet, int fromSegment, int fromPosition) throws IOException {
+        final int[] fleetCodes = fleetCodes(fleet);
+        return replay(fromSegment, fromPosition, new RecordVisitor() {
+            @Override
+            public void visit(int instanceId, boolean added, int stateCode) {
+                fleet.restore(instanceId, fleetCodes[stateCode], added);
+            }
+        });
+    }
+
+    private int[] fleetCodes(StateMachineFleet<S, T> fleet) {
+        int[] fleetCodes = new int[states.length];
+        for (int i = 0; i < states.length; i++) {
+            fleetCodes[i] = fleet.codeOf(states[i]);
+        }
+        return fleetCodes;
+    }
+
+    private long replay(int fromSegment, int fromPosition, RecordVisitor visitor) throws IOException {
+        int last;
+        commit();
+        synchronized (this) {
+            last = segment;
+        }
+        long count = 0;
+        for (int i = Math.max(fromSegment, 0); i <= last; i++) {
+            File segmentFile = segmentFile(i);
+            if (!segmentFile.exists()) {
+                throw new IOException("Segment " + i + " of '" + directory + "' is missing");
+            }
+            try (RandomAccessFile access = new RandomAccessFile(segmentFile, "r")) {
+                FileChannel channel = access.getChannel();
+                MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                checkHeader(records, i);
+                int start = i == fromSegment ? offset(fromPosition) : HEADER;
+                for (int offset = start; offset + RECORD <= records.limit(); offset += RECORD) {
+                    int destination = records.getInt(offset + 8);
+                    if (destination == 0) {
+                        break;
+                    }
+                    if (destination > states.length) {
+                        throw new IOException("Segment " + i + " of '" + directory + "' records unknown state code " + (destination - 1));
+                    }
+                    visitor.visit(records.getInt(offset), records.getInt(offset + 4) == ADDED, destination - 1);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The numbers of the first and last segment files in the directory
+     *
+     * @return The first and last numbers, both -1 if there are no segments
+     */
+    private int[] segments() {
+        int[] range = {-1, -1};
+        String[] names = directory.list();
+        if (names == null) {
+            return range;
+        }
+        for (String name : names) {
+            Matcher matcher = SEGMENT_NAME.matcher(name);
+            if (matcher.matches()) {
+                int number = Integer.parseInt(matcher.group(1));
+                if (range[0] < 0 || number < range[0]) {
+                    range[0] = number;
+                }
+                range[1] = Math.max(range[1], number);
+            }
+        }
+        return range;
+    }
+
+    private void open(int number) throws IOException {
+        File segmentFile = segmentFile(number);
+        boolean created = !segmentFile.exists();
+        RandomAccessFile access = new RandomAccessFile(segmentFile, "rw");
+        try {
+            MappedByteBuffer mapped = access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) segmentRecords * RECORD);
+            if (created) {
+                mapped.putInt(0, MAGIC);
+                mapped.putInt(4, VERSION);
+            } else {
+                checkHeader(mapped, number);
+            }
+            file = access;
+            buffer = mapped;
+            segment = number;
+            position = 0;
+        } catch (IOException | RuntimeException e) {
+            access.close();
+            throw e;
+        }
+    }
+
+    private void checkHeader(MappedByteBuffer mapped, int number) throws IOException {
+        if (mapped.limit() < HEADER || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            throw new IOException("Segment " + number + " of '" + directory + "' is not a transition journal segment");
+        }
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, String.format("journal-%08d.log", number));
+    }
+
+    private static int offset(int record) {
+        return HEADER + record * RECORD;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+        chunk.clear();
+    }
+
+    private static <V> int codeOf(Map<V, Integer> codes, V value, String kind) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            throw new IllegalStateException(kind + " '" + value + "' is not recorded by the journal");
+        }
+        return code;
+    }
+
+    private interface RecordVisitor {
+
+        void visit(int instanceId, boolean added, int stateCode);
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.oxo42.stateless4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts and latencies of the triggers fired at state machines, for each pair of current state and trigger.
+ * <p>
+ * For each pair the metrics count every fire, and separately the fires that were unhandled or rejected by a guard,
+ * and keep a {@link LatencyHistogram} each of the time spent in the exit actions and in the entry actions of the
+ * transitions taken. Memory is fixed once a pair has taken its first transition. States and triggers are identified
+ * by their positions in the lists supplied on construction; fires in other states or of other triggers are not
+ * counted.
+ * <p>
+ * Recording is thread-safe, so one set of metrics can be shared by many machines. A machine records nothing, and
+ * pays only a null check, until metrics are set with {@link StateMachine#setMetrics(TransitionMetrics)}.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public class TransitionMetrics<S, T> {
+
+    private static final int FIRED = 0;
+    private static final int UNHANDLED = 1;
+    private static final int GUARD_REJECTED = 2;
+    private static final int COUNTERS = 3;
+
+    private final S[] states;
+    private final T[] triggers;
+    private final Map<S, Integer> stateCodes = new HashMap<>();
+    private final Map<T, Integer> triggerCodes = new HashMap<>();
+    private final AtomicLongArray counts;
+    private final AtomicReferenceArray<LatencyHistogram> exitLatencies;
+    private final AtomicReferenceArray<LatencyHistogram> entryLatencies;
+
+    /**
+     * Construct empty metrics
+     *
+     * @param states   The states to record
+     * @param triggers The triggers to record
+     */
+    public TransitionMetrics(S[] states, T[] triggers) {
+        assert states != null : "states is null";
+        assert triggers != null : "triggers is null";
+        this.states = states.clone();
+        this.triggers = triggers.clone();
+        for (int i = 0; i < states.length; i++) {
+            stateCodes.put(states[i], i);
+        }
+        for (int i = 0; i < triggers.length; i++) {
+            triggerCodes.put(triggers[i], i);
+        }
+        int pairs = states.length * triggers.length;
+        counts = new AtomicLongArray(pairs * COUNTERS);
+        exitLatencies = new AtomicReferenceArray<>(pairs);
+        entryLatencies = new AtomicReferenceArray<>(pairs);
+    }
+
+    /**
+     * The number of times a trigger was fired in a state, whatever the outcome
+     *
+     * @param state   The state
+     * @param trigger The trigger
+     * @return The count
+     */
+    public long getFireCount(S state, T trigger) {
+        return count(state, trigger, FIRED);
+    }
+
+    /**
+     * The number of times a trigger was fired in a state that does not handle it
+     *
+     * @param state   The state
+     * @param trigger The trigger
+     * @return The count
+     */
+    public long getUnhandledCount(S state, T trigger) {
+        return count(state, trigger, UNHANDLED);
+    }
+
+    /**
+     * The number of times a trigger was fired in a state whose guards rejected it
+     *
+     * @param state   The state
+     * @param trigger The trigger
+     * @return The count
+     */
+    public long getGuardRejectedCount(S state, T trigger) {
+        return count(state, trigger, GUARD_REJECTED);
+    }
+
+    /**
+     * The time spent in the exit actions of the transitions taken from a state by a trigger
+     *
+     * @param state   The state
+     * @param trigger The trigger
+     * @return A copy of the histogram
+     */
+    public LatencyHistogram getExitLatency(S state, T trigger) {
+        return latency(exitLatencies, state, trigger);
+    }
+
+    /**
+     * The time spent in the entry actions of the transitions taken from a state by a trigger
+     *
+     * @param state   The state
+     * @param trigger The trigger
+     * @return A copy of the histogram
+     */
+    public LatencyHistogram getEntryLatency(S state, T trigger) {
+        return latency(entryLatencies, state, trigger);
+    }
+
+    /**
+     * A copy of the metrics as they are now, which further fires do not change
+     *
+     * @return The copy
+     */
+    public TransitionMetrics<S, T> snapshot() {
+        TransitionMetrics<S, T> copy = new TransitionMetrics<>(states, triggers);
+        for (int i = 0; i < counts.length(); i++) {
+            copy.counts.set(i, counts.get(i));
+        }
+        for (int i = 0; i < exitLatencies.length(); i++) {
+            LatencyHistogram exit = exitLatencies.get(i);
+            if (exit != null) {
+                copy.exitLatencies.set(i, exit.copy());
+            }
+            LatencyHistogram entry = entryLatencies.get(i);
+            if (entry != null) {
+                copy.entryLatencies.set(i, entry.copy());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Forget every count and latency
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        for (int i = 0; i < exitLatencies.length(); i++) {
+            exitLatencies.set(i, null);
+            entryLatencies.set(i, null);
+        }
+    }
+
+    /**
+     * Write the metrics of every pair fired at least once as comma-separated values, with a header line. Latencies
+     * are in nanoseconds.
+     *
+     * @param out The stream to write to
+     * @throws IOException If the stream cannot be written
+     */
+    public void exportTo(OutputStream out) throws IOException {
+        OutputStreamWriter w = new OutputStreamWriter(out, "UTF-8");
+        PrintWriter writer = new PrintWriter(w);
+        writer.write("state,trigger,fired,unhandled,guard_rejected,"
+                + "exit_count,exit_mean,exit_p50,exit_p99,exit_max,"
+                + "entry_count,entry_mean,entry_p50,entry_p99,entry_max\n");
+        for (int s = 0; s < states.length; s++) {
+            for (int t = 0; t < triggers.length; t++) {
+                int pair = s * triggers.length + t;
+                long fired = counts.get(pair * COUNTERS + FIRED);
+                if (fired == 0) {
+                    continue;
+                }
+                writer.write(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%s,%s\n", states[s], triggers[t], fired,
+                        counts.get(pair * COUNTERS + UNHANDLED), counts.get(pair * COUNTERS + GUARD_REJECTED),
+                        summary(exitLatencies.get(pair)), summary(entryLatencies.get(pair))));
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Count a fire that did not take a transition
+     *
+     * @param state   The current state
+     * @param trigger The trigger
+     * @param result  The outcome
+     */
+    void record(S state, T trigger, FireResult result) {
+        int pair = pairOf(state, trigger);
+        if (pair < 0) {
+            return;
+        }
+        counts.incrementAndGet(pair * COUNTERS + FIRED);
+        if (result == FireResult.UNHANDLED) {
+            counts.incrementAndGet(pair * COUNTERS + UNHANDLED);
+        } else if (result == FireResult.GUARD_REJECTED) {
+            counts.incrementAndGet(pair * COUNTERS + GUARD_REJECTED);
+        }
+    }
+
+    /**
+     * Count a fire that took a transition
+     *
+     * @param state      The state transitioned from
+     * @param trigger    The trigger
+     * @param exitNanos  The time spent in the exit actions
+     * @param entryNanos The time spent in the entry actions
+     */
+    void recordTransition(S state, T trigger, long exitNanos, long entryNanos) {
+        int pair = pairOf(state, trigger);
+        if (pair < 0) {
+            return;
+        }
+        counts.incrementAndGet(pair * COUNTERS + FIRED);
+        histogram(exitLatencies, pair).record(exitNanos);
+        histogram(entryLatencies, pair).record(entryNanos);
+    }
+
+    private long count(S state, T trigger, int counter) {
+        int pair = pairOf(state, trigger);
+        return pair < 0 ? 0 : counts.get(pair * COUNTERS + counter);
+    }
+
+    private LatencyHistogram latency(AtomicReferenceArray<LatencyHistogram> latencies, S state, T trigger) {
+        int pair = pairOf(state, trigger);
+        LatencyHistogram histogram = pair < 0 ? null : latencies.get(pair);
+        return histogram == null ? new LatencyHistogram() : histogram.copy();
+    }
+
+    private int pairOf(S state, T trigger) {
+        Integer stateCode = stateCodes.get(state);
+        Integer triggerCode = triggerCodes.get(trigger);
+        return stateCode == null || triggerCode == null ? -1 : stateCode * triggers.length + triggerCode;
+    }
+
+    private static LatencyHistogram histogram(AtomicReferenceArray<LatencyHistogram> latencies, int pair) {
+        LatencyHistogram histogram = latencies.get(pair);
+        while (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            if (latencies.compareAndSet(pair, null, created)) {
+                return created;
+            }
+            histogram = latencies.get(pair);
+        }
+        return histogram;
+    }
+
+    private static String summary(LatencyHistogram histogram) {
+        if (histogram == null) {
+            return "0,0,0,0,0";
+        }
+        return String.format(Locale.ROOT, "%d,%.1f,%d,%d,%d", histogram.getCount(), histogram.getMean(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99), histogram.getMax());
+    }
+}
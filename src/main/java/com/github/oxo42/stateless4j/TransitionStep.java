@@ -0,0 +1,35 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.transitions.Transition;
+
+/**
+ * Everything needed to take a transition out of a frozen state for one trigger: the transition, the representation
+ * of the destination and the actions to run.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+final class TransitionStep<S, T> {
+
+    private final Transition<S, T> transition;
+    private final StateRepresentation<S, T> destination;
+    private final ActionChain<S, T> actions;
+
+    TransitionStep(Transition<S, T> transition, StateRepresentation<S, T> destination, ActionChain<S, T> actions) {
+        this.transition = transition;
+        this.destination = destination;
+        this.actions = actions;
+    }
+
+    Transition<S, T> getTransition() {
+        return transition;
+    }
+
+    StateRepresentation<S, T> getDestination() {
+        return destination;
+    }
+
+    ActionChain<S, T> getActions() {
+        return actions;
+    }
+}
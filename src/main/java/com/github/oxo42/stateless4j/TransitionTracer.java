@@ -0,0 +1,85 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.transitions.Transition;
+
+/**
+ * Receives an event for each step of firing a trigger, with its duration, so fires can be traced alongside the rest
+ * of an application; for example by committing Java Flight Recorder events, which record the firing thread and so
+ * appear next to its other events.
+ * <p>
+ * Every method is called on the thread that fires the trigger, while the trigger is being fired, and does nothing
+ * unless overridden. A machine pays only a null check while no tracer is set, and a call to {@link #isEnabled()} per
+ * fire while one is set.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public abstract class TransitionTracer<S, T> {
+
+    /**
+     * True if events should be delivered. Called once per fire, before any other method, so it should be cheap.
+     *
+     * @return True to trace the fire
+     */
+    public boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * The behaviour handling a trigger was looked up, evaluating the guards of the candidate behaviours
+     *
+     * @param state    The current state
+     * @param trigger  The trigger
+     * @param accepted True if a behaviour handles the trigger
+     * @param nanos    The time taken
+     */
+    public void guardsEvaluated(S state, T trigger, boolean accepted, long nanos) {
+    }
+
+    /**
+     * A trigger was not handled in the current state
+     *
+     * @param state   The current state
+     * @param trigger The trigger
+     * @param result  {@link FireResult#UNHANDLED} or {@link FireResult#GUARD_REJECTED}
+     */
+    public void unhandledTrigger(S state, T trigger, FireResult result) {
+    }
+
+    /**
+     * The exit actions of a transition ran
+     *
+     * @param transition The transition
+     * @param nanos      The time taken
+     */
+    public void exitActionsExecuted(Transition<S, T> transition, long nanos) {
+    }
+
+    /**
+     * The entry actions of a transition ran
+     *
+     * @param transition The transition
+     * @param nanos      The time taken
+     */
+    public void entryActionsExecuted(Transition<S, T> transition, long nanos) {
+    }
+
+    /**
+     * A transition was taken
+     *
+     * @param transition The transition
+     * @param nanos      The time taken by the exit actions, the state change and the entry actions
+     */
+    public void transitionFired(Transition<S, T> transition, long nanos) {
+    }
+
+    /**
+     * A transition was undone, putting the machine back in its previous state without running any action. Called on
+     * the thread that undoes it, for a group fired with {@link MachineLocks#fireTogether(java.util.List)}.
+     *
+     * @param state    The state the machine was in
+     * @param restored The state it was put back in
+     */
+    public void transitionRolledBack(S state, S restored) {
+    }
+}
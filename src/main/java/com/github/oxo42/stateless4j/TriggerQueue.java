@@ -0,0 +1,81 @@
+package com.github.oxo42.stateless4j;
+
+/**
+ * A growable ring buffer of triggers awaiting processing, kept as parallel arrays so queueing a trigger allocates
+ * nothing until the buffer has to grow
+ *
+ * @param <T> The type used to represent the triggers
+ */
+final class TriggerQueue<T> {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private Object[] triggers = new Object[INITIAL_CAPACITY];
+    private Object[][] args = new Object[INITIAL_CAPACITY][];
+    private boolean[] reportRejection = new boolean[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
+    void add(T trigger, Object[] triggerArgs, boolean report) {
+        if (size == triggers.length) {
+            grow();
+        }
+        int tail = (head + size) & (triggers.length - 1);
+        triggers[tail] = trigger;
+        args[tail] = triggerArgs;
+        reportRejection[tail] = report;
+        size++;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    T peekTrigger() {
+        assert size > 0 : "queue is empty";
+        return (T) triggers[head];
+    }
+
+    Object[] peekArgs() {
+        assert size > 0 : "queue is empty";
+        return args[head];
+    }
+
+    boolean peekReportRejection() {
+        assert size > 0 : "queue is empty";
+        return reportRejection[head];
+    }
+
+    void remove() {
+        assert size > 0 : "queue is empty";
+        triggers[head] = null;
+        args[head] = null;
+        head = (head + 1) & (triggers.length - 1);
+        size--;
+    }
+
+    void clear() {
+        while (size > 0) {
+            remove();
+        }
+        head = 0;
+    }
+
+    private void grow() {
+        int capacity = triggers.length;
+        Object[] grownTriggers = new Object[capacity * 2];
+        Object[][] grownArgs = new Object[capacity * 2][];
+        boolean[] grownReport = new boolean[capacity * 2];
+        for (int i = 0; i < size; i++) {
+            int from = (head + i) & (capacity - 1);
+            grownTriggers[i] = triggers[from];
+            grownArgs[i] = args[from];
+            grownReport[i] = reportRejection[from];
+        }
+        triggers = grownTriggers;
+        args = grownArgs;
+        reportRejection = grownReport;
+        head = 0;
+    }
+}
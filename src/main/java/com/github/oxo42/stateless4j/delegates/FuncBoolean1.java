@@ -0,0 +1,17 @@
+package com.github.oxo42.stateless4j.delegates;
+
+/**
+ * Represents a predicate that accepts an input
+ *
+ * @param <T1> Input argument type
+ */
+public interface FuncBoolean1<T1> {
+
+    /**
+     * Evaluates this predicate on the given input
+     *
+     * @param arg1 Input argument
+     * @return Result
+     */
+    boolean call(T1 arg1);
+}
@@ -2,6 +2,7 @@ package com.github.oxo42.stateless4j.transitions;
 
 import com.github.oxo42.stateless4j.OutVar;
 import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean1;
 import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
 
 public class TransitioningTriggerBehaviour<S, T> extends TriggerBehaviour<S, T> {
@@ -13,6 +14,11 @@ public class TransitioningTriggerBehaviour<S, T> extends TriggerBehaviour<S, T>
         this.destination = destination;
     }
 
+    public TransitioningTriggerBehaviour(T trigger, S destination, FuncBoolean1<Object> contextGuard) {
+        super(trigger, contextGuard);
+        this.destination = destination;
+    }
+
     @Override
     public boolean resultsInTransitionFrom(S source, Object[] args, OutVar<S> dest) {
         dest.set(destination);
@@ -2,21 +2,52 @@ package com.github.oxo42.stateless4j.triggers;
 
 import com.github.oxo42.stateless4j.OutVar;
 import com.github.oxo42.stateless4j.delegates.Func2;
+import com.github.oxo42.stateless4j.delegates.Func3;
 import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean1;
 
 public class DynamicTriggerBehaviour<S, T> extends TriggerBehaviour<S, T> {
 
     private final Func2<Object[], S> destination;
+    private final Func3<Object[], Object, S> contextDestination;
 
     public DynamicTriggerBehaviour(T trigger, Func2<Object[], S> destination, FuncBoolean guard) {
         super(trigger, guard);
         assert destination != null : "destination is null";
         this.destination = destination;
+        this.contextDestination = null;
+    }
+
+    public DynamicTriggerBehaviour(T trigger, Func2<Object[], S> destination, FuncBoolean1<Object> contextGuard) {
+        super(trigger, contextGuard);
+        assert destination != null : "destination is null";
+        this.destination = destination;
+        this.contextDestination = null;
+    }
+
+    /**
+     * Construct a behaviour whose destination is selected from the trigger arguments and the context of the state
+     * machine that takes it
+     *
+     * @param trigger      The trigger
+     * @param destination  Function of the trigger arguments and the context that selects the destination
+     * @param contextGuard Function that must return true in order for the trigger to be accepted
+     */
+    public DynamicTriggerBehaviour(T trigger, Func3<Object[], Object, S> destination, FuncBoolean1<Object> contextGuard) {
+        super(trigger, contextGuard);
+        assert destination != null : "destination is null";
+        this.destination = null;
+        this.contextDestination = destination;
     }
 
     @Override
     public boolean resultsInTransitionFrom(S source, Object[] args, OutVar<S> dest) {
-        dest.set(destination.call(args));
+        return resultsInTransitionFrom(source, args, null, dest);
+    }
+
+    @Override
+    public boolean resultsInTransitionFrom(S source, Object[] args, Object context, OutVar<S> dest) {
+        dest.set(contextDestination == null ? destination.call(args) : contextDestination.call(args, context));
         return true;
     }
 }
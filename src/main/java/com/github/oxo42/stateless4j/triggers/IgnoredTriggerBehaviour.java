@@ -2,6 +2,7 @@ package com.github.oxo42.stateless4j.triggers;
 
 import com.github.oxo42.stateless4j.OutVar;
 import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean1;
 
 public class IgnoredTriggerBehaviour<TState, TTrigger> extends TriggerBehaviour<TState, TTrigger> {
 
@@ -9,6 +10,10 @@ public class IgnoredTriggerBehaviour<TState, TTrigger> extends TriggerBehaviour<
         super(trigger, guard);
     }
 
+    public IgnoredTriggerBehaviour(TTrigger trigger, FuncBoolean1<Object> contextGuard) {
+        super(trigger, contextGuard);
+    }
+
     @Override
     public boolean resultsInTransitionFrom(TState source, Object[] args, OutVar<TState> dest) {
         return false;
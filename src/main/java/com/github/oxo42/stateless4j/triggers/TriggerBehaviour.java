@@ -1,25 +1,76 @@
 package com.github.oxo42.stateless4j.triggers;
 
 import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean1;
 import com.github.oxo42.stateless4j.OutVar;
 
 public abstract class TriggerBehaviour<S, T> {
 
     private final T trigger;
     private final FuncBoolean guard;
+    private final FuncBoolean1<Object> contextGuard;
 
     protected TriggerBehaviour(T trigger, FuncBoolean guard) {
         this.trigger = trigger;
         this.guard = guard;
+        this.contextGuard = null;
+    }
+
+    /**
+     * Construct a behaviour whose guard receives the context of the state machine it is evaluated for
+     *
+     * @param trigger      The trigger
+     * @param contextGuard Function that must return true in order for the trigger to be accepted
+     */
+    protected TriggerBehaviour(T trigger, FuncBoolean1<Object> contextGuard) {
+        this.trigger = trigger;
+        this.guard = null;
+        this.contextGuard = contextGuard;
     }
 
     public T getTrigger() {
         return trigger;
     }
 
+    /**
+     * The guard of this behaviour
+     *
+     * @return The guard, or null if the behaviour has a context guard
+     */
+    public FuncBoolean getGuard() {
+        return guard;
+    }
+
+    /**
+     * The context guard of this behaviour
+     *
+     * @return The context guard, or null if the behaviour has a plain guard
+     */
+    public FuncBoolean1<Object> getContextGuard() {
+        return contextGuard;
+    }
+
     public boolean isGuardConditionMet() {
-        return guard.call();
+        return isGuardConditionMet(null);
+    }
+
+    public boolean isGuardConditionMet(Object context) {
+        return contextGuard == null ? guard.call() : contextGuard.call(context);
     }
 
     public abstract boolean resultsInTransitionFrom(S source, Object[] args, OutVar<S> dest);
+
+    /**
+     * Determine the destination of the transition, for a behaviour whose destination may depend on the context of the
+     * state machine it is taken by
+     *
+     * @param source  The current state
+     * @param args    The trigger arguments
+     * @param context The context of the state machine
+     * @param dest    Receives the destination state
+     * @return True if the behaviour results in a transition
+     */
+    public boolean resultsInTransitionFrom(S source, Object[] args, Object context, OutVar<S> dest) {
+        return resultsInTransitionFrom(source, args, dest);
+    }
 }
@@ -0,0 +1,289 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncStateMachineTests {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final SynchronousQueue<Completion> completions = new SynchronousQueue<>();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private final Action2<Transition<State, Trigger>, Completion> handOver = new Action2<Transition<State, Trigger>, Completion>() {
+        @Override
+        public void doIt(Transition<State, Trigger> t, Completion completion) {
+            try {
+                completions.put(completion);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    private Completion awaitCompletion() throws InterruptedException {
+        Completion completion = completions.poll(10, TimeUnit.SECONDS);
+        assertTrue(completion != null);
+        return completion;
+    }
+
+    @Test
+    public void FireAsyncReportsOutcome() throws Exception {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .ignore(Trigger.Y);
+
+        AsyncStateMachine<State, Trigger> sm = new AsyncStateMachine<>(State.A, config, executor);
+
+        assertEquals(FireResult.IGNORED, sm.fireAsync(Trigger.Y).get(10, TimeUnit.SECONDS));
+        assertEquals(FireResult.TRANSITIONED, sm.fireAsync(Trigger.X).get(10, TimeUnit.SECONDS));
+        assertEquals(FireResult.UNHANDLED, sm.fireAsync(Trigger.Z).get(10, TimeUnit.SECONDS));
+        assertEquals(State.B, sm.getState());
+    }
+
+    @Test
+    public void TriggersAreProcessedInOrderOnAPool() throws Exception {
+        final List<State> entered = Collections.synchronizedList(new ArrayList<State>());
+        Action1<Transition<State, Trigger>> record = new Action1<Transition<State, Trigger>>() {
+            @Override
+            public void doIt(Transition<State, Trigger> t) {
+                entered.add(t.getDestination());
+            }
+        };
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .onEntry(record);
+        config.configure(State.B)
+                .permit(Trigger.X, State.A)
+                .onEntry(record);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            AsyncStateMachine<State, Trigger> sm = new AsyncStateMachine<>(State.A, config.freeze(), pool);
+            Future<FireResult> last = null;
+            for (int i = 0; i < 1000; i++) {
+                last = sm.fireAsync(Trigger.X);
+            }
+            assertEquals(FireResult.TRANSITIONED, last.get(10, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1000, entered.size());
+        for (int i = 0; i < entered.size(); i++) {
+            assertEquals(i % 2 == 0 ? State.B : State.A, entered.get(i));
+        }
+    }
+
+    @Test
+    public void AsyncEntryActionDoesNotHoldTheExecutor() throws Exception {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntryAsync(handOver)
+                .permit(Trigger.Y, State.A);
+
+        AsyncStateMachine<State, Trigger> sm = new AsyncStateMachine<>(State.A, config, executor);
+        Future<FireResult> entering = sm.fireAsync(Trigger.X);
+        Future<FireResult> leaving = sm.fireAsync(Trigger.Y);
+        Completion completion = awaitCompletion();
+
+        // The single executor thread is free while the action is outstanding
+        assertTrue(executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, true).get(10, TimeUnit.SECONDS));
+        assertEquals(State.B, sm.getState());
+        assertFalse(entering.isDone());
+        assertFalse(leaving.isDone());
+
+        completion.complete();
+
+        assertEquals(FireResult.TRANSITIONED, entering.get(10, TimeUnit.SECONDS));
+        assertEquals(FireResult.TRANSITIONED, leaving.get(10, TimeUnit.SECONDS));
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void AsyncExitActionDelaysTheStateChange() throws Exception {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .onExitAsync(handOver)
+                .permit(Trigger.X, State.B);
+
+        AsyncStateMachine<State, Trigger> sm = new AsyncStateMachine<>(State.A, config.freeze(), executor);
+        Future<FireResult> result = sm.fireAsync(Trigger.X);
+        Completion completion = awaitCompletion();
+
+        assertEquals(State.A, sm.getState());
+        completion.complete();
+
+        assertEquals(FireResult.TRANSITIONED, result.get(10, TimeUnit.SECONDS));
+        assertEquals(State.B, sm.getState());
+    }
+
+    @Test
+    public void ListenersRunOnceTheFireCompletes() throws Exception {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .onExitAsync(handOver)
+                .permit(Trigger.X, State.B);
+
+        AsyncStateMachine<State, Trigger> sm = new AsyncStateMachine<>(State.A, config.freeze(), executor);
+        final FireFuture result = sm.fireAsync(Trigger.X);
+        final SynchronousQueue<FireResult> outcomes = new SynchronousQueue<>();
+        final Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    assertTrue(result.isDone());
+                    outcomes.put(result.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        Completion completion = awaitCompletion();
+        result.addListener(listener, direct);
+        assertFalse(result.isDone());
+
+        completion.complete();
+        assertEquals(FireResult.TRANSITIONED, outcomes.poll(10, TimeUnit.SECONDS));
+
+        // A listener added afterwards runs at once
+        final List<FireResult> late = new ArrayList<>();
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    late.add(result.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }, direct);
+        assertEquals(Collections.singletonList(FireResult.TRANSITIONED), late);
+    }
+
+    @Test
+    public void FailedActionFailsItsFutureOnly() throws Exception {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntryFromAsync(Trigger.X, handOver)
+                .permit(Trigger.Y, State.A);
+
+        AsyncStateMachine<State, Trigger> sm = new AsyncStateMachine<>(State.A, config, executor);
+        Future<FireResult> failing = sm.fireAsync(Trigger.X);
+        Future<FireResult> next = sm.fireAsync(Trigger.Y);
+        IllegalArgumentException cause = new IllegalArgumentException();
+        awaitCompletion().fail(cause);
+
+        try {
+            failing.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+        assertEquals(FireResult.TRANSITIONED, next.get(10, TimeUnit.SECONDS));
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void RejectedResumeFailsEveryQueuedTrigger() throws Exception {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntryAsync(handOver)
+                .permit(Trigger.Y, State.A);
+
+        AsyncStateMachine<State, Trigger> sm = new AsyncStateMachine<>(State.A, config, executor);
+        Future<FireResult> entering = sm.fireAsync(Trigger.X);
+        Future<FireResult> leaving = sm.fireAsync(Trigger.Y);
+        Completion completion = awaitCompletion();
+        executor.shutdown();
+
+        try {
+            completion.complete();
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        for (Future<FireResult> future : Arrays.asList(entering, leaving)) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        try {
+            // Not queued behind the abandoned run, the machine tries the executor again
+            sm.fireAsync(Trigger.Y);
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void SynchronousMachineWaitsForAsyncAction() throws Exception {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntryAsync(new Action2<Transition<State, Trigger>, Completion>() {
+                    @Override
+                    public void doIt(Transition<State, Trigger> t, final Completion completion) {
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                completion.complete();
+                            }
+                        });
+                    }
+                });
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(Trigger.X);
+
+        assertEquals(State.B, sm.getState());
+    }
+}
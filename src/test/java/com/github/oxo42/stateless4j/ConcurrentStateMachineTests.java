@@ -0,0 +1,167 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentStateMachineTests {
+
+    private static final int THREADS = 4;
+    private static final int FIRES_PER_THREAD = 10000;
+
+    final AtomicInteger inTransition = new AtomicInteger();
+    final AtomicInteger entered = new AtomicInteger();
+    final AtomicBoolean overlapped = new AtomicBoolean();
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        Action exit = new Action() {
+            @Override
+            public void doIt() {
+                if (inTransition.incrementAndGet() != 1) {
+                    overlapped.set(true);
+                }
+            }
+        };
+        Action entry = new Action() {
+            @Override
+            public void doIt() {
+                entered.incrementAndGet();
+                inTransition.decrementAndGet();
+            }
+        };
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .onExit(exit)
+                .onEntry(entry);
+
+        config.configure(State.B)
+                .permit(Trigger.X, State.A)
+                .onExit(exit)
+                .onEntry(entry);
+
+        return config.freeze();
+    }
+
+    @Test
+    public void ConcurrentFiresDoNotInterleave() throws InterruptedException {
+        final ConcurrentStateMachine<State, Trigger> sm = new ConcurrentStateMachine<>(State.A, createConfig());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < FIRES_PER_THREAD; j++) {
+                        sm.fire(Trigger.X);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(overlapped.get());
+        assertEquals(THREADS * FIRES_PER_THREAD, entered.get());
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void TryFireReportsConflictWhileAnotherThreadIsFiring() throws InterruptedException {
+        final CountDownLatch entering = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .permit(Trigger.Y, State.A)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        entering.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+
+        final ConcurrentStateMachine<State, Trigger> sm = new ConcurrentStateMachine<>(State.A, config.freeze());
+        Thread firing = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sm.fire(Trigger.X);
+            }
+        });
+        firing.start();
+        assertTrue(entering.await(10, TimeUnit.SECONDS));
+
+        assertEquals(FireResult.CONFLICT, sm.tryFire(Trigger.Y));
+        assertEquals(State.B, sm.getState());
+        assertTrue(sm.canFire(Trigger.Y));
+
+        release.countDown();
+        firing.join();
+
+        assertEquals(FireResult.TRANSITIONED, sm.tryFire(Trigger.Y));
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void ActionsMayFireOnTheClaimingThread() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        final List<ConcurrentStateMachine<State, Trigger>> machine = new ArrayList<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .permit(Trigger.Y, State.C)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        machine.get(0).fire(Trigger.Y);
+                    }
+                });
+
+        ConcurrentStateMachine<State, Trigger> sm = new ConcurrentStateMachine<>(State.A, config.freeze());
+        machine.add(sm);
+        sm.fire(Trigger.X);
+
+        assertEquals(State.C, sm.getState());
+    }
+
+    @Test
+    public void MachineIsReleasedWhenAnActionThrows() {
+        ConcurrentStateMachine<State, Trigger> sm = new ConcurrentStateMachine<>(State.A, createConfig());
+
+        try {
+            sm.fire(Trigger.Z);
+        } catch (IllegalStateException e) {
+            // unhandled trigger
+        }
+
+        assertEquals(FireResult.TRANSITIONED, sm.tryFire(Trigger.X));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void UnfrozenConfigIsRejected() {
+        new ConcurrentStateMachine<>(State.A, new StateMachineConfig<State, Trigger>());
+    }
+}
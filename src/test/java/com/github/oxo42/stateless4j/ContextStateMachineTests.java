@@ -0,0 +1,225 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.Action3;
+import com.github.oxo42.stateless4j.delegates.Action5;
+import com.github.oxo42.stateless4j.delegates.Func2;
+import com.github.oxo42.stateless4j.delegates.Func3;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean1;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters3;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ContextStateMachineTests {
+
+    static class Account {
+        int balance;
+        final List<String> log = new ArrayList<>();
+
+        Account(int balance) {
+            this.balance = balance;
+        }
+    }
+
+    private static final FuncBoolean1<Account> IN_CREDIT = new FuncBoolean1<Account>() {
+        @Override
+        public boolean call(Account account) {
+            return account.balance > 0;
+        }
+    };
+
+    private static final FuncBoolean1<Account> OVERDRAWN = new FuncBoolean1<Account>() {
+        @Override
+        public boolean call(Account account) {
+            return account.balance <= 0;
+        }
+    };
+
+    private <C extends StateMachineConfig<State, Trigger>> C configure(C config) {
+        config.configure(State.A)
+                .permitIf(Trigger.X, State.B, IN_CREDIT)
+                .permitIf(Trigger.X, State.C, OVERDRAWN)
+                .onExit(new Action2<Account, Transition<State, Trigger>>() {
+                    @Override
+                    public void doIt(Account account, Transition<State, Trigger> t) {
+                        account.log.add("exit " + t.getSource());
+                    }
+                });
+
+        config.configure(State.B)
+                .onEntry(new Action2<Account, Transition<State, Trigger>>() {
+                    @Override
+                    public void doIt(Account account, Transition<State, Trigger> t) {
+                        account.log.add("enter " + t.getDestination());
+                    }
+                })
+                .ignoreIf(Trigger.Y, OVERDRAWN)
+                .permitIf(Trigger.Y, State.A, IN_CREDIT);
+
+        config.configure(State.C)
+                .permitReentryIf(Trigger.Y, OVERDRAWN);
+
+        return config;
+    }
+
+    @Test
+    public void SharedConfigRoutesEachMachineByItsOwnContext() {
+        StateMachineConfig<State, Trigger> config = configure(new StateMachineConfig<State, Trigger>()).freeze();
+
+        Account rich = new Account(10);
+        Account poor = new Account(0);
+        ContextStateMachine<State, Trigger, Account> richMachine = new ContextStateMachine<>(State.A, config, rich);
+        ContextStateMachine<State, Trigger, Account> poorMachine = new ContextStateMachine<>(State.A, config, poor);
+
+        richMachine.fire(Trigger.X);
+        poorMachine.fire(Trigger.X);
+
+        assertEquals(State.B, richMachine.getState());
+        assertEquals(State.C, poorMachine.getState());
+    }
+
+    @Test
+    public void ActionsReceiveTheContext() {
+        Account account = new Account(10);
+        ContextStateMachine<State, Trigger, Account> sm = new ContextStateMachine<>(State.A, configure(new StateMachineConfig<State, Trigger>()), account);
+
+        sm.fire(Trigger.X);
+
+        assertEquals(2, account.log.size());
+        assertEquals("exit A", account.log.get(0));
+        assertEquals("enter B", account.log.get(1));
+    }
+
+    @Test
+    public void ContextGuardsAreReevaluatedOnEachFire() {
+        Account account = new Account(10);
+        ContextStateMachine<State, Trigger, Account> sm = new ContextStateMachine<>(State.A, configure(new StateMachineConfig<State, Trigger>()).freeze(), account);
+
+        sm.fire(Trigger.X);
+        account.balance = 0;
+        assertTrue(sm.canFire(Trigger.Y));
+        sm.fire(Trigger.Y);
+        assertEquals(State.B, sm.getState());
+
+        account.balance = 5;
+        sm.fire(Trigger.Y);
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void PermittedTriggersFollowTheContext() {
+        Account account = new Account(0);
+        ContextStateMachine<State, Trigger, Account> sm = new ContextStateMachine<>(State.C, configure(new StateMachineConfig<State, Trigger>()).freeze(), account);
+
+        assertTrue(sm.getPermittedTriggers().contains(Trigger.Y));
+        account.balance = 1;
+        assertFalse(sm.getPermittedTriggers().contains(Trigger.Y));
+        assertFalse(sm.canFire(Trigger.Y));
+    }
+
+    @Test
+    public void EnumConfigDispatchesOnContext() {
+        EnumStateMachineConfig<State, Trigger> config = configure(new EnumStateMachineConfig<>(State.class, Trigger.class)).freeze();
+
+        ContextStateMachine<State, Trigger, Account> richMachine = new ContextStateMachine<>(State.A, config, new Account(1));
+        ContextStateMachine<State, Trigger, Account> poorMachine = new ContextStateMachine<>(State.A, config, new Account(-1));
+
+        richMachine.fire(Trigger.X);
+        poorMachine.fire(Trigger.X);
+
+        assertEquals(State.B, richMachine.getState());
+        assertEquals(State.C, poorMachine.getState());
+    }
+
+    @Test
+    public void ParameterisedEntryActionReceivesContextAndArgument() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters1<Integer, State, Trigger> deposit = config.setTriggerParameters(Trigger.X, Integer.class);
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntryFrom(deposit, new Action3<Account, Integer, Transition<State, Trigger>>() {
+                    @Override
+                    public void doIt(Account account, Integer amount, Transition<State, Trigger> t) {
+                        account.balance += amount;
+                    }
+                }, Integer.class);
+
+        Account account = new Account(1);
+        ContextStateMachine<State, Trigger, Account> sm = new ContextStateMachine<>(State.A, config.freeze(), account);
+        sm.fire(deposit, 41);
+
+        assertEquals(42, account.balance);
+    }
+
+    @Test
+    public void DynamicSelectorReceivesTheContext() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permitDynamic(Trigger.X, new Func2<Account, State>() {
+                    @Override
+                    public State call(Account account) {
+                        return account.balance > 0 ? State.B : State.C;
+                    }
+                });
+        config.freeze();
+
+        ContextStateMachine<State, Trigger, Account> richMachine = new ContextStateMachine<>(State.A, config, new Account(1));
+        ContextStateMachine<State, Trigger, Account> poorMachine = new ContextStateMachine<>(State.A, config, new Account(0));
+        richMachine.fire(Trigger.X);
+        poorMachine.fire(Trigger.X);
+
+        assertEquals(State.B, richMachine.getState());
+        assertEquals(State.C, poorMachine.getState());
+    }
+
+    @Test
+    public void ParameterisedDynamicSelectorReceivesContextAndArgument() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters1<Integer, State, Trigger> withdraw = config.setTriggerParameters(Trigger.X, Integer.class);
+        config.configure(State.A)
+                .permitDynamicIf(withdraw, new Func3<Account, Integer, State>() {
+                    @Override
+                    public State call(Account account, Integer amount) {
+                        return account.balance >= amount ? State.B : State.C;
+                    }
+                }, IN_CREDIT);
+
+        Account account = new Account(5);
+        ContextStateMachine<State, Trigger, Account> sm = new ContextStateMachine<>(State.A, config.freeze(), account);
+        sm.fire(withdraw, 10);
+
+        assertEquals(State.C, sm.getState());
+    }
+
+    @Test
+    public void ThreeArgumentEntryActionReceivesContextAndArguments() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters3<Integer, Integer, Integer, State, Trigger> deposit = config.setTriggerParameters(Trigger.X, Integer.class, Integer.class, Integer.class);
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntryFrom(deposit, new Action5<Account, Integer, Integer, Integer, Transition<State, Trigger>>() {
+                    @Override
+                    public void doIt(Account account, Integer a, Integer b, Integer c, Transition<State, Trigger> t) {
+                        account.balance += a + b + c;
+                    }
+                }, Integer.class, Integer.class, Integer.class);
+
+        Account account = new Account(0);
+        ContextStateMachine<State, Trigger, Account> sm = new ContextStateMachine<>(State.A, config.freeze(), account);
+        sm.fire(deposit, 1, 2, 3);
+
+        assertEquals(6, account.balance);
+    }
+}
@@ -0,0 +1,172 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Func;
+import com.github.oxo42.stateless4j.delegates.Func2;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DiscriminatedGuardTests {
+
+    String selected = null;
+    int calls = 0;
+
+    final Func<String> selector = new Func<String>() {
+
+        @Override
+        public String call() {
+            calls++;
+            return selected;
+        }
+    };
+
+    @Test
+    public void GuardIsMetForMatchingKey() {
+        selected = "b";
+        assertTrue(new DiscriminatedGuard<>(selector, "b").call());
+        assertFalse(new DiscriminatedGuard<>(selector, "c").call());
+    }
+
+    @Test
+    public void NullKeyMatchesNullDiscriminator() {
+        selected = null;
+        assertTrue(new DiscriminatedGuard<>(selector, (String) null).call());
+        assertFalse(new DiscriminatedGuard<>(selector, "b").call());
+    }
+
+    @Test
+    public void FrozenConfigCallsDiscriminatorOnce() {
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig().freeze());
+
+        selected = "c";
+        calls = 0;
+        sm.fire(Trigger.X);
+
+        assertEquals(State.C, sm.getState());
+        assertEquals(1, calls);
+    }
+
+    @Test
+    public void UnfrozenConfigSelectsByKey() {
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig());
+
+        selected = "b";
+        sm.fire(Trigger.X);
+
+        assertEquals(State.B, sm.getState());
+    }
+
+    @Test
+    public void FrozenConfigFallsBackToSuperstateForUnknownKey() {
+        StateMachineConfig<State, Trigger> config = createConfig();
+        config.configure(State.A).substateOf(State.C);
+        config.configure(State.C).ignore(Trigger.X);
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config.freeze());
+
+        selected = "unknown";
+        sm.fire(Trigger.X);
+
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void FrozenConfigPermitsTriggerOnlyForKnownKey() {
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig().freeze());
+
+        selected = "b";
+        assertTrue(sm.canFire(Trigger.X));
+        assertEquals(1, sm.getPermittedTriggers().size());
+
+        selected = "unknown";
+        assertFalse(sm.canFire(Trigger.X));
+        assertEquals(0, sm.getPermittedTriggers().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void DuplicateKeysAreRejectedWhenFrozen() {
+        StateMachineConfig<State, Trigger> config = createConfig();
+        config.configure(State.A).permitReentryIf(Trigger.X, new DiscriminatedGuard<>(selector, "b"));
+
+        config.freeze();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void DifferentDiscriminatorsAreStillCheckedForAmbiguity() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        Func<String> other = new Func<String>() {
+
+            @Override
+            public String call() {
+                return "b";
+            }
+        };
+
+        config.configure(State.A)
+                .permitIf(Trigger.X, State.B, new DiscriminatedGuard<>(selector, "b"))
+                .permitIf(Trigger.X, State.C, new DiscriminatedGuard<>(other, "b"));
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config.freeze());
+        selected = "b";
+        sm.fire(Trigger.X);
+    }
+
+    @Test
+    public void FrozenConfigCallsContextDiscriminatorOnceWithEachContext() {
+        final List<String> seen = new ArrayList<>();
+        Func2<String, String> byContext = new Func2<String, String>() {
+
+            @Override
+            public String call(String context) {
+                seen.add(context);
+                return context;
+            }
+        };
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permitIf(Trigger.X, State.B, new ContextDiscriminatedGuard<>(byContext, "b"))
+                .permitIf(Trigger.X, State.C, new ContextDiscriminatedGuard<>(byContext, "c"));
+        config.freeze();
+
+        ContextStateMachine<State, Trigger, String> toB = new ContextStateMachine<>(State.A, config, "b");
+        ContextStateMachine<State, Trigger, String> toC = new ContextStateMachine<>(State.A, config, "c");
+        toB.fire(Trigger.X);
+        toC.fire(Trigger.X);
+
+        assertEquals(State.B, toB.getState());
+        assertEquals(State.C, toC.getState());
+        assertEquals(Arrays.asList("b", "c"), seen);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void DuplicateContextKeysAreRejectedWhenFrozen() {
+        Func2<String, String> byContext = new Func2<String, String>() {
+
+            @Override
+            public String call(String context) {
+                return context;
+            }
+        };
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permitIf(Trigger.X, State.B, new ContextDiscriminatedGuard<>(byContext, "b"))
+                .permitIf(Trigger.X, State.C, new ContextDiscriminatedGuard<>(byContext, "b"));
+
+        config.freeze();
+    }
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permitIf(Trigger.X, State.B, new DiscriminatedGuard<>(selector, "b"))
+                .permitIf(Trigger.X, State.C, new DiscriminatedGuard<>(selector, "c"));
+
+        return config;
+    }
+}
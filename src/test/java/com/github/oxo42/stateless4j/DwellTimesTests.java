@@ -0,0 +1,104 @@
+package com.github.oxo42.stateless4j;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DwellTimesTests {
+
+    private static final String[] STATES = {"Idle", "Working", "Loading", "Saving"};
+
+    private StateMachineConfig<String, String> createConfig() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+
+        config.configure("Idle")
+                .permit("start", "Loading")
+                .permitReentry("poke");
+
+        config.configure("Working")
+                .permit("stop", "Idle");
+
+        config.configure("Loading")
+                .substateOf("Working")
+                .permit("save", "Saving");
+
+        config.configure("Saving")
+                .substateOf("Working");
+
+        return config.freeze();
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Test
+    public void SuperstatesAreTimedUntilTheMachineLeavesThem() {
+        DwellTimes<String> dwellTimes = new DwellTimes<>(STATES);
+        StateMachine<String, String> sm = new StateMachine<>("Idle", createConfig());
+        sm.setDwellTimes(dwellTimes);
+
+        sm.fire("start");
+        pause(5);
+        sm.fire("save");
+        assertEquals(1, dwellTimes.getDwellTime("Idle").getCount());
+        assertEquals(1, dwellTimes.getDwellTime("Loading").getCount());
+        assertEquals(0, dwellTimes.getDwellTime("Working").getCount());
+
+        pause(5);
+        sm.fire("stop");
+
+        assertTrue(millis(dwellTimes.getDwellTime("Loading").getMax()) >= 5);
+        assertTrue(millis(dwellTimes.getDwellTime("Saving").getMax()) >= 5);
+        assertTrue(millis(dwellTimes.getDwellTime("Working").getMax()) >= 10);
+        assertEquals(1, dwellTimes.getDwellTime("Working").getCount());
+    }
+
+    @Test
+    public void ReentryLeavesTheStateOnce() {
+        DwellTimes<String> dwellTimes = new DwellTimes<>(STATES);
+        StateMachine<String, String> sm = new StateMachine<>("Idle", createConfig());
+        sm.setDwellTimes(dwellTimes);
+
+        sm.fire("poke");
+        sm.fire("poke");
+
+        assertEquals(2, dwellTimes.getDwellTime("Idle").getCount());
+    }
+
+    @Test
+    public void PopulationsShareDwellTimesAndSnapshotsAreFixed() {
+        DwellTimes<String> dwellTimes = new DwellTimes<>(STATES);
+        StateMachineConfig<String, String> config = createConfig();
+        for (int i = 0; i < 3; i++) {
+            StateMachine<String, String> sm = new StateMachine<>("Idle", config);
+            sm.setDwellTimes(dwellTimes);
+            sm.fire("start");
+        }
+
+        DwellTimes<String> snapshot = dwellTimes.snapshot();
+        StateMachine<String, String> sm = new StateMachine<>("Idle", config);
+        sm.setDwellTimes(dwellTimes);
+        sm.fire("start");
+        sm.setDwellTimes(null);
+        sm.fire("stop");
+
+        assertEquals(3, snapshot.getDwellTime("Idle").getCount());
+        assertEquals(4, dwellTimes.getDwellTime("Idle").getCount());
+        assertEquals(0, dwellTimes.getDwellTime("Working").getCount());
+
+        dwellTimes.reset();
+        assertEquals(0, dwellTimes.getDwellTime("Idle").getCount());
+    }
+}
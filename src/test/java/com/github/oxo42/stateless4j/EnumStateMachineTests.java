@@ -0,0 +1,138 @@
+package com.github.oxo42.stateless4j;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EnumStateMachineTests {
+
+    private EnumStateMachineConfig<State, Trigger> createConfig() {
+        EnumStateMachineConfig<State, Trigger> config = new EnumStateMachineConfig<>(State.class, Trigger.class);
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+
+        config.configure(State.B)
+                .substateOf(State.C)
+                .permit(Trigger.Y, State.A);
+
+        config.configure(State.C)
+                .permit(Trigger.Z, State.A)
+                .ignore(Trigger.X);
+
+        return config;
+    }
+
+    @Test
+    public void FrozenConfigFiresTransitions() {
+        EnumStateMachine<State, Trigger> sm = new EnumStateMachine<>(State.A, createConfig().freeze());
+
+        sm.fire(Trigger.X);
+        assertEquals(State.B, sm.getState());
+
+        sm.fire(Trigger.Y);
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void UnfrozenConfigFiresTransitions() {
+        EnumStateMachine<State, Trigger> sm = new EnumStateMachine<>(State.A, createConfig());
+
+        sm.fire(Trigger.X);
+        assertEquals(State.B, sm.getState());
+        assertTrue(sm.isInState(State.C));
+        assertTrue(sm.canFire(Trigger.Z));
+    }
+
+    @Test
+    public void SubstateInheritsSuperstateTransitions() {
+        EnumStateMachine<State, Trigger> sm = new EnumStateMachine<>(State.B, createConfig().freeze());
+
+        sm.fire(Trigger.Z);
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void SubstateInheritsIgnoredTriggers() {
+        EnumStateMachine<State, Trigger> sm = new EnumStateMachine<>(State.B, createConfig().freeze());
+
+        sm.fire(Trigger.X);
+        assertEquals(State.B, sm.getState());
+    }
+
+    @Test
+    public void SubstateIsIncludedInSuperstate() {
+        EnumStateMachine<State, Trigger> sm = new EnumStateMachine<>(State.B, createConfig().freeze());
+
+        assertTrue(sm.isInState(State.B));
+        assertTrue(sm.isInState(State.C));
+        assertFalse(sm.isInState(State.A));
+    }
+
+    @Test
+    public void SuperstateIsNotIncludedInSubstate() {
+        EnumStateMachine<State, Trigger> sm = new EnumStateMachine<>(State.C, createConfig().freeze());
+
+        assertTrue(sm.isInState(State.C));
+        assertFalse(sm.isInState(State.B));
+    }
+
+    @Test
+    public void CanFireRespectsConfiguredAndInheritedTriggers() {
+        EnumStateMachine<State, Trigger> sm = new EnumStateMachine<>(State.A, createConfig().freeze());
+
+        assertTrue(sm.canFire(Trigger.X));
+        assertFalse(sm.canFire(Trigger.Y));
+        assertFalse(sm.canFire(Trigger.Z));
+
+        sm.fire(Trigger.X);
+
+        assertTrue(sm.canFire(Trigger.X));
+        assertTrue(sm.canFire(Trigger.Y));
+        assertTrue(sm.canFire(Trigger.Z));
+    }
+
+    @Test
+    public void CanFireRespectsGuards() {
+        EnumStateMachineConfig<State, Trigger> config = new EnumStateMachineConfig<>(State.class, Trigger.class);
+
+        config.configure(State.A)
+                .permitIf(Trigger.X, State.B, IgnoredTriggerBehaviourTests.returnFalse);
+
+        EnumStateMachine<State, Trigger> sm = new EnumStateMachine<>(State.A, config.freeze());
+
+        assertFalse(sm.canFire(Trigger.X));
+    }
+
+    @Test
+    public void PermittedTriggersIncludeSuperstatePermittedTriggers() {
+        EnumStateMachine<State, Trigger> sm = new EnumStateMachine<>(State.B, createConfig().freeze());
+        List<Trigger> permitted = sm.getPermittedTriggers();
+
+        assertEquals(3, permitted.size());
+    }
+
+    @Test
+    public void FrozenConfigRepresentsUnconfiguredStates() {
+        EnumStateMachineConfig<State, Trigger> config = new EnumStateMachineConfig<>(State.class, Trigger.class);
+        config.freeze();
+
+        for (State state : State.values()) {
+            StateRepresentation<State, Trigger> representation = config.getRepresentation(state);
+            assertNotNull(representation);
+            assertSame(representation, config.getRepresentation(state));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void UnhandledTriggerIsRejected() {
+        EnumStateMachine<State, Trigger> sm = new EnumStateMachine<>(State.A, createConfig().freeze());
+        sm.fire(Trigger.Z);
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FireAllocationTests {
+
+    private static final int WARMUP_CYCLES = 20000;
+    private static final int MEASURED_CYCLES = 10000;
+
+    int entered = 0;
+
+    @Test
+    public void FiringWithoutArgumentsDoesNotAllocate() {
+        assertFiringDoesNotAllocate(createConfig());
+    }
+
+    @Test
+    public void FiringWithoutArgumentsOnFrozenConfigDoesNotAllocate() {
+        assertFiringDoesNotAllocate(createConfig().freeze());
+    }
+
+    @Test
+    public void QueuedFiringWithoutArgumentsDoesNotAllocate() {
+        assertFiringDoesNotAllocate(createConfig().freeze(), FiringMode.QUEUED);
+    }
+
+    @Test
+    public void RejectedTryFireDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig().freeze());
+
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            sm.tryFire(Trigger.Z);
+        }
+
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        long overhead = threads.getThreadAllocatedBytes(id) - before;
+
+        before = threads.getThreadAllocatedBytes(id);
+        FireResult result = null;
+        for (int i = 0; i < MEASURED_CYCLES; i++) {
+            result = sm.tryFire(Trigger.Z);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before - overhead;
+
+        assertEquals(FireResult.UNHANDLED, result);
+        assertTrue("Allocated " + allocated + " bytes", allocated < MEASURED_CYCLES);
+    }
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+
+        config.configure(State.B)
+                .substateOf(State.C)
+                .onEntry(new Action() {
+
+                    @Override
+                    public void doIt() {
+                        entered++;
+                    }
+                })
+                .permit(Trigger.Y, State.A);
+
+        config.configure(State.C)
+                .ignore(Trigger.Z);
+
+        return config;
+    }
+
+    private void assertFiringDoesNotAllocate(StateMachineConfig<State, Trigger> config) {
+        assertFiringDoesNotAllocate(config, FiringMode.IMMEDIATE);
+    }
+
+    private void assertFiringDoesNotAllocate(StateMachineConfig<State, Trigger> config, FiringMode firingMode) {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        entered = 0;
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.setFiringMode(firingMode);
+
+        cycle(sm, WARMUP_CYCLES);
+
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        long overhead = threads.getThreadAllocatedBytes(id) - before;
+
+        before = threads.getThreadAllocatedBytes(id);
+        cycle(sm, MEASURED_CYCLES);
+        long allocated = threads.getThreadAllocatedBytes(id) - before - overhead;
+
+        assertEquals(State.A, sm.getState());
+        assertEquals(WARMUP_CYCLES + MEASURED_CYCLES, entered);
+        // Any per-fire allocation would cost at least 16 bytes on each of the 3 * MEASURED_CYCLES fires
+        assertTrue("Allocated " + allocated + " bytes", allocated < MEASURED_CYCLES);
+    }
+
+    private void cycle(StateMachine<State, Trigger> sm, int count) {
+        for (int i = 0; i < count; i++) {
+            sm.fire(Trigger.X);
+            sm.fire(Trigger.Z);
+            sm.fire(Trigger.Y);
+        }
+    }
+
+    private com.sun.management.ThreadMXBean threadMXBean() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
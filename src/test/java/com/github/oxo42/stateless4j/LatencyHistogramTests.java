@@ -0,0 +1,63 @@
+package com.github.oxo42.stateless4j;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTests {
+
+    @Test
+    public void BucketsCoverEveryValueWithinAnEighth() {
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 1000, 123456789, 1L << 40}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.lowestIn(bucket) <= value);
+            assertTrue(value <= LatencyHistogram.highestIn(bucket));
+            assertTrue(LatencyHistogram.highestIn(bucket) - LatencyHistogram.lowestIn(bucket) <= value / 8);
+        }
+    }
+
+    @Test
+    public void PercentilesAreReportedWithinAnEighth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertWithinAnEighth(500000, histogram.getValueAtPercentile(50));
+        assertWithinAnEighth(990000, histogram.getValueAtPercentile(99));
+        assertWithinAnEighth(1000000, histogram.getMax());
+        assertWithinAnEighth(500500, (long) histogram.getMean());
+    }
+
+    @Test
+    public void ExtremeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    public void CopiesAreIndependent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        LatencyHistogram copy = histogram.copy();
+        histogram.record(100);
+        copy.add(histogram);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(3, copy.getCount());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    private static void assertWithinAnEighth(long expected, long actual) {
+        assertTrue(actual + " is not within an eighth of " + expected, Math.abs(actual - expected) <= expected / 8);
+    }
+}
@@ -0,0 +1,344 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MachineLocksTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+
+        config.configure(State.B)
+                .permit(Trigger.X, State.A);
+
+        return config.freeze();
+    }
+
+    private StateMachine<State, Trigger> createFailingMachine() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        throw new IllegalArgumentException();
+                    }
+                });
+        return new StateMachine<>(State.A, config.freeze());
+    }
+
+    private void fireFailingGroup(MachineLocks locks, StateMachine<State, Trigger> machine) {
+        try {
+            locks.fireTogether(Arrays.<MachineLocks.Fire<?, ?>>asList(
+                    new MachineLocks.Fire<>(machine, Trigger.X),
+                    new MachineLocks.Fire<>(createFailingMachine(), Trigger.X)));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(State.A, machine.getState());
+        }
+    }
+
+    @Test
+    public void EveryMachineMovesTogether() {
+        MachineLocks locks = new MachineLocks(16);
+        StateMachine<State, Trigger> from = new StateMachine<>(State.A, createConfig());
+        StateMachine<State, Trigger> to = new StateMachine<>(State.B, createConfig());
+
+        assertTrue(locks.fireTogether(Arrays.asList(
+                new MachineLocks.Fire<>(from, Trigger.X),
+                new MachineLocks.Fire<>(to, Trigger.X))));
+
+        assertEquals(State.B, from.getState());
+        assertEquals(State.A, to.getState());
+    }
+
+    @Test
+    public void NoMachineMovesIfOneCannotFire() {
+        MachineLocks locks = new MachineLocks(16);
+        StateMachine<State, Trigger> from = new StateMachine<>(State.A, createConfig());
+        StateMachine<State, Trigger> to = new StateMachine<>(State.A, createConfig());
+
+        assertFalse(locks.fireTogether(Arrays.asList(
+                new MachineLocks.Fire<>(from, Trigger.X),
+                new MachineLocks.Fire<>(to, Trigger.Y))));
+
+        assertEquals(State.A, from.getState());
+        assertEquals(State.A, to.getState());
+    }
+
+    @Test
+    public void MachinesAreRolledBackWhenAGuardFailsDuringTheCommit() {
+        MachineLocks locks = new MachineLocks(1);
+        final StateMachine<State, Trigger> first = new StateMachine<>(State.A, createConfig());
+
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permitIf(Trigger.X, State.B, new FuncBoolean() {
+                    @Override
+                    public boolean call() {
+                        return first.isInState(State.A);
+                    }
+                });
+        StateMachine<State, Trigger> second = new StateMachine<>(State.A, config.freeze());
+
+        assertFalse(locks.fireTogether(Arrays.asList(
+                new MachineLocks.Fire<>(first, Trigger.X),
+                new MachineLocks.Fire<>(second, Trigger.X))));
+
+        assertEquals(State.A, first.getState());
+        assertEquals(State.A, second.getState());
+    }
+
+    @Test
+    public void MachinesAreRolledBackWhenAnActionThrows() {
+        MachineLocks locks = new MachineLocks(16);
+        StateMachine<State, Trigger> first = new StateMachine<>(State.A, createConfig());
+
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        throw new IllegalArgumentException();
+                    }
+                });
+        StateMachine<State, Trigger> second = new StateMachine<>(State.A, config.freeze());
+
+        try {
+            locks.fireTogether(Arrays.asList(
+                    new MachineLocks.Fire<>(first, Trigger.X),
+                    new MachineLocks.Fire<>(second, Trigger.X)));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(State.A, first.getState());
+            assertEquals(State.A, second.getState());
+        }
+    }
+
+    @Test
+    public void EveryMachineIsRolledBackWhenARollbackThrows() {
+        MachineLocks locks = new MachineLocks(16);
+        StateMachine<State, Trigger> first = new StateMachine<>(State.A, createConfig());
+        StateMachine<State, Trigger> second = new StateMachine<>(State.A, createConfig());
+        final List<String> traced = new ArrayList<>();
+        second.setTracer(new TransitionTracer<State, Trigger>() {
+            @Override
+            public void transitionFired(Transition<State, Trigger> transition, long nanos) {
+                traced.add("fired " + transition.getTrigger());
+            }
+
+            @Override
+            public void transitionRolledBack(State state, State restored) {
+                traced.add("rolled back " + state + " to " + restored);
+                throw new IllegalStateException();
+            }
+        });
+
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        throw new IllegalArgumentException();
+                    }
+                });
+        StateMachine<State, Trigger> third = new StateMachine<>(State.A, config.freeze());
+
+        try {
+            locks.fireTogether(Arrays.asList(
+                    new MachineLocks.Fire<>(first, Trigger.X),
+                    new MachineLocks.Fire<>(second, Trigger.X),
+                    new MachineLocks.Fire<>(third, Trigger.X)));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, e.getSuppressed().length);
+            assertTrue(e.getSuppressed()[0] instanceof IllegalStateException);
+        }
+        assertEquals(State.A, first.getState());
+        assertEquals(State.A, second.getState());
+        assertEquals(State.A, third.getState());
+        assertEquals(Arrays.asList("fired X", "rolled back B to A"), traced);
+    }
+
+    @Test
+    public void RollbackCancelsTheTimeoutsOfTheUndoneState() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .timeoutAfter(5, TimeUnit.SECONDS, Trigger.Y)
+                .permit(Trigger.Y, State.C);
+        TimingWheel wheel = new TimingWheel(TimeUnit.SECONDS.toNanos(1));
+        StateMachine<State, Trigger> machine = new ConcurrentStateMachine<>(State.A, config.freeze());
+        machine.scheduleTimeoutsOn(wheel);
+
+        fireFailingGroup(new MachineLocks(16), machine);
+        wheel.advance(10);
+
+        assertEquals(State.A, machine.getState());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void RollbackDoesNotCountTheRestoredStayTwice() throws InterruptedException {
+        DwellTimes<State> dwellTimes = new DwellTimes<>(State.values());
+        StateMachine<State, Trigger> machine = new ConcurrentStateMachine<>(State.A, createConfig());
+        machine.setDwellTimes(dwellTimes);
+
+        Thread.sleep(50);
+        fireFailingGroup(new MachineLocks(16), machine);
+        machine.fire(Trigger.X);
+
+        LatencyHistogram inA = dwellTimes.getDwellTime(State.A);
+        assertEquals(2, inA.getCount());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(inA.getMax()) >= 50);
+        assertTrue(inA.getMean() < TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(0, dwellTimes.getDwellTime(State.B).getCount());
+    }
+
+    @Test
+    public void JournalRecordsTheRollback() throws IOException {
+        File directory = folder.newFolder();
+        try (TransitionJournal<State, Trigger> journal =
+                     new TransitionJournal<>(directory, State.values(), Trigger.values(), 1024, 4)) {
+            StateMachine<State, Trigger> machine = new ConcurrentStateMachine<>(State.A, createConfig());
+            machine.journalTo(journal, 7);
+            fireFailingGroup(new MachineLocks(16), machine);
+        }
+
+        final Map<Integer, State> replayed = new HashMap<>();
+        try (TransitionJournal<State, Trigger> journal =
+                     new TransitionJournal<>(directory, State.values(), Trigger.values(), 1024, 4)) {
+            journal.replay(new Action2<Integer, State>() {
+                @Override
+                public void doIt(Integer id, State state) {
+                    replayed.put(id, state);
+                }
+            });
+        }
+        assertEquals(State.A, replayed.get(7));
+    }
+
+    @Test
+    public void GroupWaitsForAFireInProgress() throws InterruptedException {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .permit(Trigger.X, State.C)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        entered.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+        final StateMachine<State, Trigger> machine = new ConcurrentStateMachine<>(State.A, config.freeze());
+        Thread busy = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                machine.fire(Trigger.X);
+            }
+        });
+        busy.start();
+        entered.await();
+
+        final AtomicBoolean fired = new AtomicBoolean();
+        final MachineLocks locks = new MachineLocks(16);
+        Thread group = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fired.set(locks.fireTogether(Arrays.asList(new MachineLocks.Fire<>(machine, Trigger.X))));
+            }
+        });
+        group.start();
+        Thread.sleep(20);
+        release.countDown();
+        busy.join();
+        group.join();
+
+        assertTrue(fired.get());
+        assertEquals(State.C, machine.getState());
+    }
+
+    @Test
+    public void OverlappingGroupsDoNotDeadlock() throws InterruptedException {
+        final MachineLocks locks = new MachineLocks(4);
+        final List<StateMachine<State, Trigger>> machines = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            machines.add(new StateMachine<>(State.A, createConfig()));
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final Random random = new Random(t);
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 5000; i++) {
+                        int a = random.nextInt(8);
+                        int b = (a + 1 + random.nextInt(7)) % 8;
+                        assertTrue(locks.fireTogether(Arrays.asList(
+                                new MachineLocks.Fire<>(machines.get(a), Trigger.X),
+                                new MachineLocks.Fire<>(machines.get(b), Trigger.X))));
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(30000);
+            assertFalse(thread.isAlive());
+        }
+
+        // Each group toggles two machines, so an even number are away from the initial state
+        int moved = 0;
+        for (StateMachine<State, Trigger> machine : machines) {
+            if (machine.getState() == State.B) {
+                moved++;
+            }
+        }
+        assertEquals(0, moved % 2);
+    }
+}
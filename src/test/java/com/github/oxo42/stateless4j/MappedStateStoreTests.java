@@ -0,0 +1,95 @@
+package com.github.oxo42.stateless4j;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedStateStoreTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+
+        config.configure(State.B)
+                .permit(Trigger.X, State.C);
+
+        return config.freeze();
+    }
+
+    @Test
+    public void FleetStateSurvivesReopening() throws IOException {
+        File file = new File(folder.getRoot(), "fleet");
+        StateMachineConfig<State, Trigger> config = createConfig();
+
+        try (MappedStateStore store = new MappedStateStore(file, 4)) {
+            StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(config, State.values(), store);
+            for (int i = 0; i < 10; i++) {
+                fleet.add(State.A);
+            }
+            fleet.fire(3, Trigger.X);
+            fleet.fire(7, Trigger.X);
+            fleet.fire(7, Trigger.X);
+        }
+
+        try (MappedStateStore store = new MappedStateStore(file, 4)) {
+            StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(config, State.values(), store);
+            assertEquals(10, fleet.size());
+            assertEquals(State.A, fleet.getState(0));
+            assertEquals(State.B, fleet.getState(3));
+            assertEquals(State.C, fleet.getState(7));
+
+            fleet.fire(0, Trigger.X);
+            assertEquals(State.B, fleet.getState(0));
+        }
+    }
+
+    @Test
+    public void StoreGrowsBeyondItsInitialCapacity() throws IOException {
+        try (MappedStateStore store = new MappedStateStore(folder.newFile(), 1)) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, store.add(i));
+            }
+            store.force();
+
+            assertEquals(100, store.size());
+            assertEquals(42, store.get(42));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void OtherFilesAreRejected() throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        }
+        new MappedStateStore(file, 4).close();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void SlotsBeyondTheSizeAreRejected() throws IOException {
+        try (MappedStateStore store = new MappedStateStore(folder.newFile(), 4)) {
+            store.add(0);
+            store.get(1);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void StatesNotListedAreRejected() throws IOException {
+        try (MappedStateStore store = new MappedStateStore(folder.newFile(), 4)) {
+            StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(createConfig(), new State[]{State.A, State.B}, store);
+            fleet.add(State.B);
+            fleet.fire(0, Trigger.X);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.Action3;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionedFleetTests {
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+
+        config.configure(State.B)
+                .permit(Trigger.X, State.C)
+                .permit(Trigger.Y, State.A);
+
+        config.configure(State.C)
+                .permit(Trigger.Y, State.A);
+
+        return config.freeze();
+    }
+
+    @Test
+    public void TriggersAreHandledInOrderPerInstance() {
+        try (PartitionedFleet<State, Trigger> fleet = new PartitionedFleet<>(createConfig(), State.A, 10, 3, 4)) {
+            for (int round = 0; round < 100; round++) {
+                for (int id = 0; id < 10; id++) {
+                    fleet.send(id, Trigger.X);
+                    fleet.send(id, Trigger.Y);
+                }
+            }
+            for (int id = 0; id < 10; id += 2) {
+                fleet.send(id, Trigger.X);
+                fleet.send(id, Trigger.X);
+            }
+            fleet.flush();
+
+            for (int id = 0; id < 10; id++) {
+                assertEquals(id % 2 == 0 ? State.C : State.A, fleet.getState(id));
+            }
+        }
+    }
+
+    @Test
+    public void ManySendersShareThePartitions() throws InterruptedException {
+        final PartitionedFleet<State, Trigger> fleet = new PartitionedFleet<>(createConfig(), 4, 16);
+        final AtomicInteger errors = new AtomicInteger();
+        fleet.onError(new Action3<Integer, Trigger, RuntimeException>() {
+            @Override
+            public void doIt(Integer id, Trigger trigger, RuntimeException e) {
+                errors.incrementAndGet();
+            }
+        });
+        List<Thread> senders = new ArrayList<>();
+        for (int s = 0; s < 4; s++) {
+            final int sender = s;
+            final int first = fleet.add(State.A);
+            senders.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // Each sender owns one instance, so its own order is the instance's order
+                    for (int i = 0; i < 10000; i++) {
+                        fleet.send(first, i % 2 == 0 ? Trigger.X : Trigger.Y);
+                    }
+                    if (sender % 2 == 1) {
+                        fleet.send(first, Trigger.X);
+                    }
+                }
+            }));
+        }
+        for (Thread sender : senders) {
+            sender.start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        fleet.flush();
+
+        assertEquals(0, errors.get());
+        assertEquals(4, fleet.size());
+        for (int id = 0; id < 4; id++) {
+            assertEquals(id % 2 == 1 ? State.B : State.A, fleet.getState(id));
+        }
+        fleet.close();
+    }
+
+    @Test
+    public void ErrorsAreReportedWithTheInstanceId() {
+        final List<Integer> failed = new ArrayList<>();
+        try (PartitionedFleet<State, Trigger> fleet = new PartitionedFleet<>(createConfig(), State.A, 5, 2, 8)) {
+            fleet.onError(new Action3<Integer, Trigger, RuntimeException>() {
+                @Override
+                public void doIt(Integer id, Trigger trigger, RuntimeException e) {
+                    assertTrue(e instanceof IllegalStateException);
+                    failed.add(id);
+                }
+            });
+            fleet.send(3, Trigger.Y);
+            fleet.send(4, Trigger.X);
+            fleet.flush();
+
+            assertEquals(State.B, fleet.getState(4));
+        }
+        assertEquals(1, failed.size());
+        assertEquals(3, (int) failed.get(0));
+    }
+
+    @Test
+    public void ActionsReceiveTheIdInTheWholeFleet() {
+        final List<Integer> entered = Collections.synchronizedList(new ArrayList<Integer>());
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntry(new Action2<Integer, Transition<State, Trigger>>() {
+                    @Override
+                    public void doIt(Integer id, Transition<State, Trigger> t) {
+                        entered.add(id);
+                    }
+                });
+        try (PartitionedFleet<State, Trigger> fleet = new PartitionedFleet<>(config.freeze(), State.A, 6, 3, 8)) {
+            for (int id = 0; id < 6; id++) {
+                fleet.send(id, Trigger.X);
+            }
+            fleet.flush();
+        }
+        Collections.sort(entered);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), entered);
+    }
+
+    @Test
+    public void FailingErrorActionDoesNotStopTheWorker() {
+        final AtomicInteger errors = new AtomicInteger();
+        try (PartitionedFleet<State, Trigger> fleet = new PartitionedFleet<>(createConfig(), State.A, 2, 1, 8)) {
+            fleet.onError(new Action3<Integer, Trigger, RuntimeException>() {
+                @Override
+                public void doIt(Integer id, Trigger trigger, RuntimeException e) {
+                    errors.incrementAndGet();
+                    throw new AssertionError("error action failed");
+                }
+            });
+            fleet.send(0, Trigger.Y);
+            fleet.send(1, Trigger.X);
+            fleet.send(0, Trigger.Y);
+
+            assertEquals(State.B, fleet.getState(1));
+            assertEquals(2, errors.get());
+        }
+    }
+
+    @Test
+    public void WorkerReadsItsOwnPartitionAndIsRefusedWhenItsQueueIsFull() throws InterruptedException {
+        final List<State> seen = new ArrayList<>();
+        final AtomicInteger sent = new AtomicInteger();
+        final List<RuntimeException> refused = new ArrayList<>();
+        final CountDownLatch handled = new CountDownLatch(1);
+        try (final PartitionedFleet<State, Trigger> fleet = new PartitionedFleet<>(createConfig(), State.A, 2, 1, 2)) {
+            fleet.onError(new Action3<Integer, Trigger, RuntimeException>() {
+                @Override
+                public void doIt(Integer id, Trigger trigger, RuntimeException e) {
+                    if (trigger != Trigger.Y) {
+                        return;
+                    }
+                    seen.add(fleet.getState(1));
+                    try {
+                        while (sent.get() < 10) {
+                            fleet.send(1, Trigger.X);
+                            sent.incrementAndGet();
+                        }
+                    } catch (IllegalStateException full) {
+                        refused.add(full);
+                    }
+                    handled.countDown();
+                }
+            });
+            fleet.send(0, Trigger.Y);
+            // Send nothing more until the worker is done, so it alone fills its queue
+            handled.await();
+            fleet.flush();
+
+            assertEquals(1, seen.size());
+            assertEquals(State.A, seen.get(0));
+            assertEquals(1, refused.size());
+            assertEquals(2, sent.get());
+            assertEquals(State.C, fleet.getState(1));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void ClosedFleetRejectsTriggers() {
+        PartitionedFleet<State, Trigger> fleet = new PartitionedFleet<>(createConfig(), State.A, 1, 1, 8);
+        fleet.close();
+        fleet.send(0, Trigger.X);
+    }
+}
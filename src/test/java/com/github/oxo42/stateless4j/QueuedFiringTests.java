@@ -0,0 +1,244 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueuedFiringTests {
+
+    final List<String> log = new ArrayList<>();
+    StateMachine<State, Trigger> sm;
+
+    private Action1<Transition<State, Trigger>> record(final String event) {
+        return new Action1<Transition<State, Trigger>>() {
+            @Override
+            public void doIt(Transition<State, Trigger> t) {
+                log.add(event + " " + sm.getState());
+            }
+        };
+    }
+
+    private StateMachineConfig<State, Trigger> createCascadingConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+
+        config.configure(State.B)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        sm.fire(Trigger.Y);
+                        log.add("fired Y");
+                    }
+                })
+                .onEntry(record("entered B in"))
+                .onExit(record("exiting B in"))
+                .permit(Trigger.Y, State.C);
+
+        config.configure(State.C)
+                .onEntry(record("entered C in"));
+
+        return config;
+    }
+
+    @Test
+    public void DefaultFiringModeIsImmediate() {
+        sm = new StateMachine<>(State.A, createCascadingConfig());
+
+        assertEquals(FiringMode.IMMEDIATE, sm.getFiringMode());
+    }
+
+    @Test
+    public void WhenImmediate_TriggerFiredFromActionInterruptsTransition() {
+        sm = new StateMachine<>(State.A, createCascadingConfig());
+        sm.fire(Trigger.X);
+
+        assertEquals(State.C, sm.getState());
+        assertEquals("exiting B in B", log.get(0));
+        assertEquals("entered C in C", log.get(1));
+        assertEquals("fired Y", log.get(2));
+        assertEquals("entered B in C", log.get(3));
+    }
+
+    @Test
+    public void WhenQueued_TriggerFiredFromActionRunsAfterTransitionCompletes() {
+        sm = new StateMachine<>(State.A, createCascadingConfig());
+        sm.setFiringMode(FiringMode.QUEUED);
+        sm.fire(Trigger.X);
+
+        assertEquals(State.C, sm.getState());
+        assertEquals("fired Y", log.get(0));
+        assertEquals("entered B in B", log.get(1));
+        assertEquals("exiting B in B", log.get(2));
+        assertEquals("entered C in C", log.get(3));
+    }
+
+    @Test
+    public void WhenQueued_TryFireFromActionReportsQueued() {
+        final List<FireResult> results = new ArrayList<>();
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        results.add(sm.tryFire(Trigger.Y));
+                    }
+                })
+                .permit(Trigger.Y, State.A);
+
+        sm = new StateMachine<>(State.A, config);
+        sm.setFiringMode(FiringMode.QUEUED);
+
+        assertEquals(FireResult.TRANSITIONED, sm.tryFire(Trigger.X));
+        assertEquals(FireResult.QUEUED, results.get(0));
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void WhenQueued_CascadeDoesNotGrowTheStack() {
+        final int cascade = 100000;
+        final int[] entries = new int[1];
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        if (++entries[0] < cascade) {
+                            sm.fire(Trigger.X);
+                        }
+                    }
+                })
+                .permit(Trigger.X, State.A);
+        config.configure(State.A)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        sm.fire(Trigger.X);
+                    }
+                });
+
+        sm = new StateMachine<>(State.A, config.freeze());
+        sm.setFiringMode(FiringMode.QUEUED);
+        sm.fire(Trigger.X);
+
+        assertEquals(cascade, entries[0]);
+        assertEquals(State.B, sm.getState());
+    }
+
+    @Test
+    public void WhenQueued_ParametersAreDeliveredToQueuedTriggers() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        final TriggerWithParameters1<String, State, Trigger> y = config.setTriggerParameters(Trigger.Y, String.class);
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        sm.fire(y, "queued");
+                    }
+                })
+                .permit(Trigger.Y, State.C);
+        config.configure(State.C)
+                .onEntryFrom(y, new Action2<String, Transition<State, Trigger>>() {
+                    @Override
+                    public void doIt(String arg, Transition<State, Trigger> t) {
+                        log.add(arg);
+                    }
+                }, String.class);
+
+        sm = new StateMachine<>(State.A, config);
+        sm.setFiringMode(FiringMode.QUEUED);
+        sm.fire(Trigger.X);
+
+        assertEquals(State.C, sm.getState());
+        assertEquals("queued", log.get(0));
+    }
+
+    @Test
+    public void WhenQueued_UnhandledQueuedTriggerIsReportedAfterTransition() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        sm.fire(Trigger.Z);
+                    }
+                });
+
+        sm = new StateMachine<>(State.A, config);
+        sm.setFiringMode(FiringMode.QUEUED);
+        try {
+            sm.fire(Trigger.X);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(State.B, sm.getState());
+        }
+
+        assertEquals(FireResult.UNHANDLED, sm.tryFire(Trigger.Z));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void FiringModeCannotChangeWhileProcessing() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        sm.setFiringMode(FiringMode.IMMEDIATE);
+                    }
+                });
+
+        sm = new StateMachine<>(State.A, config);
+        sm.setFiringMode(FiringMode.QUEUED);
+        sm.fire(Trigger.X);
+    }
+
+    @Test
+    public void WhenQueued_MachineRecoversAfterActionThrows() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        sm.fire(Trigger.Y);
+                        throw new IllegalArgumentException();
+                    }
+                })
+                .permit(Trigger.Y, State.A);
+
+        sm = new StateMachine<>(State.A, config);
+        sm.setFiringMode(FiringMode.QUEUED);
+        try {
+            sm.fire(Trigger.X);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // the queued Y is abandoned
+        }
+
+        assertEquals(State.B, sm.getState());
+        assertTrue(sm.canFire(Trigger.Y));
+        assertEquals(FireResult.TRANSITIONED, sm.tryFire(Trigger.Y));
+    }
+}
@@ -0,0 +1,343 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StateMachineConfigTests {
+
+    final List<String> actions = new ArrayList<>();
+
+    @Test
+    public void ConfigIsNotFrozenByDefault() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        assertFalse(config.isFrozen());
+    }
+
+    @Test
+    public void FreezeReturnsFrozenReceiver() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        assertEquals(config, config.freeze());
+        assertTrue(config.isFrozen());
+        assertEquals(config, config.freeze());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void FrozenConfigCannotBeConfigured() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.freeze();
+        config.configure(State.A);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void FrozenConfigRejectsChangesThroughExistingStateConfiguration() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        StateConfiguration<State, Trigger> a = config.configure(State.A);
+        config.freeze();
+        a.permit(Trigger.X, State.B);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void FrozenConfigRejectsTriggerParameters() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.freeze();
+        config.setTriggerParameters(Trigger.X, String.class);
+    }
+
+    @Test
+    public void FrozenSubstateInheritsSuperstateTransitions() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.B)
+                .substateOf(State.C);
+
+        config.configure(State.C)
+                .permit(Trigger.X, State.A);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config.freeze());
+        sm.fire(Trigger.X);
+
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void FrozenSubstateTransitionTakesPrecedenceOverSuperstate() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.B)
+                .substateOf(State.C)
+                .permit(Trigger.X, State.A);
+
+        config.configure(State.C)
+                .permit(Trigger.X, State.B);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config.freeze());
+        sm.fire(Trigger.X);
+
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void FrozenSubstateFallsBackToSuperstateWhenGuardNotMet() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.B)
+                .substateOf(State.C)
+                .permitIf(Trigger.X, State.A, IgnoredTriggerBehaviourTests.returnFalse);
+
+        config.configure(State.C)
+                .ignore(Trigger.X);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config.freeze());
+        sm.fire(Trigger.X);
+
+        assertEquals(State.B, sm.getState());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void FrozenConfigRejectsAmbiguousGuards() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.B)
+                .permitIf(Trigger.X, State.A, IgnoredTriggerBehaviourTests.returnTrue)
+                .permitIf(Trigger.X, State.C, IgnoredTriggerBehaviourTests.returnTrue);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config.freeze());
+        sm.fire(Trigger.X);
+    }
+
+    @Test
+    public void FrozenPermittedTriggersIncludeSuperstatePermittedTriggers() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.B)
+                .substateOf(State.C)
+                .permit(Trigger.X, State.A)
+                .permitIf(Trigger.Z, State.A, IgnoredTriggerBehaviourTests.returnFalse);
+
+        config.configure(State.C)
+                .permit(Trigger.X, State.B)
+                .permit(Trigger.Y, State.A);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config.freeze());
+        List<Trigger> permitted = sm.getPermittedTriggers();
+
+        assertEquals(2, permitted.size());
+        assertTrue(permitted.contains(Trigger.X));
+        assertTrue(permitted.contains(Trigger.Y));
+        assertTrue(sm.canFire(Trigger.Y));
+        assertFalse(sm.canFire(Trigger.Z));
+    }
+
+    @Test
+    public void ExclusiveGuardsStopAtFirstMatch() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.B)
+                .permitIf(Trigger.X, State.A, IgnoredTriggerBehaviourTests.returnTrue)
+                .permitIf(Trigger.X, State.C, new FuncBoolean() {
+
+                    @Override
+                    public boolean call() {
+                        actions.add("second guard");
+                        return false;
+                    }
+                });
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config.assumeExclusiveGuards().freeze());
+        sm.fire(Trigger.X);
+
+        assertEquals(State.A, sm.getState());
+        assertTrue(actions.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void ExclusiveGuardsCannotBeDeclaredOnceFrozen() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.freeze();
+        config.assumeExclusiveGuards();
+    }
+
+    @Test
+    public void FrozenDeepSubstateIsIncludedInEveryAncestor() {
+        StateMachineConfig<String, String> config = createHierarchy();
+        StateMachine<String, String> sm = new StateMachine<>("Leaf1", config.freeze());
+
+        assertTrue(sm.isInState("Leaf1"));
+        assertTrue(sm.isInState("Middle1"));
+        assertTrue(sm.isInState("Root"));
+        assertFalse(sm.isInState("Middle2"));
+        assertFalse(sm.isInState("Leaf2"));
+        assertFalse(sm.isInState("Unconfigured"));
+    }
+
+    @Test
+    public void FrozenSuperstateIncludesEveryDescendant() {
+        StateMachineConfig<String, String> config = createHierarchy().freeze();
+        StateRepresentation<String, String> root = config.getRepresentation("Root");
+
+        assertTrue(root.includes("Root"));
+        assertTrue(root.includes("Middle2"));
+        assertTrue(root.includes("Leaf1"));
+        assertTrue(config.getRepresentation("Middle2").includes("Leaf2"));
+        assertFalse(config.getRepresentation("Middle1").includes("Leaf2"));
+        assertFalse(config.getRepresentation("Leaf1").includes("Middle1"));
+        assertFalse(root.includes("Unconfigured"));
+    }
+
+    @Test
+    public void FrozenTransitionExitsAndEntersUpToCommonSuperstate() {
+        StateMachineConfig<String, String> config = createHierarchy();
+        StateMachine<String, String> sm = new StateMachine<>("Leaf1", config.freeze());
+
+        sm.fire("Across");
+
+        assertEquals("Leaf2", sm.getState());
+        assertEquals(4, actions.size());
+        assertEquals("exit Leaf1", actions.get(0));
+        assertEquals("exit Middle1", actions.get(1));
+        assertEquals("enter Middle2", actions.get(2));
+        assertEquals("enter Leaf2", actions.get(3));
+    }
+
+    @Test
+    public void FrozenTransitionFromSubstateToSuperstateOnlyExitsSubstate() {
+        StateMachineConfig<String, String> config = createHierarchy();
+        config.configure("Leaf1").permit("Up", "Root");
+        StateMachine<String, String> sm = new StateMachine<>("Leaf1", config.freeze());
+
+        sm.fire("Up");
+
+        assertEquals("Root", sm.getState());
+        assertEquals(2, actions.size());
+        assertEquals("exit Leaf1", actions.get(0));
+        assertEquals("exit Middle1", actions.get(1));
+    }
+
+    @Test
+    public void FrozenTransitionFromSuperstateToSubstateOnlyEntersSubstate() {
+        StateMachineConfig<String, String> config = createHierarchy();
+        config.configure("Root").permit("Down", "Leaf2");
+        StateMachine<String, String> sm = new StateMachine<>("Root", config.freeze());
+
+        sm.fire("Down");
+
+        assertEquals("Leaf2", sm.getState());
+        assertEquals(2, actions.size());
+        assertEquals("enter Middle2", actions.get(0));
+        assertEquals("enter Leaf2", actions.get(1));
+    }
+
+    @Test
+    public void FrozenReentryOnlyRunsOwnActions() {
+        StateMachineConfig<String, String> config = createHierarchy();
+        config.configure("Leaf1").permitReentry("Again");
+        StateMachine<String, String> sm = new StateMachine<>("Leaf1", config.freeze());
+
+        sm.fire("Again");
+
+        assertEquals("Leaf1", sm.getState());
+        assertEquals(2, actions.size());
+        assertEquals("exit Leaf1", actions.get(0));
+        assertEquals("enter Leaf1", actions.get(1));
+    }
+
+    @Test
+    public void FrozenEntryActionsReceiveTriggerParameters() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters1<String, State, Trigger> x = config.setTriggerParameters(Trigger.X, String.class);
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+
+        config.configure(State.B)
+                .onEntryFrom(x, new Action1<String>() {
+
+                    @Override
+                    public void doIt(String arg) {
+                        actions.add(arg);
+                    }
+                }, String.class);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config.freeze());
+        sm.fire(x, "first");
+
+        assertEquals(1, actions.size());
+        assertEquals("first", actions.get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void CyclicSuperstatesCannotBeFrozen() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A).substateOf(State.B);
+        config.configure(State.B).substateOf(State.A);
+
+        config.freeze();
+    }
+
+    private StateMachineConfig<String, String> createHierarchy() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+
+        configureWithActions(config, "Root");
+        configureWithActions(config, "Middle1").substateOf("Root");
+        configureWithActions(config, "Middle2").substateOf("Root");
+        configureWithActions(config, "Leaf1").substateOf("Middle1").permit("Across", "Leaf2");
+        configureWithActions(config, "Leaf2").substateOf("Middle2");
+
+        return config;
+    }
+
+    @Test
+    public void FrozenConfigKnowsWhetherTheContextIsUsed() {
+        StateMachineConfig<State, Trigger> plain = new StateMachineConfig<>();
+        plain.configure(State.A)
+                .permitIf(Trigger.X, State.B, new FuncBoolean() {
+                    @Override
+                    public boolean call() {
+                        return true;
+                    }
+                });
+        assertFalse(plain.freeze().usesContext());
+
+        StateMachineConfig<State, Trigger> contextual = new StateMachineConfig<>();
+        contextual.configure(State.A)
+                .permit(Trigger.X, State.B);
+        contextual.configure(State.B)
+                .onExit(new Action2<Integer, Transition<State, Trigger>>() {
+                    @Override
+                    public void doIt(Integer id, Transition<State, Trigger> t) {
+                    }
+                });
+        assertTrue(contextual.freeze().usesContext());
+    }
+
+    private StateConfiguration<String, String> configureWithActions(StateMachineConfig<String, String> config, final String state) {
+        return config.configure(state)
+                .onEntry(new Action() {
+
+                    @Override
+                    public void doIt() {
+                        actions.add("enter " + state);
+                    }
+                })
+                .onExit(new Action() {
+
+                    @Override
+                    public void doIt() {
+                        actions.add("exit " + state);
+                    }
+                });
+    }
+}
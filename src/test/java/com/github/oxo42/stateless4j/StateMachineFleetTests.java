@@ -0,0 +1,276 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean1;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StateMachineFleetTests {
+
+    final List<String> entered = new ArrayList<>();
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .ignore(Trigger.Z);
+
+        config.configure(State.B)
+                .substateOf(State.C)
+                .permit(Trigger.Y, State.A)
+                .onEntry(new Action1<Transition<State, Trigger>>() {
+                    @Override
+                    public void doIt(Transition<State, Trigger> t) {
+                        entered.add(t.getSource() + "->" + t.getDestination());
+                    }
+                });
+
+        config.configure(State.C)
+                .permitIf(Trigger.Z, State.A, IgnoredTriggerBehaviourTests.returnFalse);
+
+        return config.freeze();
+    }
+
+    @Test
+    public void InstancesTransitionIndependently() {
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(createConfig(), State.A, 3);
+
+        fleet.fire(1, Trigger.X);
+
+        assertEquals(State.A, fleet.getState(0));
+        assertEquals(State.B, fleet.getState(1));
+        assertEquals(State.A, fleet.getState(2));
+        assertTrue(fleet.isInState(1, State.C));
+        assertFalse(fleet.isInState(0, State.C));
+        assertEquals(1, entered.size());
+        assertEquals("A->B", entered.get(0));
+
+        fleet.fire(1, Trigger.Y);
+        assertEquals(State.A, fleet.getState(1));
+    }
+
+    @Test
+    public void AddedInstancesGetDenseIds() {
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(createConfig());
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, fleet.add(i % 2 == 0 ? State.A : State.B));
+        }
+
+        assertEquals(100, fleet.size());
+        assertEquals(State.B, fleet.getState(99));
+    }
+
+    @Test
+    public void TryFireReportsEachOutcome() {
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(createConfig(), State.A, 1);
+
+        assertEquals(FireResult.UNHANDLED, fleet.tryFire(0, Trigger.Y));
+        assertEquals(FireResult.IGNORED, fleet.tryFire(0, Trigger.Z));
+        assertEquals(FireResult.TRANSITIONED, fleet.tryFire(0, Trigger.X));
+        assertEquals(FireResult.GUARD_REJECTED, fleet.tryFire(0, Trigger.Z));
+        assertEquals(State.B, fleet.getState(0));
+    }
+
+    @Test
+    public void UnhandledTriggerIsReportedWithTheInstanceState() {
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(createConfig(), State.A, 1);
+        try {
+            fleet.fire(0, Trigger.Y);
+            fail();
+        } catch (IllegalStateException e) {
+        }
+
+        final List<String> unhandled = new ArrayList<>();
+        fleet.onUnhandledTrigger(new Action2<State, Trigger>() {
+            @Override
+            public void doIt(State state, Trigger trigger) {
+                unhandled.add(state + " " + trigger);
+            }
+        });
+        fleet.fire(0, Trigger.Y);
+
+        assertEquals("A Y", unhandled.get(0));
+    }
+
+    @Test
+    public void TransitionsToUnconfiguredStatesAreKept() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.C);
+        config.configure(State.B)
+                .permit(Trigger.X, State.A);
+
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(config.freeze(), State.A, 2);
+        fleet.fire(0, Trigger.X);
+
+        assertEquals(State.C, fleet.getState(0));
+        assertFalse(fleet.canFire(0, Trigger.X));
+        assertTrue(fleet.canFire(1, Trigger.X));
+    }
+
+    @Test
+    public void ParametersArePassedToEntryActions() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters1<String, State, Trigger> x = config.setTriggerParameters(Trigger.X, String.class);
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntryFrom(x, new Action1<String>() {
+                    @Override
+                    public void doIt(String s) {
+                        entered.add(s);
+                    }
+                }, String.class);
+
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(config.freeze(), State.A, 1);
+        fleet.fire(0, x, "arg");
+
+        assertEquals("arg", entered.get(0));
+    }
+
+    @Test
+    public void GuardsAndActionsReceiveTheInstanceId() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permitIf(Trigger.X, State.B, new FuncBoolean1<Integer>() {
+                    @Override
+                    public boolean call(Integer id) {
+                        return id % 2 == 0;
+                    }
+                });
+        config.configure(State.B)
+                .onEntry(new Action2<Integer, Transition<State, Trigger>>() {
+                    @Override
+                    public void doIt(Integer id, Transition<State, Trigger> t) {
+                        entered.add(id + " " + t.getDestination());
+                    }
+                });
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(config.freeze(), State.A, 3);
+
+        assertTrue(fleet.canFire(2, Trigger.X));
+        assertFalse(fleet.canFire(1, Trigger.X));
+        for (int i = 0; i < 3; i++) {
+            fleet.tryFire(i, Trigger.X);
+        }
+
+        assertEquals(Arrays.asList("0 B", "2 B"), entered);
+        assertEquals(State.A, fleet.getState(1));
+    }
+
+    @Test
+    public void ForEachVisitsEveryInstanceInOrder() {
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(createConfig(), State.A, 4);
+        fleet.fire(2, Trigger.X);
+
+        final List<String> visited = new ArrayList<>();
+        fleet.forEach(new Action2<Integer, State>() {
+            @Override
+            public void doIt(Integer id, State state) {
+                visited.add(id + " " + state);
+            }
+        });
+
+        assertEquals(4, visited.size());
+        assertEquals("2 B", visited.get(2));
+        assertEquals("3 A", visited.get(3));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void UnknownInstanceIsRejected() {
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(createConfig(), State.A, 2);
+        fleet.getState(2);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void ConfigMustBeFrozen() {
+        new StateMachineFleet<>(new StateMachineConfig<State, Trigger>());
+    }
+
+    @Test
+    public void EnumConfigIsSupported() {
+        EnumStateMachineConfig<State, Trigger> config = new EnumStateMachineConfig<>(State.class, Trigger.class);
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .permit(Trigger.X, State.A);
+
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(config.freeze(), State.A, 2);
+        fleet.fire(0, Trigger.X);
+        fleet.fire(0, Trigger.X);
+        fleet.fire(1, Trigger.X);
+
+        assertEquals(State.A, fleet.getState(0));
+        assertEquals(State.B, fleet.getState(1));
+    }
+
+    @Test
+    public void IndexedQueriesFollowTransitionsAndSuperstates() {
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(createConfig(), State.A, 5);
+        fleet.fire(1, Trigger.X);
+        fleet.indexStates();
+        fleet.fire(3, Trigger.X);
+
+        assertEquals(3, fleet.count(State.A));
+        assertEquals(2, fleet.count(State.B));
+        assertEquals(2, fleet.count(State.C));
+        int[] inC = fleet.instancesIn(State.C);
+        Arrays.sort(inC);
+        assertArrayEquals(new int[]{1, 3}, inC);
+
+        fleet.fire(1, Trigger.Y);
+        int added = fleet.add(State.B);
+
+        assertEquals(4, fleet.count(State.A));
+        assertEquals(2, fleet.count(State.C));
+        inC = fleet.instancesIn(State.C);
+        Arrays.sort(inC);
+        assertArrayEquals(new int[]{3, added}, inC);
+    }
+
+    @Test
+    public void SuperstatesMissingFromTheListedStatesAreCountedFromTheirSubstates() {
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(createConfig(), new State[]{State.A, State.B}, new ArrayStateStore());
+        fleet.indexStates();
+        fleet.add(State.A);
+        fleet.add(State.A);
+        fleet.fire(0, Trigger.X);
+
+        assertEquals(1, fleet.count(State.C));
+        assertArrayEquals(new int[]{0}, fleet.instancesIn(State.C));
+    }
+
+    @Test
+    public void IndexedQueriesMatchAScan() {
+        StateMachineFleet<State, Trigger> scanned = new StateMachineFleet<>(createConfig(), State.A, 200);
+        StateMachineFleet<State, Trigger> indexed = new StateMachineFleet<>(createConfig(), State.A, 200);
+        indexed.indexStates();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            int id = random.nextInt(200);
+            Trigger trigger = Trigger.values()[random.nextInt(2)];
+            assertEquals(scanned.tryFire(id, trigger), indexed.tryFire(id, trigger));
+        }
+
+        for (State state : State.values()) {
+            assertEquals(scanned.count(state), indexed.count(state));
+            int[] ids = indexed.instancesIn(state);
+            Arrays.sort(ids);
+            assertArrayEquals(scanned.instancesIn(state), ids);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.Action3;
+import com.github.oxo42.stateless4j.delegates.Func3;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StateMachineRuntimeTests {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    final List<String> created = new ArrayList<>();
+
+    static class Counter {
+        int entries;
+        volatile int published;
+    }
+
+    private static Counter[] counters(int count) {
+        Counter[] counters = new Counter[count];
+        for (int i = 0; i < count; i++) {
+            counters[i] = new Counter();
+        }
+        return counters;
+    }
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        Action2<Counter, Transition<State, Trigger>> count = new Action2<Counter, Transition<State, Trigger>>() {
+            @Override
+            public void doIt(Counter counter, Transition<State, Trigger> t) {
+                if (counter != null) {
+                    // Not atomic, lost updates would show handling was not serial
+                    counter.entries++;
+                    counter.published = counter.entries;
+                }
+            }
+        };
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .onEntry(count);
+
+        config.configure(State.B)
+                .permit(Trigger.X, State.A)
+                .onEntry(count);
+
+        return config.freeze();
+    }
+
+    private Func3<String, State, StateMachine<State, Trigger>> countingFactory(final StateMachineConfig<State, Trigger> config, final Counter[] entries) {
+        return new Func3<String, State, StateMachine<State, Trigger>>() {
+            @Override
+            public StateMachine<State, Trigger> call(String id, State state) {
+                created.add(id + " " + state);
+                return new ContextStateMachine<>(state, config, entries[Integer.parseInt(id)]);
+            }
+        };
+    }
+
+    @Test
+    public void EachMachineHandlesItsTriggersSerially() throws InterruptedException {
+        final int machines = 10;
+        final int senders = 4;
+        final int sends = 2000;
+        final Counter[] entries = counters(machines);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        final StateMachineRuntime<String, State, Trigger> runtime = new StateMachineRuntime<>(
+                new Func3<String, State, StateMachine<State, Trigger>>() {
+                    final StateMachineConfig<State, Trigger> config = createConfig();
+
+                    @Override
+                    public StateMachine<State, Trigger> call(String id, State state) {
+                        return new ContextStateMachine<>(state, config, entries[Integer.parseInt(id)]);
+                    }
+                }, State.A, pool, machines);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < senders; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < sends; j++) {
+                        runtime.send(Integer.toString(j % machines), Trigger.X);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        int expected = senders * sends / machines;
+        for (int i = 0; i < machines; i++) {
+            while (entries[i].published < expected && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < machines; i++) {
+            assertEquals(expected, entries[i].published);
+            assertEquals(State.A, runtime.getState(Integer.toString(i)));
+        }
+    }
+
+    @Test
+    public void IdleMachinesBeyondTheLimitAreParkedAndRestored() {
+        Counter[] entries = counters(5);
+        StateMachineRuntime<String, State, Trigger> runtime = new StateMachineRuntime<>(countingFactory(createConfig(), entries), State.A, DIRECT, 2);
+
+        for (int i = 0; i < 5; i++) {
+            runtime.send(Integer.toString(i), Trigger.X);
+        }
+
+        assertEquals(2, runtime.getLiveCount());
+        assertEquals(State.B, runtime.getState("0"));
+
+        runtime.send("0", Trigger.X);
+
+        assertEquals(State.A, runtime.getState("0"));
+        assertEquals("0 B", created.get(created.size() - 1));
+        assertEquals(2, entries[0].entries);
+    }
+
+    @Test
+    public void ParkIdleParksEveryIdleMachine() {
+        Counter[] entries = counters(3);
+        StateMachineRuntime<String, State, Trigger> runtime = new StateMachineRuntime<>(countingFactory(createConfig(), entries), State.A, DIRECT, 10);
+
+        for (int i = 0; i < 3; i++) {
+            runtime.send(Integer.toString(i), Trigger.X);
+        }
+        assertEquals(3, runtime.getLiveCount());
+
+        runtime.parkIdle();
+
+        assertEquals(0, runtime.getLiveCount());
+        assertEquals(State.B, runtime.getState("2"));
+        assertNull(runtime.getState("3"));
+    }
+
+    @Test
+    public void RemovedMachineIsForgottenAndStartsAfresh() {
+        Counter[] entries = counters(2);
+        StateMachineRuntime<String, State, Trigger> runtime = new StateMachineRuntime<>(countingFactory(createConfig(), entries), State.A, DIRECT, 10);
+
+        runtime.send("0", Trigger.X);
+        runtime.send("1", Trigger.X);
+        assertEquals(2, runtime.getLiveCount());
+
+        assertEquals(State.B, runtime.remove("0"));
+        assertNull(runtime.remove("0"));
+        assertNull(runtime.getState("0"));
+        assertEquals(1, runtime.getLiveCount());
+
+        runtime.send("0", Trigger.X);
+
+        assertEquals("0 A", created.get(created.size() - 1));
+        assertEquals(State.B, runtime.getState("0"));
+        assertEquals(2, runtime.getLiveCount());
+
+        runtime.parkIdle();
+        assertEquals(0, runtime.getLiveCount());
+    }
+
+    @Test
+    public void MachineStartedAfterARemoveWaitsForTheRemovedOne() throws InterruptedException {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        entered.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        events.add("old entered B");
+                    }
+                });
+        config.freeze();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        StateMachineRuntime<String, State, Trigger> runtime = new StateMachineRuntime<>(
+                new Func3<String, State, StateMachine<State, Trigger>>() {
+                    @Override
+                    public StateMachine<State, Trigger> call(String id, State state) {
+                        events.add("created " + state);
+                        return new StateMachine<>(state, config);
+                    }
+                }, State.A, pool, 10);
+
+        runtime.send("0", Trigger.X);
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        assertEquals(State.A, runtime.remove("0"));
+        runtime.send("0", Trigger.Z);
+        Thread.sleep(50);
+        assertEquals(Arrays.asList("created A"), events);
+
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (events.size() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("created A", "old entered B", "created A"), events);
+        assertEquals(1, runtime.getLiveCount());
+    }
+
+    @Test
+    public void RejectedTriggersAreReportedAndLaterOnesStillRun() {
+        final List<String> errors = new ArrayList<>();
+        final boolean[] rejecting = {true};
+        StateMachineRuntime<String, State, Trigger> runtime = new StateMachineRuntime<>(createConfig(), State.A, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (rejecting[0]) {
+                    throw new RejectedExecutionException();
+                }
+                command.run();
+            }
+        }, 10);
+        runtime.onError(new Action3<String, Trigger, RuntimeException>() {
+            @Override
+            public void doIt(String id, Trigger trigger, RuntimeException e) {
+                assertTrue(e instanceof RejectedExecutionException);
+                errors.add(id + " " + trigger);
+            }
+        });
+
+        runtime.send("session", Trigger.X);
+        assertEquals(1, errors.size());
+        assertEquals("session X", errors.get(0));
+        assertEquals(State.A, runtime.getState("session"));
+
+        rejecting[0] = false;
+        runtime.send("session", Trigger.X);
+        assertEquals(1, errors.size());
+        assertEquals(State.B, runtime.getState("session"));
+    }
+
+    @Test
+    public void FailuresAreReportedAndTheMachineCarriesOn() {
+        final List<String> errors = new ArrayList<>();
+        StateMachineRuntime<String, State, Trigger> runtime = new StateMachineRuntime<>(createConfig(), State.A, DIRECT, 10);
+        runtime.onError(new Action3<String, Trigger, RuntimeException>() {
+            @Override
+            public void doIt(String id, Trigger trigger, RuntimeException e) {
+                errors.add(id + " " + trigger);
+            }
+        });
+
+        runtime.send("session", Trigger.Z);
+        runtime.send("session", Trigger.X);
+
+        assertEquals(1, errors.size());
+        assertEquals("session Z", errors.get(0));
+        assertEquals(State.B, runtime.getState("session"));
+    }
+}
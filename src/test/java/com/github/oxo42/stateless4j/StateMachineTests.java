@@ -1,9 +1,14 @@
 package com.github.oxo42.stateless4j;
 
 import com.github.oxo42.stateless4j.delegates.Action;
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Action2;
 import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -219,6 +224,137 @@ public class StateMachineTests {
         config.setTriggerParameters(Trigger.X, String.class);
     }
 
+    private StateMachineConfig<State, Trigger> createTryFireConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permitIf(Trigger.Y, State.C, IgnoredTriggerBehaviourTests.returnFalse);
+
+        config.configure(State.B)
+                .substateOf(State.C);
+
+        config.configure(State.C)
+                .ignore(Trigger.Y);
+
+        return config;
+    }
+
+    @Test
+    public void TryFireReportsEachOutcome() {
+        assertTryFireReportsEachOutcome(createTryFireConfig());
+    }
+
+    @Test
+    public void TryFireReportsEachOutcomeOnFrozenConfig() {
+        assertTryFireReportsEachOutcome(createTryFireConfig().freeze());
+    }
+
+    private void assertTryFireReportsEachOutcome(StateMachineConfig<State, Trigger> config) {
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+
+        assertEquals(FireResult.UNHANDLED, sm.tryFire(Trigger.Z));
+        assertEquals(FireResult.GUARD_REJECTED, sm.tryFire(Trigger.Y));
+        assertEquals(State.A, sm.getState());
+
+        assertEquals(FireResult.TRANSITIONED, sm.tryFire(Trigger.X));
+        assertEquals(State.B, sm.getState());
+
+        assertEquals(FireResult.IGNORED, sm.tryFire(Trigger.Y));
+        assertEquals(State.B, sm.getState());
+    }
+
+    @Test
+    public void TryFireDoesNotCallUnhandledTriggerAction() {
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createTryFireConfig());
+        sm.onUnhandledTrigger(new Action2<State, Trigger>() {
+            @Override
+            public void doIt(State state, Trigger trigger) {
+                fired = true;
+            }
+        });
+
+        sm.tryFire(Trigger.Z);
+        assertFalse(fired);
+
+        sm.fire(Trigger.Y);
+        assertTrue(fired);
+    }
+
+    @Test
+    public void FireAllStopsAtFirstUnhandledTrigger() {
+        assertFireAllStopsAtFirstUnhandledTrigger(createTryFireConfig());
+    }
+
+    @Test
+    public void FireAllStopsAtFirstUnhandledTriggerOnFrozenConfig() {
+        assertFireAllStopsAtFirstUnhandledTrigger(createTryFireConfig().freeze());
+    }
+
+    private void assertFireAllStopsAtFirstUnhandledTrigger(StateMachineConfig<State, Trigger> config) {
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger(new Action2<State, Trigger>() {
+            @Override
+            public void doIt(State state, Trigger trigger) {
+                fired = true;
+            }
+        });
+
+        assertEquals(3, sm.fireAll(Arrays.asList(Trigger.X, Trigger.Y, Trigger.Y, Trigger.Z, Trigger.Y)));
+        assertEquals(State.B, sm.getState());
+        assertFalse(fired);
+
+        assertEquals(2, sm.fireAll(Arrays.asList(Trigger.Y, Trigger.Y)));
+    }
+
+    @Test
+    public void FireAllPassesArguments() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters1<String, State, Trigger> x = config.setTriggerParameters(Trigger.X, String.class);
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permit(Trigger.Y, State.B);
+        config.configure(State.B)
+                .permit(Trigger.X, State.A)
+                .onEntryFrom(x, new Action1<String>() {
+                    @Override
+                    public void doIt(String s) {
+                        entryArgS = s;
+                    }
+                }, String.class);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config.freeze());
+
+        assertEquals(3, sm.fireAll(new Trigger[]{Trigger.X, Trigger.X, Trigger.Y},
+                new Object[][]{{"first"}, {"second"}, null}));
+        assertEquals(State.B, sm.getState());
+        assertEquals("first", entryArgS);
+    }
+
+    @Test
+    public void FireAllFollowsTransitionsFiredByActions() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        final List<StateMachine<State, Trigger>> machine = new ArrayList<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .permit(Trigger.Y, State.C)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        machine.get(0).fire(Trigger.Y);
+                    }
+                });
+        config.configure(State.C)
+                .permit(Trigger.Z, State.A);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config.freeze());
+        machine.add(sm);
+
+        assertEquals(2, sm.fireAll(Arrays.asList(Trigger.X, Trigger.Z, Trigger.Y)));
+        assertEquals(State.A, sm.getState());
+    }
+
 //        @Test
 //        public void ParametersSuppliedToFireArePassedToEntryAction()
 //        {
@@ -0,0 +1,228 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTests {
+
+    private static final long TICK = TimeUnit.SECONDS.toNanos(1);
+
+    int ran;
+
+    private final Action count = new Action() {
+        @Override
+        public void doIt() {
+            ran++;
+        }
+    };
+
+    private StateMachineConfig<String, String> createConfig() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+
+        config.configure("Idle")
+                .permit("call", "Ringing");
+
+        config.configure("Ringing")
+                .substateOf("Active")
+                .timeoutAfter(30, TimeUnit.SECONDS, "timedOut")
+                .permit("answer", "Talking")
+                .permitReentry("again")
+                .permit("timedOut", "Idle");
+
+        config.configure("Talking")
+                .substateOf("Active")
+                .permit("timedOut", "Idle");
+
+        config.configure("Active")
+                .timeoutAfter(60, TimeUnit.SECONDS, "timedOut")
+                .permit("hangUp", "Idle");
+
+        return config.freeze();
+    }
+
+    @Test
+    public void TimersRunOneTickAfterTheirDelayAtEveryLevel() {
+        TimingWheel wheel = new TimingWheel(TICK);
+        long[] delays = {0, 1, 62, 63, 64, 65, 4095, 4096, 262143, 262144, 1L << 24, (1L << 24) + 70};
+        for (long delay : delays) {
+            wheel.schedule(count, delay, TimeUnit.SECONDS);
+        }
+        assertEquals(delays.length, wheel.size());
+
+        long elapsed = 0;
+        for (int i = 0; i < delays.length; i++) {
+            wheel.advance(delays[i] - elapsed);
+            elapsed = delays[i];
+            assertEquals(i, ran);
+            wheel.advance(1);
+            elapsed++;
+            assertEquals(i + 1, ran);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void CancelledTimersNeverRun() {
+        TimingWheel wheel = new TimingWheel(TICK);
+        TimingWheel.Timeout first = wheel.schedule(count, 5, TimeUnit.SECONDS);
+        wheel.schedule(count, 5, TimeUnit.SECONDS);
+        TimingWheel.Timeout far = wheel.schedule(count, 5000, TimeUnit.SECONDS);
+
+        assertTrue(first.cancel());
+        assertFalse(first.cancel());
+        assertTrue(far.cancel());
+        assertEquals(1, wheel.size());
+
+        wheel.advance(10000);
+        assertEquals(1, ran);
+        assertTrue(first.isCancelled());
+    }
+
+    @Test
+    public void FailingActionsDoNotStopLaterTimers() {
+        TimingWheel wheel = new TimingWheel(TICK);
+        wheel.schedule(new Action() {
+            @Override
+            public void doIt() {
+                throw new AssertionError("failed");
+            }
+        }, 1, TimeUnit.SECONDS);
+        wheel.schedule(count, 1, TimeUnit.SECONDS);
+        wheel.schedule(count, 2, TimeUnit.SECONDS);
+
+        wheel.advance(3);
+        assertEquals(2, ran);
+    }
+
+    @Test
+    public void TimeoutFiresItsTriggerIfTheStateIsNotLeft() {
+        TimingWheel wheel = new TimingWheel(TICK);
+        StateMachine<String, String> sm = new ConcurrentStateMachine<>("Idle", createConfig());
+        sm.scheduleTimeoutsOn(wheel);
+
+        sm.fire("call");
+        assertEquals(2, wheel.size());
+        wheel.advance(30);
+        assertEquals("Ringing", sm.getState());
+        wheel.advance(1);
+        assertEquals("Idle", sm.getState());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void LeavingAStateCancelsItsTimeoutsOnly() {
+        TimingWheel wheel = new TimingWheel(TICK);
+        StateMachine<String, String> sm = new ConcurrentStateMachine<>("Idle", createConfig());
+        sm.scheduleTimeoutsOn(wheel);
+
+        sm.fire("call");
+        wheel.advance(20);
+        sm.fire("answer");
+        assertEquals(1, wheel.size());
+
+        // The superstate timeout keeps running while the substate changes
+        wheel.advance(40);
+        assertEquals("Talking", sm.getState());
+        wheel.advance(1);
+        assertEquals("Idle", sm.getState());
+    }
+
+    @Test
+    public void ReentryRestartsTheTimeout() {
+        TimingWheel wheel = new TimingWheel(TICK);
+        StateMachine<String, String> sm = new ConcurrentStateMachine<>("Ringing", createConfig());
+        sm.scheduleTimeoutsOn(wheel);
+
+        wheel.advance(20);
+        sm.fire("again");
+        wheel.advance(20);
+        assertEquals("Ringing", sm.getState());
+        wheel.advance(11);
+        assertEquals("Idle", sm.getState());
+
+        sm.scheduleTimeoutsOn(null);
+        sm.fire("call");
+        assertEquals(0, wheel.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void TimeoutsRequireAConcurrentMachine() {
+        TimingWheel wheel = new TimingWheel(TICK);
+        StateMachine<String, String> sm = new StateMachine<>("Idle", createConfig());
+        sm.scheduleTimeoutsOn(wheel);
+    }
+
+    @Test
+    public void TimeoutOfABusyMachineIsRetriedOnTheNextTick() throws InterruptedException {
+        final TimingWheel wheel = new TimingWheel(TICK);
+        final CountDownLatch busy = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("Ringing")
+                .timeoutAfter(30, TimeUnit.SECONDS, "timedOut")
+                .permitReentry("again")
+                .permit("timedOut", "Idle")
+                .onEntryFrom("again", new Action() {
+                    @Override
+                    public void doIt() {
+                        busy.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+        config.configure("Idle");
+        config.freeze();
+
+        final StateMachine<String, String> sm = new ConcurrentStateMachine<>("Ringing", config);
+        sm.scheduleTimeoutsOn(wheel);
+        wheel.advance(20);
+        Thread firing = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sm.fire("again");
+            }
+        });
+        firing.start();
+        busy.await();
+
+        // The re-entry's timeout is armed before its entry action runs, and falls due while the action holds the machine
+        wheel.advance(31);
+        assertEquals(1, wheel.size());
+        assertEquals("Ringing", sm.getState());
+
+        release.countDown();
+        firing.join();
+        wheel.advance(1);
+        assertEquals("Idle", sm.getState());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void WheelThreadFiresTimeoutsOfConcurrentMachines() throws InterruptedException {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("Waiting")
+                .timeoutAfter(20, TimeUnit.MILLISECONDS, "timedOut")
+                .permit("timedOut", "Done");
+        config.freeze();
+
+        try (TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS)) {
+            StateMachine<String, String> sm = new ConcurrentStateMachine<>("Waiting", config);
+            sm.scheduleTimeoutsOn(wheel);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!sm.getState().equals("Done") && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals("Done", sm.getState());
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.Func;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class TransitionJournalTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    int actions;
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        Action count = new Action() {
+            @Override
+            public void doIt() {
+                actions++;
+            }
+        };
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .onExit(count);
+
+        config.configure(State.B)
+                .permit(Trigger.X, State.C)
+                .permit(Trigger.Y, State.A)
+                .onEntry(count);
+
+        config.configure(State.C)
+                .permit(Trigger.Y, State.A);
+
+        return config.freeze();
+    }
+
+    private TransitionJournal<State, Trigger> openJournal(File directory, int segmentSize) throws IOException {
+        return new TransitionJournal<>(directory, State.values(), Trigger.values(), segmentSize, 4);
+    }
+
+    @Test
+    public void FleetIsRebuiltWithoutRunningActions() throws IOException {
+        File directory = folder.newFolder();
+        StateMachineConfig<State, Trigger> config = createConfig();
+
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 1024)) {
+            StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(config, State.A, 3);
+            fleet.journalTo(journal);
+            fleet.fire(0, Trigger.X);
+            fleet.fire(1, Trigger.X);
+            fleet.fire(1, Trigger.X);
+            fleet.fire(0, Trigger.Y);
+            fleet.fire(2, Trigger.X);
+        }
+        actions = 0;
+
+        StateMachineFleet<State, Trigger> recovered = new StateMachineFleet<>(config, State.A, 3);
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 1024)) {
+            assertEquals(5, journal.replayInto(recovered));
+        }
+
+        assertEquals(State.A, recovered.getState(0));
+        assertEquals(State.C, recovered.getState(1));
+        assertEquals(State.B, recovered.getState(2));
+        assertEquals(0, actions);
+    }
+
+    @Test
+    public void RecordsSpanSegmentsAndReopenedJournalsAppend() throws IOException {
+        File directory = folder.newFolder();
+        StateMachineConfig<State, Trigger> config = createConfig();
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(config, State.A, 1);
+
+        // Room for three records per segment
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 8 + 3 * 12)) {
+            fleet.journalTo(journal);
+            for (int i = 0; i < 5; i++) {
+                fleet.fire(0, Trigger.X);
+                fleet.fire(0, Trigger.Y);
+            }
+        }
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 8 + 3 * 12)) {
+            fleet.journalTo(journal);
+            fleet.fire(0, Trigger.X);
+
+            final Map<Integer, State> replayed = new HashMap<>();
+            assertEquals(11, journal.replay(new Action2<Integer, State>() {
+                @Override
+                public void doIt(Integer id, State state) {
+                    replayed.put(id, state);
+                }
+            }));
+            assertEquals(State.B, replayed.get(0));
+        }
+        assertEquals(4, directory.list().length);
+    }
+
+    @Test
+    public void GroupsAppendedFromManyThreadsAreAllKept() throws Exception {
+        File directory = folder.newFolder();
+        final int threads = 4;
+        final int records = 5000;
+
+        try (final TransitionJournal<State, Trigger> journal = new TransitionJournal<>(directory, State.values(), Trigger.values(), 8 + 3000 * 12, 1)) {
+            List<Thread> appenders = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int id = t;
+                Thread appender = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < records; i++) {
+                            journal.append(id, Trigger.X, i % 2 == 0 ? State.B : State.A);
+                        }
+                    }
+                });
+                appenders.add(appender);
+                appender.start();
+            }
+            for (Thread appender : appenders) {
+                appender.join();
+            }
+        }
+
+        final Map<Integer, State> replayed = new HashMap<>();
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 8 + 3000 * 12)) {
+            assertEquals(threads * records, journal.replay(new Action2<Integer, State>() {
+                @Override
+                public void doIt(Integer id, State state) {
+                    replayed.put(id, state);
+                }
+            }));
+        }
+        for (int t = 0; t < threads; t++) {
+            assertEquals(State.A, replayed.get(t));
+        }
+    }
+
+    @Test
+    public void MachineWithExternalStorageIsRebuilt() throws IOException {
+        File directory = folder.newFolder();
+        final Map<Integer, State> storage = new HashMap<>();
+
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 1024)) {
+            StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig());
+            sm.journalTo(journal, 42);
+            sm.fire(Trigger.X);
+            sm.fire(Trigger.X);
+        }
+
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 1024)) {
+            journal.replay(new Action2<Integer, State>() {
+                @Override
+                public void doIt(Integer id, State state) {
+                    storage.put(id, state);
+                }
+            });
+        }
+        StateMachine<State, Trigger> sm = new StateMachine<>(storage.get(42), new Func<State>() {
+            @Override
+            public State call() {
+                return storage.get(42);
+            }
+        }, new Action1<State>() {
+            @Override
+            public void doIt(State state) {
+                storage.put(42, state);
+            }
+        }, createConfig());
+
+        assertEquals(State.C, sm.getState());
+    }
+
+    @Test
+    public void RecoveryLoadsTheSnapshotAndReplaysTheTail() throws Exception {
+        File directory = folder.newFolder();
+        StateMachineConfig<State, Trigger> config = createConfig();
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(config);
+
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 8 + 3 * 12)) {
+            fleet.journalTo(journal);
+            for (int i = 0; i < 4; i++) {
+                fleet.add(State.A);
+                fleet.fire(i, Trigger.X);
+            }
+            assertEquals(3, directory.list().length);
+
+            assertEquals(4, (int) journal.snapshot(fleet).get());
+            assertEquals(2, directory.list().length);
+
+            fleet.fire(1, Trigger.X);
+            fleet.add(State.C);
+        }
+
+        StateMachineFleet<State, Trigger> recovered = new StateMachineFleet<>(config);
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 8 + 3 * 12)) {
+            assertEquals(2, journal.recover(recovered));
+        }
+
+        assertEquals(5, recovered.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(fleet.getState(i), recovered.getState(i));
+        }
+    }
+
+    @Test
+    public void SnapshotsTakenBetweenFiresRecoverTheFleet() throws Exception {
+        File directory = folder.newFolder();
+        StateMachineConfig<State, Trigger> config = createConfig();
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(config, State.A, 100);
+
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 8 + 1000 * 12)) {
+            fleet.journalTo(journal);
+            for (int i = 0; i < 20000; i++) {
+                fleet.fire(i % 100, i % 200 < 100 ? Trigger.X : Trigger.Y);
+                if (i % 1500 == 1499) {
+                    journal.snapshot(fleet).get();
+                }
+            }
+        }
+
+        StateMachineFleet<State, Trigger> recovered = new StateMachineFleet<>(config, State.A, 100);
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 8 + 1000 * 12)) {
+            journal.recover(recovered);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(fleet.getState(i), recovered.getState(i));
+        }
+    }
+
+    @Test
+    public void FiresCarryOnWhileASnapshotIsWritten() throws Exception {
+        File directory = folder.newFolder();
+        StateMachineConfig<State, Trigger> config = createConfig();
+        StateMachineFleet<State, Trigger> fleet = new StateMachineFleet<>(config, State.A, 100000);
+
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 8 + 1000 * 12)) {
+            fleet.journalTo(journal);
+            for (int i = 0; i < 5000; i++) {
+                fleet.fire(i, Trigger.X);
+            }
+            Future<Integer> snapshot = journal.snapshot(fleet);
+            int i = 0;
+            while (!snapshot.isDone() || i < 20000) {
+                int id = i++ % 100000;
+                fleet.fire(id, fleet.getState(id) == State.C ? Trigger.Y : Trigger.X);
+            }
+            assertEquals(100000, (int) snapshot.get());
+        }
+
+        StateMachineFleet<State, Trigger> recovered = new StateMachineFleet<>(config, State.A, 100000);
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 8 + 1000 * 12)) {
+            journal.recover(recovered);
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(fleet.getState(i), recovered.getState(i));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void ReplayIntoAFleetWithoutTheInstanceFails() throws IOException {
+        File directory = folder.newFolder();
+        try (TransitionJournal<State, Trigger> journal = openJournal(directory, 1024)) {
+            journal.append(5, Trigger.X, State.B);
+            journal.replayInto(new StateMachineFleet<>(createConfig(), State.A, 1));
+        }
+    }
+}
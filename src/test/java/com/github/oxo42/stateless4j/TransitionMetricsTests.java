@@ -0,0 +1,116 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransitionMetricsTests {
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permitIf(Trigger.Y, State.C, IgnoredTriggerBehaviourTests.returnFalse)
+                .ignore(Trigger.Z);
+
+        config.configure(State.B)
+                .permit(Trigger.X, State.A)
+                .onEntry(new Action() {
+                    @Override
+                    public void doIt() {
+                        try {
+                            Thread.sleep(2);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+
+        return config.freeze();
+    }
+
+    @Test
+    public void OutcomesAreCountedPerStateAndTrigger() {
+        TransitionMetrics<State, Trigger> metrics = new TransitionMetrics<>(State.values(), Trigger.values());
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig());
+        sm.setMetrics(metrics);
+
+        sm.tryFire(Trigger.Y);
+        sm.tryFire(Trigger.Z);
+        sm.fire(Trigger.X);
+        sm.tryFire(Trigger.Y);
+        sm.fire(Trigger.X);
+
+        assertEquals(1, metrics.getFireCount(State.A, Trigger.Y));
+        assertEquals(1, metrics.getGuardRejectedCount(State.A, Trigger.Y));
+        assertEquals(1, metrics.getFireCount(State.A, Trigger.Z));
+        assertEquals(0, metrics.getUnhandledCount(State.A, Trigger.Z));
+        assertEquals(1, metrics.getFireCount(State.A, Trigger.X));
+        assertEquals(1, metrics.getUnhandledCount(State.B, Trigger.Y));
+        assertEquals(1, metrics.getFireCount(State.B, Trigger.X));
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void ActionLatenciesAreRecordedForTheSourceState() {
+        TransitionMetrics<State, Trigger> metrics = new TransitionMetrics<>(State.values(), Trigger.values());
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig());
+        sm.setMetrics(metrics);
+
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.X);
+
+        LatencyHistogram entry = metrics.getEntryLatency(State.A, Trigger.X);
+        assertEquals(1, entry.getCount());
+        assertTrue(entry.getMax() >= TimeUnit.MILLISECONDS.toNanos(2));
+        assertEquals(1, metrics.getExitLatency(State.A, Trigger.X).getCount());
+        assertTrue(metrics.getEntryLatency(State.B, Trigger.X).getMax() < TimeUnit.MILLISECONDS.toNanos(2));
+        assertEquals(0, metrics.getEntryLatency(State.A, Trigger.Y).getCount());
+    }
+
+    @Test
+    public void SnapshotsAreUnaffectedByLaterFires() {
+        TransitionMetrics<State, Trigger> metrics = new TransitionMetrics<>(State.values(), Trigger.values());
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig());
+        sm.setMetrics(metrics);
+
+        sm.fire(Trigger.Z);
+        TransitionMetrics<State, Trigger> snapshot = metrics.snapshot();
+        sm.fire(Trigger.Z);
+
+        assertEquals(1, snapshot.getFireCount(State.A, Trigger.Z));
+        assertEquals(2, metrics.getFireCount(State.A, Trigger.Z));
+
+        metrics.reset();
+        assertEquals(0, metrics.getFireCount(State.A, Trigger.Z));
+
+        sm.setMetrics(null);
+        sm.fire(Trigger.Z);
+        assertEquals(0, metrics.getFireCount(State.A, Trigger.Z));
+    }
+
+    @Test
+    public void ExportWritesOneLinePerFiredPair() throws IOException {
+        TransitionMetrics<State, Trigger> metrics = new TransitionMetrics<>(State.values(), Trigger.values());
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig());
+        sm.setMetrics(metrics);
+        sm.fire(Trigger.Z);
+        sm.fire(Trigger.X);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        metrics.exportTo(out);
+        String[] lines = out.toString("UTF-8").split("\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("state,trigger,fired"));
+        assertTrue(lines[1].startsWith("A,X,1,0,0,1,"));
+        assertTrue(lines[2].startsWith("A,Z,1,0,0,0,"));
+    }
+}
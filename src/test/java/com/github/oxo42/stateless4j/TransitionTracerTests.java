@@ -0,0 +1,101 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.transitions.Transition;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransitionTracerTests {
+
+    static class RecordingTracer extends TransitionTracer<State, Trigger> {
+
+        final List<String> events = new ArrayList<>();
+        boolean enabled = true;
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public void guardsEvaluated(State state, Trigger trigger, boolean accepted, long nanos) {
+            assertTrue(nanos >= 0);
+            events.add("guards " + state + " " + trigger + " " + accepted);
+        }
+
+        @Override
+        public void unhandledTrigger(State state, Trigger trigger, FireResult result) {
+            events.add("unhandled " + state + " " + trigger + " " + result);
+        }
+
+        @Override
+        public void exitActionsExecuted(Transition<State, Trigger> transition, long nanos) {
+            assertTrue(nanos >= 0);
+            events.add("exit " + transition.getSource() + " " + transition.getTrigger());
+        }
+
+        @Override
+        public void entryActionsExecuted(Transition<State, Trigger> transition, long nanos) {
+            assertTrue(nanos >= 0);
+            events.add("entry " + transition.getDestination() + " " + transition.getTrigger());
+        }
+
+        @Override
+        public void transitionFired(Transition<State, Trigger> transition, long nanos) {
+            assertTrue(nanos >= 0);
+            events.add("fired " + transition.getSource() + " " + transition.getDestination());
+        }
+    }
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permitIf(Trigger.Y, State.C, IgnoredTriggerBehaviourTests.returnFalse);
+
+        return config.freeze();
+    }
+
+    @Test
+    public void EventsAreDeliveredForEachStep() {
+        RecordingTracer tracer = new RecordingTracer();
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig());
+        sm.setTracer(tracer);
+
+        sm.tryFire(Trigger.Y);
+        sm.fire(Trigger.X);
+        sm.tryFire(Trigger.Z);
+
+        assertEquals(Arrays.asList(
+                "guards A Y false",
+                "unhandled A Y GUARD_REJECTED",
+                "guards A X true",
+                "exit A X",
+                "entry B X",
+                "fired A B",
+                "guards B Z false",
+                "unhandled B Z UNHANDLED"), tracer.events);
+    }
+
+    @Test
+    public void DisabledTracerReceivesNothing() {
+        RecordingTracer tracer = new RecordingTracer();
+        tracer.enabled = false;
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig());
+        sm.setTracer(tracer);
+
+        sm.fire(Trigger.X);
+        tracer.enabled = true;
+        sm.setTracer(null);
+        sm.tryFire(Trigger.Z);
+
+        assertEquals(0, tracer.events.size());
+        assertEquals(State.B, sm.getState());
+    }
+}